@@ -20,6 +20,7 @@ import net.openhft.chronicle.core.time.TimeProvider;
 import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
 import net.openhft.chronicle.wire.BinaryMethodWriterInvocationHandler;
 import net.openhft.chronicle.wire.VanillaMethodWriterBuilder;
+import net.openhft.chronicle.wire.Wire;
 import net.openhft.chronicle.wire.WireType;
 import org.jetbrains.annotations.NotNull;
 
@@ -29,6 +30,8 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * <em>Chronicle</em> (in a generic sense) is a Java project focused on building a persisted low
@@ -188,6 +191,20 @@ public interface ChronicleQueue extends Closeable {
 
     int sourceId();
 
+    /**
+     * A stream of the excerpts from {@code fromIndex} up to, but not including, {@code toIndex}. Call
+     * {@link Stream#parallel()} to read parts of the range on different threads, each with its own tailer.
+     *
+     * @param fromIndex the first index to include
+     * @param toIndex   the index after the last to include
+     * @param reader    reads an excerpt into the object to stream, the wire is only valid until it returns
+     * @return the stream, which is sequential
+     */
+    @NotNull
+    default <T> Stream<T> stream(long fromIndex, long toIndex, @NotNull Function<? super Wire, ? extends T> reader) {
+        throw new UnsupportedOperationException("not currently supported in this implementation.");
+    }
+
     /**
      * NOTE the writer generated is not thread safe, you need to keep a ThreadLocal of these if needed.
      */
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.time.TimeProvider;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A roll cycle of any whole number of seconds, with the index parameters and file limits it was built with,
+ * see {@link RollCycleBuilder}
+ * <p>
+ * These are all kept in the queue's metadata, so a queue can be opened without the roll cycle it was written with,
+ * e.g. by a tool.
+ */
+public final class CustomRollCycle implements RollCycle {
+    private final String format;
+    private final int length;
+    private final int cycleShift;
+    private final int indexCount;
+    private final int indexSpacing;
+    private final long sequenceMask;
+    private final long maxCycleBytes;
+    private final long maxCycleMessages;
+
+    CustomRollCycle(String format, int length, int indexCount, int indexSpacing, int cycleShift,
+                    long maxCycleBytes, long maxCycleMessages) {
+        this.format = format;
+        this.length = length;
+        this.indexCount = indexCount;
+        this.indexSpacing = indexSpacing;
+        this.cycleShift = cycleShift;
+        this.sequenceMask = (1L << cycleShift) - 1;
+        this.maxCycleBytes = maxCycleBytes;
+        this.maxCycleMessages = maxCycleMessages;
+    }
+
+    @Override
+    public String format() {
+        return format;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int defaultIndexCount() {
+        return indexCount;
+    }
+
+    @Override
+    public int defaultIndexSpacing() {
+        return indexSpacing;
+    }
+
+    @Override
+    public int current(@NotNull TimeProvider time, long epoch) {
+        return (int) ((time.currentTimeMillis() - epoch) / length);
+    }
+
+    @Override
+    public long toIndex(int cycle, long sequenceNumber) {
+        return ((long) cycle << cycleShift) + (sequenceNumber & sequenceMask);
+    }
+
+    @Override
+    public long toSequenceNumber(long index) {
+        return index & sequenceMask;
+    }
+
+    @Override
+    public int toCycle(long index) {
+        return Maths.toUInt31(index >> cycleShift);
+    }
+
+    @Override
+    public long maxCycleBytes() {
+        return maxCycleBytes;
+    }
+
+    @Override
+    public long maxCycleMessages() {
+        return maxCycleMessages;
+    }
+
+    /**
+     * @return a roll cycle as it was kept in a queue's metadata
+     */
+    @NotNull
+    public static CustomRollCycle of(@NotNull String format, int length, int indexCount, int indexSpacing, int cycleShift,
+                                     long maxCycleBytes, long maxCycleMessages) {
+        if (length <= 0 || cycleShift <= 0 || cycleShift >= 63 || indexCount <= 0 || indexSpacing <= 0)
+            throw new IllegalArgumentException("Invalid roll cycle of length " + length + ", cycleShift " + cycleShift +
+                    ", indexCount " + indexCount + ", indexSpacing " + indexSpacing);
+        return new CustomRollCycle(format, length, indexCount, indexSpacing, cycleShift, maxCycleBytes, maxCycleMessages);
+    }
+
+    /**
+     * @return the number of bits of an index used for the sequence number
+     */
+    public int cycleShift() {
+        return cycleShift;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomRollCycle{" +
+                "format='" + format + '\'' +
+                ", length=" + length +
+                ", cycleShift=" + cycleShift +
+                ", indexCount=" + indexCount +
+                ", indexSpacing=" + indexSpacing +
+                ", maxCycleBytes=" + maxCycleBytes +
+                ", maxCycleMessages=" + maxCycleMessages +
+                '}';
+    }
+}
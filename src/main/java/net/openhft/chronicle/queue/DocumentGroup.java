@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+/**
+ * A group of excerpts written with {@link ExcerptAppender#writingDocuments(int)}.
+ * <p>
+ * The write lock is held from when the group is opened until it is closed, so the group should be kept short.
+ * Each excerpt in the group is written with the appender's {@code writingDocument()} as usual.
+ * When the group is closed tailers see all of its excerpts at once, or none of them if it was rolled back.
+ */
+public interface DocumentGroup extends AutoCloseable {
+    /**
+     * Discard every excerpt written in this group when it is closed.
+     */
+    void rollbackOnClose();
+
+    /**
+     * @return the number of excerpts written in this group so far
+     */
+    int documents();
+
+    /**
+     * Publish or roll back the excerpts written, and release the write lock.
+     */
+    @Override
+    void close();
+}
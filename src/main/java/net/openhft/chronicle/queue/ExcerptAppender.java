@@ -21,6 +21,8 @@ import net.openhft.chronicle.queue.batch.BatchAppender;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 /**
  * <p>The component that facilitates sequentially writing data to a {@link ChronicleQueue}.</p>
  * <p><b>NOTE:</b> Appenders are NOT thread-safe, sharing the Appender between threads will lead to errors and unpredictable behaviour.</p>
@@ -38,6 +40,76 @@ public interface ExcerptAppender extends ExcerptCommon<ExcerptAppender>, Marshal
         writeBytes((BytesStore) bytes);
     }
 
+    /**
+     * Claim space for an excerpt of up to {@code maxLength} bytes, which is then written without holding the write lock.
+     * Tailers see claimed excerpts in the order they were claimed, each once it has been closed, so the excerpt should
+     * be written promptly as it holds up tailers and any writer which needs the excerpts before it to be complete.
+     * <p>
+     * Closing the context commits the excerpt. If {@code rollbackOnClose()} was called the claimed space becomes padding
+     * which tailers skip. Up to 3 bytes of unused space may be left at the end of the excerpt.
+     *
+     * @param maxLength the most bytes which will be written
+     * @return the context to write the excerpt to, which must be closed before this appender writes anything else
+     */
+    @NotNull
+    default DocumentContext claimingDocument(int maxLength) throws UnrecoverableTimeoutException {
+        return writingDocument();
+    }
+
+    /**
+     * Start a group of excerpts which tailers see all at once, or not at all. For example
+     * <pre>
+     * try (DocumentGroup group = appender.writingDocuments(2)) {
+     *     appender.writeText("debit");
+     *     appender.writeText("credit");
+     * }
+     * </pre>
+     *
+     * @param expected the number of excerpts expected, used to size the group
+     * @return the group, which must be closed on the same thread
+     * @throws UnsupportedOperationException if this appender can't write groups
+     */
+    default DocumentGroup writingDocuments(int expected) throws UnrecoverableTimeoutException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Write each of the {@code payloads} as its own excerpt. Appenders which hold a write lock take it once for the whole batch,
+     * while still indexing each excerpt and rolling to a new cycle if required.
+     *
+     * @param payloads to write, one excerpt each
+     * @return the number of excerpts written
+     */
+    default int writeBytesBatch(@NotNull List<? extends BytesStore> payloads) throws UnrecoverableTimeoutException {
+        for (BytesStore payload : payloads)
+            writeBytes(payload);
+        return payloads.size();
+    }
+
+    /**
+     * Write a batch of excerpts held in one buffer, each as a 4 byte length followed by that many bytes,
+     * from the {@code readPosition()} to the {@code readLimit()} of the buffer.
+     * Appenders which hold a write lock take it once for the whole batch.
+     *
+     * @param buffer of length prefixed excerpts
+     * @return the number of excerpts written
+     * @throws IllegalArgumentException if a length runs past the end of the buffer
+     */
+    default int writeLengthPrefixedBatch(@NotNull BytesStore buffer) throws UnrecoverableTimeoutException {
+        int count = 0;
+        for (long pos = buffer.readPosition(), end = buffer.readLimit(); pos < end; count++) {
+            int length = buffer.readInt(pos);
+            pos += Integer.BYTES;
+            if (length < 0 || pos + length > end)
+                throw new IllegalArgumentException("Invalid length " + length + " at " + (pos - Integer.BYTES));
+            try (DocumentContext dc = writingDocument()) {
+                dc.wire().bytes().write(buffer, pos, length);
+            }
+            pos += length;
+        }
+        return count;
+    }
+
     /**
      * @return the index last written, this index includes the cycle and the sequence number
      * @throws IllegalStateException if no index is available
@@ -101,6 +173,7 @@ public interface ExcerptAppender extends ExcerptCommon<ExcerptAppender>, Marshal
      * @param timeoutMS
      * @param batchAppender
      * @return the number of messages written in call the batches
+     * @deprecated use {@link #writeBytesBatch(List)} or {@link #writeLengthPrefixedBatch(BytesStore)}
      */
     @Deprecated
     long batchAppend(final int timeoutMS, BatchAppender batchAppender);
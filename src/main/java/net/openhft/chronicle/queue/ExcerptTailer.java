@@ -16,12 +16,18 @@
 package net.openhft.chronicle.queue;
 
 import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.queue.batch.ExcerptBatchHandler;
 import net.openhft.chronicle.wire.DocumentContext;
 import net.openhft.chronicle.wire.MarshallableIn;
 import net.openhft.chronicle.wire.ReadMarshallable;
 import net.openhft.chronicle.wire.SourceContext;
+import net.openhft.chronicle.wire.Wire;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
 /**
  * <p>The component that facilitates sequentially reading data from a {@link ChronicleQueue}.</p>
  * <p><b>NOTE:</b> Tailers are NOT thread-safe, sharing the Tailer between threads will lead to errors and unpredictable behaviour.</p>
@@ -71,6 +77,62 @@ public interface ExcerptTailer extends ExcerptCommon<ExcerptTailer>, Marshallabl
      */
     int cycle();
 
+    /**
+     * Read up to {@code maxMessages} excerpts, skipping meta data. This can be much cheaper per excerpt than
+     * {@link #readingDocument()} for small excerpts, as the headers are read in a tight loop until the end of the cycle.
+     *
+     * @param handler     called for each excerpt
+     * @param maxMessages the most excerpts to read
+     * @return the number of excerpts read, 0 if there are none to read yet
+     */
+    default int readBatch(@NotNull ExcerptBatchHandler handler, int maxMessages) {
+        int count = 0;
+        while (count < maxMessages) {
+            try (DocumentContext dc = readingDocument()) {
+                if (!dc.isPresent())
+                    break;
+                handler.onExcerpt(dc.index(), dc.wire().bytes());
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Wait until an appender publishes an excerpt this tailer could read, rather than polling {@link #readingDocument()}
+     * with a pauser. This returns as soon as something may be available, so it is used in a loop such as
+     * <pre>{@code
+     * while (running) {
+     *     try (DocumentContext dc = tailer.readingDocument()) {
+     *         if (dc.isPresent()) {
+     *             process(dc);
+     *             continue;
+     *         }
+     *     }
+     *     tailer.awaitNext(10, TimeUnit.MILLISECONDS);
+     * }}</pre>
+     * With {@link net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder#notifyTailers(boolean)}, tailers in the
+     * process which appended wake straight away, those in other processes within a fraction of a millisecond, otherwise
+     * tailers poll with a backoff. By default this just pauses for up to a millisecond.
+     *
+     * @param timeout the longest to wait
+     * @param unit    of the timeout
+     * @return true if there may be an excerpt to read, false if it timed out
+     */
+    default boolean awaitNext(long timeout, @NotNull TimeUnit unit) {
+        LockSupport.parkNanos(Math.min(unit.toNanos(timeout), TimeUnit.MILLISECONDS.toNanos(1)));
+        return true;
+    }
+
+    /**
+     * Write the position of a named tailer which is batching its commits, see
+     * {@link net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder#tailerCommitEveryMessages(int)}.
+     * A tailer restarted with the same id carries on from the last position committed.
+     * This does nothing for other tailers, which write their position on every move if they have one.
+     */
+    default void commit() {
+    }
+
     /**
      * Randomly select an Excerpt.
      *
@@ -79,6 +141,42 @@ public interface ExcerptTailer extends ExcerptCommon<ExcerptTailer>, Marshallabl
      */
     boolean moveToIndex(long index);
 
+    /**
+     * Move to the first excerpt written at or after a time, for queues which record when each excerpt was written.
+     * Only the index and the timestamps are read, not the excerpts themselves.
+     *
+     * @param epochNanos the time in nanoseconds since the epoch
+     * @return true if there is such an excerpt, otherwise the tailer is moved to the end
+     * @throws UnsupportedOperationException if this tailer can't search by time
+     */
+    default boolean moveToTime(long epochNanos) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Move to the first excerpt with a key, using the secondary index of a queue built with a {@link KeyExtractor}.
+     *
+     * @param key the key, as returned by the {@link KeyExtractor}
+     * @return true if there is such an excerpt, otherwise the tailer is moved to the end
+     * @throws UnsupportedOperationException if this tailer can't search by key
+     */
+    default boolean moveToKey(long key) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Move to the first excerpt with a key which {@code matches}, for keys which can be shared by excerpts, e.g. text
+     * ids hashed to a long. Excerpts with the key which don't match are skipped.
+     *
+     * @param key     the key, as returned by the {@link KeyExtractor}
+     * @param matches reads an excerpt with the key, and returns true if it is the one wanted
+     * @return true if there is such an excerpt, otherwise the tailer is moved to the end
+     * @throws UnsupportedOperationException if this tailer can't search by key
+     */
+    default boolean moveToKey(long key, @NotNull Predicate<Wire> matches) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Replay from the first entry in the first cycle.
      *
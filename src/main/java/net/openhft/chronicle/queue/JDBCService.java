@@ -21,7 +21,6 @@ import net.openhft.chronicle.bytes.MethodReader;
 import net.openhft.chronicle.core.io.Closeable;
 import net.openhft.chronicle.core.util.ThrowingSupplier;
 import net.openhft.chronicle.threads.NamedThreadFactory;
-import net.openhft.chronicle.threads.Pauser;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +29,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /*
  * Created by Peter Lawrey on 06/04/16.
@@ -60,13 +60,11 @@ public class JDBCService implements Closeable {
                     .recordHistory(true)
                     .get();
             JDBCComponent js = new JDBCComponent(connectionSupplier, result);
-            MethodReader reader = in.createTailer().afterLastWritten(out).methodReader(js);
-            Pauser pauser = Pauser.millis(1, 10);
+            ExcerptTailer tailer = in.createTailer().afterLastWritten(out);
+            MethodReader reader = tailer.methodReader(js);
             while (!closed) {
-                if (reader.readOne())
-                    pauser.reset();
-                else
-                    pauser.pause();
+                if (!reader.readOne())
+                    tailer.awaitNext(10, TimeUnit.MILLISECONDS);
             }
         } catch (Throwable t) {
             LOGGER.warn("Run loop exited", t);
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads the key an excerpt is looked up by, for a secondary index set with
+ * {@link net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder#keyExtractor(KeyExtractor)}
+ * and searched with {@link ExcerptTailer#moveToKey(long)}.
+ * <p>
+ * Keys are 64-bit, so a text key such as a client order id should be hashed to a long with few enough collisions
+ * for the application, e.g. a 64-bit hash of the id. {@link ExcerptTailer#moveToKey(long, java.util.function.Predicate)}
+ * checks the id itself, skipping other excerpts whose ids have the same hash.
+ */
+@FunctionalInterface
+public interface KeyExtractor {
+    /**
+     * An excerpt with this key isn't indexed.
+     */
+    long NO_KEY = Long.MIN_VALUE;
+
+    /**
+     * @param wire the excerpt, which can be read from as it is only used to extract the key
+     * @return the excerpt's key or {@link #NO_KEY} if it doesn't have one
+     */
+    long key(@NotNull Wire wire);
+}
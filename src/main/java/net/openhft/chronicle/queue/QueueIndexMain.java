@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+import net.openhft.chronicle.queue.impl.single.IndexVerifier;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Checks the index of every sealed cycle of a queue, and with {@code --repair} rewrites missing or incorrect entries.
+ * Only repair a queue nothing is writing to.
+ */
+public class QueueIndexMain {
+    static {
+        SingleChronicleQueueBuilder.addAliases();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: QueueIndexMain <queue directory> [--repair]");
+            System.exit(1);
+        }
+        verify(args[0], args.length > 1 && "--repair".equals(args[1]));
+    }
+
+    private static void verify(@NotNull String dir, boolean repair) {
+        File path = new File(dir);
+        if (!path.isDirectory()) {
+            System.err.println("Path argument must be a queue directory");
+            System.exit(1);
+        }
+
+        IndexVerifier.Report report = IndexVerifier.verify(path, repair, Runtime.getRuntime().availableProcessors());
+        System.out.println(report);
+        if (!repair && report.missing() + report.incorrect() > 0)
+            System.exit(2);
+    }
+}
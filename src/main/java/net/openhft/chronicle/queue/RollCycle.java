@@ -38,4 +38,29 @@ public interface RollCycle {
     long toSequenceNumber(long index);
 
     int toCycle(long index);
+
+    /**
+     * A cycle which has less than this many bytes, and less than {@link #maxCycleMessages()} excerpts, is kept by the
+     * appenders after its time is up, and rolled at the next write after it reaches either.
+     * <p>
+     * Despite the name, this is the least a cycle holds before it is rolled, not the most: a cycle is never rolled
+     * before its time is up, so a burst can make a file much larger than this, and a quiet cycle is kept for as long
+     * as it takes to reach it. Rolling a cycle early when it reaches a size isn't implemented, as cycle numbers are
+     * derived from the time.
+     *
+     * @return the size of file a cycle is kept until, or {@link Long#MAX_VALUE} if cycles roll on time alone
+     */
+    default long maxCycleBytes() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Like {@link #maxCycleBytes()}, this is the least number of excerpts a cycle holds before it is rolled, not the
+     * most.
+     *
+     * @return the number of excerpts a cycle is kept until, or {@link Long#MAX_VALUE} if cycles roll on time alone
+     */
+    default long maxCycleMessages() {
+        return Long.MAX_VALUE;
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+import net.openhft.chronicle.core.Maths;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a {@link RollCycle} for a period {@link RollCycles} doesn't have, e.g.
+ * <pre>{@code
+ * RollCycle fiveSeconds = RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).build();
+ * RollCycle upTo1GB = RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS).maxCycleBytes(1L << 30).build();
+ * }</pre>
+ * The number of bits of the index used for the sequence number is computed from the index count and spacing, as it is
+ * for {@link RollCycles}, and checked to leave enough for the cycle number.
+ */
+public class RollCycleBuilder {
+    private static final int ONE_MINUTE = 60 * 1000;
+    private static final int ONE_HOUR = 60 * ONE_MINUTE;
+    private static final int ONE_DAY = 24 * ONE_HOUR;
+    private static final int DEFAULT_INDEX_COUNT = 4 << 10;
+    private static final int DEFAULT_INDEX_SPACING = 16;
+    // cycles up to the start of 2100 must fit in an index.
+    private static final long LAST_CYCLE_MILLIS = 4_102_444_800_000L;
+
+    private final int length;
+    private String format;
+    private int indexCount;
+    private int indexSpacing;
+    private long maxCycleBytes = Long.MAX_VALUE;
+    private long maxCycleMessages = Long.MAX_VALUE;
+
+    RollCycleBuilder(int length) {
+        this.length = length;
+    }
+
+    /**
+     * @param duration of each cycle, a whole number of seconds up to 24 days
+     * @param unit     of the duration
+     * @return a builder for the roll cycle
+     */
+    @NotNull
+    public static RollCycleBuilder rollEvery(long duration, @NotNull TimeUnit unit) {
+        long seconds = unit.toSeconds(duration);
+        if (seconds < 1 || unit.convert(seconds, TimeUnit.SECONDS) != duration || seconds > Integer.MAX_VALUE / 1000)
+            throw new IllegalArgumentException("A cycle must be a whole number of seconds up to 24 days, was " + duration + " " + unit);
+        return new RollCycleBuilder((int) (seconds * 1000));
+    }
+
+    /**
+     * @param format of the date in the file names, by default the coarsest of yyyyMMdd, yyyyMMdd-HH, yyyyMMdd-HHmm and
+     *               yyyyMMdd-HHmmss which gives every cycle its own name. A format must show the time to a whole
+     *               fraction of the cycle's length, checked by {@link #build()}
+     * @return this
+     */
+    @NotNull
+    public RollCycleBuilder format(@NotNull String format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * @param indexCount the number of entries in each index array, rounded up to a power of 2. By default this is
+     *                   4096, or just enough to index {@link #maxCycleMessages(long)} if that is set.
+     * @return this
+     */
+    @NotNull
+    public RollCycleBuilder indexCount(int indexCount) {
+        if (indexCount <= 0)
+            throw new IllegalArgumentException("indexCount must be positive");
+        this.indexCount = indexCount;
+        return this;
+    }
+
+    /**
+     * @param indexSpacing the number of excerpts between index entries, rounded up to a power of 2, by default 16
+     * @return this
+     */
+    @NotNull
+    public RollCycleBuilder indexSpacing(int indexSpacing) {
+        if (indexSpacing <= 0)
+            throw new IllegalArgumentException("indexSpacing must be positive");
+        this.indexSpacing = indexSpacing;
+        return this;
+    }
+
+    /**
+     * Keep each cycle after its time is up until its file is this large, so busy periods and quiet ones produce
+     * files of about the same size. A cycle is only rolled at the end of its time, so the files are at most one
+     * cycle's worth of writes larger, which is why a short cycle is best for this. The number of excerpts in a cycle
+     * is still limited by its index, see {@link #maxCycleMessages(long)}
+     * <p>
+     * This is a minimum file size, not a maximum: a cycle isn't rolled early when it reaches this size, and a quiet
+     * cycle is kept without limit until it does, see {@link RollCycle#maxCycleBytes()}
+     *
+     * @param maxCycleBytes the size of file a cycle is kept until
+     * @return this
+     */
+    @NotNull
+    public RollCycleBuilder maxCycleBytes(long maxCycleBytes) {
+        if (maxCycleBytes <= 0)
+            throw new IllegalArgumentException("maxCycleBytes must be positive");
+        this.maxCycleBytes = maxCycleBytes;
+        return this;
+    }
+
+    /**
+     * Keep each cycle after its time is up until it has this many excerpts, a minimum rather than a maximum, see
+     * {@link #maxCycleBytes(long)}
+     *
+     * @param maxCycleMessages the number of excerpts a cycle is kept until
+     * @return this
+     */
+    @NotNull
+    public RollCycleBuilder maxCycleMessages(long maxCycleMessages) {
+        if (maxCycleMessages <= 0)
+            throw new IllegalArgumentException("maxCycleMessages must be positive");
+        this.maxCycleMessages = maxCycleMessages;
+        return this;
+    }
+
+    /**
+     * @return the roll cycle
+     * @throws IllegalArgumentException if the index can't hold {@link #maxCycleMessages(long)}, leaves too few bits
+     *                                  for the cycle number, or the format gives cycles the same name
+     */
+    @NotNull
+    public CustomRollCycle build() {
+        int spacing = Maths.nextPower2(indexSpacing > 0 ? indexSpacing : DEFAULT_INDEX_SPACING, 1);
+        int spacingBits = Maths.intLog2(spacing);
+        int countBits = Maths.intLog2(Maths.nextPower2(indexCount > 0 ? indexCount : DEFAULT_INDEX_COUNT, 8));
+        if (maxCycleMessages < Long.MAX_VALUE) {
+            int messageBits = 64 - Long.numberOfLeadingZeros(maxCycleMessages - 1);
+            if (indexCount <= 0)
+                countBits = Math.max(3, (messageBits - spacingBits + 1) / 2);
+            else if (countBits * 2 + spacingBits < messageBits)
+                throw new IllegalArgumentException("An indexCount of " + (1 << countBits) + " and indexSpacing of " + spacing +
+                        " can't index maxCycleMessages of " + maxCycleMessages);
+        }
+        int cycleShift = Math.max(32, countBits * 2 + spacingBits);
+        int cycleBits = Math.min(31, 64 - Long.numberOfLeadingZeros(LAST_CYCLE_MILLIS / length));
+        if (cycleShift + cycleBits > 63)
+            throw new IllegalArgumentException("An index with " + cycleShift + " bits for the sequence number leaves too few for cycles of " +
+                    length + " ms, use a smaller indexCount or indexSpacing");
+        String format = this.format == null ? formatFor(length) : this.format;
+        int resolution = resolutionOf(format);
+        // the file name of a cycle which isn't exactly a day is parsed as a time
+        if (length % resolution != 0 || (resolution == ONE_DAY && length != ONE_DAY))
+            throw new IllegalArgumentException("The format " + format + " can't give every cycle of " + length + " ms its own name");
+        return new CustomRollCycle(format, length, 1 << countBits, spacing, cycleShift, maxCycleBytes, maxCycleMessages);
+    }
+
+    static String formatFor(int length) {
+        if (length == ONE_DAY)
+            return "yyyyMMdd";
+        if (length % ONE_HOUR == 0)
+            return "yyyyMMdd-HH";
+        if (length % ONE_MINUTE == 0)
+            return "yyyyMMdd-HHmm";
+        return "yyyyMMdd-HHmmss";
+    }
+
+    /**
+     * @return the finest time a format shows in ms, or Integer.MAX_VALUE if it is coarser than a day
+     */
+    static int resolutionOf(String format) {
+        int resolution = Integer.MAX_VALUE;
+        boolean quoted = false;
+        for (int i = 0; i < format.length(); i++) {
+            char ch = format.charAt(i);
+            if (ch == '\'') {
+                quoted = !quoted;
+                continue;
+            }
+            if (quoted)
+                continue;
+            switch (ch) {
+                case 's':
+                case 'S':
+                case 'A':
+                case 'n':
+                case 'N':
+                    resolution = Math.min(resolution, 1000);
+                    break;
+                case 'm':
+                    resolution = Math.min(resolution, ONE_MINUTE);
+                    break;
+                case 'H':
+                case 'k':
+                case 'K':
+                case 'h':
+                    resolution = Math.min(resolution, ONE_HOUR);
+                    break;
+                case 'd':
+                case 'D':
+                    resolution = Math.min(resolution, ONE_DAY);
+                    break;
+            }
+        }
+        return resolution;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+/**
+ * When appended excerpts are forced to disk, rather than left for the OS to write back.
+ * See {@code SingleChronicleQueueBuilder.syncMode(SyncMode)}
+ */
+public enum SyncMode {
+    /**
+     * Never sync, the OS writes pages back in its own time. This is the default.
+     */
+    NONE,
+    /**
+     * Sync after every excerpt, before the appender returns.
+     */
+    EVERY_MESSAGE,
+    /**
+     * Sync after every {@code syncEveryMessages} excerpts.
+     */
+    EVERY_N_MESSAGES,
+    /**
+     * Sync when an excerpt is appended at least {@code syncIntervalMicros} after the last sync.
+     */
+    EVERY_INTERVAL,
+    /**
+     * Sync every {@code syncIntervalMicros} from the queue's event loop, the appender never waits.
+     */
+    ASYNC
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.batch;
+
+import net.openhft.chronicle.bytes.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the excerpts read by {@link net.openhft.chronicle.queue.ExcerptTailer#readBatch(ExcerptBatchHandler, int)}
+ */
+@FunctionalInterface
+public interface ExcerptBatchHandler {
+
+    /**
+     * @param index   the index of the excerpt
+     * @param payload the excerpt, from its readPosition to its readLimit. This is a view of the queue's memory, so it is
+     *                only valid until this method returns, and must not be written to.
+     */
+    void onExcerpt(long index, @NotNull Bytes<?> payload);
+}
@@ -54,6 +54,36 @@ public interface WireStore extends CommonStore {
 
     void setPositionForSequenceNumber(final ExcerptContext ec, long sequenceNumber, long position) throws UnrecoverableTimeoutException, StreamCorruptedException;
 
+    /**
+     * Record the position of the latest excerpt without indexing it, leaving that to {@link #indexPending(ExcerptContext, int)}
+     */
+    void setLastSequenceNumber(long sequenceNumber, long position);
+
+    /**
+     * @return the sequence number of the next excerpt to be indexed
+     */
+    long nextEntryToBeIndexed();
+
+    /**
+     * @return true if {@link #indexPending(ExcerptContext, int)} might have excerpts to index, checked without the
+     * write lock
+     */
+    boolean hasPendingIndex();
+
+    /**
+     * Index excerpts appended without being indexed. Must be called holding the write lock.
+     *
+     * @return the number of index entries added
+     */
+    int indexPending(ExcerptContext ec, int maxEntries) throws StreamCorruptedException;
+
+    /**
+     * Find the first excerpt written at or after a time, for queues with timestamps.
+     *
+     * @return the sequence number, or -1 if there is none in this store
+     */
+    long sequenceForTime(ExcerptContext ec, long epochNanos);
+
     /**
      * @return true if EOF was written
      */
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.values.LongValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static net.openhft.chronicle.core.io.Closeable.closeQuietly;
+
+/**
+ * Lets tailers wait for an appender to publish an excerpt, see {@link net.openhft.chronicle.queue.ExcerptTailer#awaitNext(long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * With {@link SingleChronicleQueueBuilder#notifyTailers(boolean)}, a waiting tailer adds one to a count of waiters in the
+ * queue's metadata. While that is not zero, appenders add one to a sequence in the metadata after each excerpt, and
+ * unpark any tailers waiting in this process, so these wake straight away. Otherwise an append only reads the count.
+ * Tailers in other processes can't be unparked, so a waiting tailer spins, then yields, then parks for increasingly
+ * long up to {@code chronicle.queue.awaitNext.maxParkMicros}, checking the sequence each time it wakes.
+ * Without notifications, or for a read-only queue, tailers back off in the same way but check for an excerpt instead.
+ */
+final class AppendNotifier implements Closeable {
+    private static final int SPINS = 200;
+    private static final int YIELDS = 20;
+    private static final long MIN_PARK_NANOS = 1_000;
+    private static final long MAX_PARK_NANOS = Long.getLong("chronicle.queue.awaitNext.maxParkMicros", 250) * 1_000;
+
+    // both null if tailers aren't notified, whose tailers only poll.
+    @Nullable
+    private final LongValue sequence;
+    @Nullable
+    private final LongValue waiters;
+    private final Set<Thread> waiting = ConcurrentHashMap.newKeySet();
+
+    AppendNotifier(@Nullable LongValue sequence, @Nullable LongValue waiters) {
+        assert (sequence == null) == (waiters == null);
+        this.sequence = sequence;
+        this.waiters = waiters;
+    }
+
+    /**
+     * Called by appenders after publishing one or more excerpts.
+     */
+    void onAppend() {
+        if (waiters == null || waiters.getVolatileValue() <= 0)
+            return;
+        sequence.addAtomicValue(1);
+        for (Thread thread : waiting)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Wait until {@code available} is true, or an appender publishes an excerpt after it was checked.
+     *
+     * @return false if it timed out
+     */
+    boolean await(@NotNull BooleanSupplier available, long timeoutNanos) {
+        if (available.getAsBoolean())
+            return true;
+        if (sequence == null)
+            return poll(available, timeoutNanos);
+        Thread thread = Thread.currentThread();
+        waiting.add(thread);
+        // count this waiter before checking again, so an append either sees the count or is seen by the check.
+        waiters.addAtomicValue(1);
+        try {
+            long start = sequence.getVolatileValue();
+            return available.getAsBoolean() || poll(() -> sequence.getVolatileValue() != start, timeoutNanos);
+        } finally {
+            waiters.addAtomicValue(-1);
+            waiting.remove(thread);
+        }
+    }
+
+    private static boolean poll(@NotNull BooleanSupplier done, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Thread thread = Thread.currentThread();
+        long parkNanos = MIN_PARK_NANOS;
+        for (int i = 0; ; i++) {
+            if (done.getAsBoolean())
+                return true;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || thread.isInterrupted())
+                return false;
+            if (i < SPINS) {
+                // busy wait
+            } else if (i < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(parkNanos, remaining));
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(sequence, waiters);
+    }
+}
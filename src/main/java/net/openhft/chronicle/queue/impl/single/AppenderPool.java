@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueExcerpts.StoreAppender;
+import net.openhft.chronicle.wire.UnrecoverableTimeoutException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of appenders for applications with many more threads than cores, e.g. virtual threads, where
+ * {@link SingleChronicleQueue#acquireAppender()} would create and map an appender for every thread.
+ * <p>
+ * An appender is used by one thread at a time, from {@link #acquire()} until it is passed to {@link #release(ExcerptAppender)}.
+ * Waiting for an appender parks the thread rather than blocking on a monitor, so a virtual thread doesn't pin its carrier.
+ */
+public final class AppenderPool {
+    @NotNull
+    private final SingleChronicleQueue queue;
+    private final int size;
+    private final ArrayBlockingQueue<StoreAppender> idle;
+    private final AtomicInteger created = new AtomicInteger();
+
+    AppenderPool(@NotNull SingleChronicleQueue queue, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("size must be positive");
+        this.queue = queue;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * @return an appender for the use of this thread until it is released
+     * @throws UnrecoverableTimeoutException if no appender is released within the queue's timeout
+     */
+    @NotNull
+    public ExcerptAppender acquire() throws UnrecoverableTimeoutException {
+        if (queue.isClosed())
+            throw new IllegalStateException("Queue is closed");
+        StoreAppender appender = idle.poll();
+        if (appender == null)
+            appender = createOrWait();
+        appender.handOff();
+        return appender;
+    }
+
+    private StoreAppender createOrWait() {
+        for (int n; (n = created.get()) < size; )
+            if (created.compareAndSet(n, n + 1))
+                return queue.newStoreAppender();
+
+        try {
+            StoreAppender appender = idle.poll(queue.timeoutMS, TimeUnit.MILLISECONDS);
+            if (appender == null)
+                throw new UnrecoverableTimeoutException(new TimeoutException("No appender was released within " + queue.timeoutMS + " ms"));
+            return appender;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param appender acquired from this pool, which this thread must not use again
+     */
+    public void release(@NotNull ExcerptAppender appender) {
+        if (!(appender instanceof StoreAppender) || appender.queue() != queue)
+            throw new IllegalArgumentException("Not from this pool " + appender);
+        if (!idle.offer((StoreAppender) appender))
+            throw new IllegalStateException("More appenders released than acquired");
+    }
+
+    /**
+     * @return the most appenders this pool will create
+     */
+    public int size() {
+        return size;
+    }
+}
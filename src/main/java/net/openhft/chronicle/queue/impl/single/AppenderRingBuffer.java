@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesRingBufferStats;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.RingBufferReaderStats;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.MarshallableOut.Padding;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A multi-producer, single-consumer ring buffer held off heap, used when the queue is built with
+ * {@code writeBufferMode(BufferMode.Asynchronous)}.
+ * <p>
+ * Appending threads copy each excerpt into the ring and carry on. The {@link Drainer}, running on the
+ * queue's event loop, copies them into the cycle file in the order they were claimed.
+ * <p>
+ * Each record is an int header followed by the excerpt, aligned to 8 bytes. A header of zero means the
+ * record is still being written. The header holds the length and the producer's {@link Padding}, which the drainer
+ * applies when it writes the excerpt.
+ * <p>
+ * A record the drainer fails to write is skipped and counted as a missed read, so one bad excerpt doesn't stop the
+ * ones behind it.
+ */
+class AppenderRingBuffer implements BytesRingBufferStats, RingBufferReaderStats {
+    private static final int READY = 0x80000000;
+    private static final int META_DATA = 0x40000000;
+    private static final int PADDING = 0x20000000;
+    private static final int PAD_MODE_SHIFT = 26;
+    private static final int PAD_MODE_MASK = 0x7;
+    private static final int LENGTH_MASK = 0x03FFFFFF;
+    private static final Padding[] PAD_MODES = Padding.values();
+    private static final int MAX_BATCH = 256;
+    private static final long STATS_INTERVAL_MS = 1_000;
+
+    @NotNull
+    private final NativeBytesStore<Void> buffer;
+    private final long capacity;
+    private final long mask;
+    private final AtomicLong writeClaim = new AtomicLong();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder missedWriteCount = new LongAdder();
+    private final LongAdder contentionCount = new LongAdder();
+    private final LongAdder readCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile long readPosition;
+    private volatile long minWriteBytesRemaining;
+    private volatile boolean closed;
+    private boolean released;
+
+    AppenderRingBuffer(long bufferCapacity) {
+        capacity = Maths.nextPower2(bufferCapacity, 4 << 10);
+        mask = capacity - 1;
+        buffer = NativeBytesStore.nativeStoreWithFixedCapacity(capacity);
+        buffer.zeroOut(0, capacity);
+        minWriteBytesRemaining = capacity;
+    }
+
+    private static long align8(long length) {
+        return (length + 7) & ~7L;
+    }
+
+    /**
+     * Copy the readable bytes of {@code bytes} into the ring buffer.
+     *
+     * @param padding the padding the drainer should write the excerpt with
+     * @return false if there was not enough free space, the caller should pause and retry.
+     */
+    boolean offer(@NotNull Bytes<?> bytes, boolean metaData, @NotNull Padding padding) {
+        long length = bytes.readRemaining();
+        long recordSize = align8(Integer.BYTES + length);
+        if (recordSize > capacity / 2 || length > LENGTH_MASK)
+            throw new IllegalArgumentException("Excerpt of " + length + " bytes is too large for a ring buffer of " + capacity + " bytes, increase bufferCapacity");
+
+        for (; ; ) {
+            long claim = writeClaim.get();
+            long offset = claim & mask;
+            long toEnd = capacity - offset;
+            long required = toEnd < recordSize ? toEnd + recordSize : recordSize;
+            long remaining = capacity - (claim - readPosition);
+            if (required > remaining) {
+                missedWriteCount.increment();
+                return false;
+            }
+            if (!writeClaim.compareAndSet(claim, claim + required)) {
+                contentionCount.increment();
+                continue;
+            }
+            if (remaining - required < minWriteBytesRemaining)
+                minWriteBytesRemaining = remaining - required;
+
+            if (toEnd < recordSize) {
+                // the record would wrap, so skip to the start of the buffer.
+                buffer.writeOrderedInt(offset, READY | PADDING | (int) (toEnd - Integer.BYTES));
+                offset = 0;
+            }
+            buffer.write(offset + Integer.BYTES, bytes, bytes.readPosition(), length);
+            int header = READY | padding.ordinal() << PAD_MODE_SHIFT | (int) length;
+            if (metaData)
+                header |= META_DATA;
+            buffer.writeOrderedInt(offset, header);
+            writeCount.increment();
+            return true;
+        }
+    }
+
+    boolean isEmpty() {
+        return readPosition == writeClaim.get();
+    }
+
+    /**
+     * @return the end of the last record claimed, so everything offered before this call has been drained once
+     * {@link #readPosition()} reaches it
+     */
+    long claimed() {
+        return writeClaim.get();
+    }
+
+    long readPosition() {
+        return readPosition;
+    }
+
+    /**
+     * Copy up to {@code maxMessages} excerpts into the queue. Must only be called by one thread, synchronized only so
+     * the buffer isn't released part way through.
+     *
+     * @return the number of excerpts drained, including any which failed to be written and were skipped.
+     */
+    synchronized int drainTo(@NotNull ExcerptAppender appender, int maxMessages) {
+        if (released)
+            return 0;
+        int count = 0;
+        long read = readPosition;
+        while (count < maxMessages) {
+            long offset = read & mask;
+            int header = buffer.readVolatileInt(offset);
+            if (header == 0)
+                break;
+            int length = header & LENGTH_MASK;
+            long recordSize;
+            if ((header & PADDING) != 0) {
+                recordSize = Integer.BYTES + length;
+            } else {
+                try {
+                    appender.padToCacheAlign(PAD_MODES[header >>> PAD_MODE_SHIFT & PAD_MODE_MASK]);
+                    try (DocumentContext dc = appender.writingDocument((header & META_DATA) != 0)) {
+                        try {
+                            dc.wire().bytes().write(buffer, offset + Integer.BYTES, length);
+                        } catch (RuntimeException e) {
+                            dc.rollbackOnClose();
+                            throw e;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // left to be released by the drainer
+                    if (appender.queue().isClosed())
+                        throw e;
+                    droppedCount.increment();
+                    Jvm.warn().on(getClass(), "Dropped an excerpt of " + length + " bytes which couldn't be written", e);
+                }
+                recordSize = align8(Integer.BYTES + length);
+                count++;
+            }
+            buffer.zeroOut(offset, offset + recordSize);
+            read += recordSize;
+            readPosition = read;
+        }
+        if (count > 0)
+            readCount.add(count);
+        return count;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Release the buffer, once, whether or not it has been drained.
+     */
+    synchronized void releaseBuffer() {
+        if (released)
+            return;
+        released = true;
+        buffer.release();
+    }
+
+    // BytesRingBufferStats
+
+    public long minNumberOfWriteBytesRemaining() {
+        long min = minWriteBytesRemaining;
+        minWriteBytesRemaining = capacity - (writeClaim.get() - readPosition);
+        return min;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long getAndClearWriteCount() {
+        return writeCount.sumThenReset();
+    }
+
+    public long getAndClearMissedWriteCount() {
+        return missedWriteCount.sumThenReset();
+    }
+
+    public long getAndClearContentionCount() {
+        return contentionCount.sumThenReset();
+    }
+
+    public List<RingBufferReaderStats> readers() {
+        return Collections.singletonList(this);
+    }
+
+    // RingBufferReaderStats for the drainer
+
+    public long getAndClearReadCount() {
+        return readCount.sumThenReset();
+    }
+
+    /**
+     * @return the number of excerpts which failed to be written to the queue and were skipped
+     */
+    public long getAndClearMissedReadCount() {
+        return droppedCount.sumThenReset();
+    }
+
+    public long behind() {
+        return writeClaim.get() - readPosition;
+    }
+
+    /**
+     * Copies excerpts from the ring buffer into the queue, reporting the ring buffer stats about once a second.
+     */
+    static class Drainer implements EventHandler {
+        private final SingleChronicleQueue queue;
+        private final AppenderRingBuffer ringBuffer;
+        private final HandlerPriority priority;
+        private final Consumer<BytesRingBufferStats> onRingBufferStats;
+        private ExcerptAppender appender;
+        private long nextStatsMS;
+        private volatile long lastIndexAppended = Long.MIN_VALUE;
+
+        Drainer(SingleChronicleQueue queue, AppenderRingBuffer ringBuffer, HandlerPriority priority) {
+            this.queue = queue;
+            this.ringBuffer = ringBuffer;
+            this.priority = priority;
+            this.onRingBufferStats = queue.onRingBufferStats();
+        }
+
+        @Override
+        public boolean action() throws InvalidEventHandlerException {
+            // what is left once the queue has closed can't be written.
+            if (ringBuffer.isClosed() && (ringBuffer.isEmpty() || queue.isClosed())) {
+                ringBuffer.releaseBuffer();
+                throw new InvalidEventHandlerException("Queue closed");
+            }
+            if (appender == null)
+                appender = queue.newStoreAppender();
+
+            boolean busy = false;
+            try {
+                busy = ringBuffer.drainTo(appender, MAX_BATCH) > 0;
+                if (busy)
+                    publishLastIndex();
+            } catch (Exception e) {
+                if (queue.isClosed()) {
+                    ringBuffer.releaseBuffer();
+                    throw new InvalidEventHandlerException(e);
+                }
+                Jvm.warn().on(getClass(), "Failed to drain the ring buffer", e);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now >= nextStatsMS) {
+                nextStatsMS = now + STATS_INTERVAL_MS;
+                onRingBufferStats.accept(ringBuffer);
+            }
+            return busy;
+        }
+
+        @NotNull
+        @Override
+        public HandlerPriority priority() {
+            return priority;
+        }
+
+        private void publishLastIndex() {
+            try {
+                lastIndexAppended = appender.lastIndexAppended();
+            } catch (IllegalStateException e) {
+                // only meta data has been drained.
+            }
+        }
+
+        /**
+         * @return the index of the last excerpt drained, from any producer, published for other threads to read
+         */
+        long lastIndexAppended() {
+            long lastIndex = this.lastIndexAppended;
+            if (lastIndex == Long.MIN_VALUE)
+                throw new IllegalStateException("nothing has been appended, so there is no last index");
+            return lastIndex;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.batch.BatchAppender;
+import net.openhft.chronicle.threads.Pauser;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import net.openhft.chronicle.wire.UnrecoverableTimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An appender which writes to an {@link AppenderRingBuffer} rather than the queue, so the caller never waits
+ * for the write lock or a cycle roll. Excerpts are written to the queue later by the ring buffer's drainer.
+ * <p>
+ * As the index is only known once an excerpt has been drained, {@link #lastIndexAppended()} is the index of the last
+ * excerpt the drainer has written from any producer, which may be before or after the last one from this appender.
+ * {@link #batchAppend(int, BatchAppender)} waits for this appender's excerpts to be drained, then writes to the
+ * queue directly.
+ */
+class AsyncExcerptAppender implements ExcerptAppender {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncExcerptAppender.class);
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final AppenderRingBuffer ringBuffer;
+    private final Pauser pauser;
+    private final AsyncDocumentContext context = new AsyncDocumentContext();
+    @Nullable
+    private Bytes<Void> bytes;
+    @Nullable
+    private Wire wire;
+    private Padding padToCacheAlign = Padding.SMART;
+    // the end of the ring buffer claimed when this appender last offered an excerpt
+    private long lastOffered;
+    @Nullable
+    private StoreAppender storeAppender;
+
+    AsyncExcerptAppender(@NotNull SingleChronicleQueue queue, @NotNull AppenderRingBuffer ringBuffer, Pauser pauser) {
+        this.queue = queue;
+        this.ringBuffer = ringBuffer;
+        this.pauser = pauser;
+        this.bytes = Bytes.allocateElasticDirect();
+        this.wire = queue.wireType().apply(bytes);
+
+        // always put references to "this" last.
+        queue.addCloseListener(this, AsyncExcerptAppender::close);
+    }
+
+    void close() {
+        Bytes<Void> b = bytes;
+        bytes = null;
+        wire = null;
+        if (b != null && b.refCount() > 0)
+            b.release();
+    }
+
+    @Override
+    public Runnable getCloserJob() {
+        return this::close;
+    }
+
+    @NotNull
+    @Override
+    public DocumentContext writingDocument() throws UnrecoverableTimeoutException {
+        return writingDocument(false);
+    }
+
+    @NotNull
+    @Override
+    public DocumentContext writingDocument(boolean metaData) throws UnrecoverableTimeoutException {
+        if (queue.isClosed() || wire == null)
+            throw new IllegalStateException("Queue is closed");
+        bytes.clear();
+        context.isClosed = false;
+        context.rollbackOnClose = false;
+        context.metaData = metaData;
+        return context;
+    }
+
+    @Override
+    public void writeBytes(@NotNull BytesStore bytes) throws UnrecoverableTimeoutException {
+        try (DocumentContext dc = writingDocument()) {
+            dc.wire().bytes().write(bytes);
+        }
+    }
+
+    private void offer(boolean metaData) throws UnrecoverableTimeoutException {
+        if (!ringBuffer.offer(bytes, metaData, padToCacheAlign)) {
+            long timeoutMS = queue.timeoutMS;
+            long start = System.currentTimeMillis();
+            try {
+                while (!ringBuffer.offer(bytes, metaData, padToCacheAlign)) {
+                    if (queue.isClosed())
+                        throw new IllegalStateException("Queue is closed");
+                    if (System.currentTimeMillis() > start + timeoutMS)
+                        throw new UnrecoverableTimeoutException(new TimeoutException("Ring buffer full for " + timeoutMS + " ms, is the drainer running?"));
+                    pauser.pause();
+                }
+            } finally {
+                pauser.reset();
+            }
+        }
+        lastOffered = ringBuffer.claimed();
+    }
+
+    /**
+     * Wait for the excerpts this appender has offered to be drained.
+     */
+    private void awaitDrained() throws UnrecoverableTimeoutException {
+        long timeoutMS = queue.timeoutMS;
+        long start = System.currentTimeMillis();
+        try {
+            while (ringBuffer.readPosition() < lastOffered) {
+                if (queue.isClosed())
+                    throw new IllegalStateException("Queue is closed");
+                if (System.currentTimeMillis() > start + timeoutMS)
+                    throw new UnrecoverableTimeoutException(new TimeoutException("Ring buffer not drained for " + timeoutMS + " ms, is the drainer running?"));
+                pauser.pause();
+            }
+        } finally {
+            pauser.reset();
+        }
+    }
+
+    /**
+     * @return the index of the last excerpt drained to the queue from any producer, see {@link AsyncExcerptAppender}
+     */
+    @Override
+    public long lastIndexAppended() {
+        return queue.lastIndexDrained();
+    }
+
+    @Override
+    public int cycle() {
+        return queue.cycle();
+    }
+
+    /**
+     * Padding is passed on with each excerpt offered, and applied when the drainer writes it to the queue.
+     */
+    @Override
+    public void padToCacheAlign(Padding padToCacheAlign) {
+        this.padToCacheAlign = padToCacheAlign;
+    }
+
+    @NotNull
+    @Override
+    public Padding padToCacheAlignMode() {
+        return padToCacheAlign;
+    }
+
+    @Override
+    public Wire wire() {
+        return wire;
+    }
+
+    /**
+     * Writes to the queue directly, after the excerpts already offered by this appender, so they stay in order.
+     */
+    @Override
+    public long batchAppend(int timeoutMS, BatchAppender batchAppender) {
+        if (queue.isClosed() || wire == null)
+            throw new IllegalStateException("Queue is closed");
+        awaitDrained();
+        if (storeAppender == null)
+            storeAppender = queue.newStoreAppender();
+        return storeAppender.batchAppend(timeoutMS, batchAppender);
+    }
+
+    @Override
+    public int sourceId() {
+        return queue.sourceId;
+    }
+
+    @NotNull
+    @Override
+    public SingleChronicleQueue queue() {
+        return queue;
+    }
+
+    @Override
+    public boolean recordHistory() {
+        return sourceId() != 0;
+    }
+
+    class AsyncDocumentContext implements DocumentContext {
+        boolean isClosed = true;
+        boolean rollbackOnClose;
+        boolean metaData;
+
+        @Override
+        public int sourceId() {
+            return AsyncExcerptAppender.this.sourceId();
+        }
+
+        @Override
+        public boolean isPresent() {
+            return false;
+        }
+
+        @Override
+        public Wire wire() {
+            return wire;
+        }
+
+        @Override
+        public boolean isMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public void metaData(boolean metaData) {
+            this.metaData = metaData;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return isClosed;
+        }
+
+        @Override
+        public void rollbackOnClose() {
+            this.rollbackOnClose = true;
+        }
+
+        @Override
+        public void close() {
+            if (isClosed) {
+                LOG.warn("Already Closed, close was called twice.");
+                return;
+            }
+            isClosed = true;
+            if (rollbackOnClose || bytes == null)
+                return;
+            offer(metaData);
+        }
+
+        @Override
+        public long index() throws IORuntimeException {
+            return Long.MIN_VALUE;
+        }
+
+        @Override
+        public boolean isNotComplete() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
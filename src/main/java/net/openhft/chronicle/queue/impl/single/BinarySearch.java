@@ -1,6 +1,5 @@
 package net.openhft.chronicle.queue.impl.single;
 
-import net.openhft.chronicle.queue.ChronicleQueue;
 import net.openhft.chronicle.queue.ExcerptTailer;
 import net.openhft.chronicle.queue.RollCycle;
 import net.openhft.chronicle.wire.DocumentContext;
@@ -9,8 +8,9 @@ import org.jetbrains.annotations.NotNull;
 
 import java.text.ParseException;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.NavigableSet;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 /**
  * @author Rob Austin.
@@ -44,47 +44,118 @@ public enum BinarySearch {
             if (startCycle == endCycle)
                 return findWithinCycle(key, c, startCycle, tailer, q, rollCycle);
 
-            final NavigableSet<Long> cycles = q.listCyclesBetween(startCycle, endCycle);
-            final int cycle = (int) findCycleLinearSearch(cycles, key, c, tailer, q);
-
-            if (cycle == -1)
+            final long[] cycles = toArray(q.listCyclesBetween(startCycle, endCycle));
+            if (cycles.length == 0)
                 return -1;
+            final int cycle = (int) cycles[findCycle(cycles, tailer, rollCycle, wire -> compare(c, wire, key, readPosition))];
             return findWithinCycle(key, c, cycle, tailer, q, rollCycle);
         } finally {
             key.bytes().readPosition(readPosition);
         }
     }
 
-    private static long findCycleLinearSearch(@NotNull NavigableSet<Long> cycles, Wire key,
-                                              @NotNull Comparator<Wire> c,
-                                              @NotNull ExcerptTailer tailer,
-                                              @NotNull final ChronicleQueue queue) {
+    /**
+     * As {@link #search(SingleChronicleQueue, Wire, Comparator)} for excerpts ordered by a long key. The first and last
+     * key of each completed cycle are cached under {@code name}, in memory and in a file in the queue's directory, so
+     * repeated searches only open the files for the cycles the key could be in.
+     *
+     * @param name         identifies the key extractor, it must always be the same extractor for a name and queue
+     * @param keyExtractor reads the key from an excerpt
+     * @param key          the key to find
+     * @return the index if an exact match is found, an approximation in the form of -approximateIndex
+     * or -1 if there was no searching to be done.
+     */
+    public static long search(@NotNull SingleChronicleQueue q,
+                              @NotNull String name,
+                              @NotNull ToLongFunction<Wire> keyExtractor,
+                              long key) throws ParseException {
+        final int firstCycle = q.firstCycle();
+        final int lastCycle = q.lastCycle();
+        if (firstCycle > lastCycle)
+            return -1;
+
+        final CycleKeyCache cache = q.cycleKeyCache(name, keyExtractor);
+        final ToLongFunction<Wire> extractor = cache.keyExtractor();
+        final ExcerptTailer tailer = q.createTailer();
+        final RollCycle rollCycle = q.rollCycle();
 
-        final Iterator<Long> iterator = cycles.iterator();
-        if (!iterator.hasNext())
+        final long[] cycles = toArray(q.listCyclesBetween(firstCycle, lastCycle));
+        if (cycles.length == 0)
             return -1;
-        final RollCycle rollCycle = queue.rollCycle();
-        long prevIndex = iterator.next();
 
-        while (iterator.hasNext()) {
+        // binary search of the first key in each cycle.
+        int low = 0, high = cycles.length - 1, found = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long firstKey = cache.firstKey(tailer, (int) cycles[mid]);
+            if (firstKey == CycleKeyCache.UNKNOWN || firstKey > key) {
+                high = mid - 1;
+            } else if (firstKey < key) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                return rollCycle.toIndex((int) cycles[mid], 0);
+            }
+        }
+
+        final int cycle = (int) cycles[found];
+        final long lastKey = cache.lastKey(tailer, cycle);
+        if (lastKey != CycleKeyCache.UNKNOWN && lastKey < key)
+            // between this cycle and the next, no need to read this one.
+            return -rollCycle.toIndex(cycle, q.exceptsPerCycle(cycle) - 1);
 
-            final Long current = iterator.next();
+        return findWithinCycle(wire -> Long.compare(extractor.applyAsLong(wire), key), cycle, tailer, q, rollCycle);
+    }
 
-            final boolean b = tailer.moveToIndex(rollCycle.toIndex((int) (long) current, 0));
-            if (!b)
-                return prevIndex;
+    @NotNull
+    private static long[] toArray(@NotNull NavigableSet<Long> cycles) {
+        final long[] array = new long[cycles.size()];
+        int i = 0;
+        for (Long cycle : cycles)
+            array[i++] = cycle;
+        return array;
+    }
 
-            try (final DocumentContext dc = tailer.readingDocument()) {
-                final int compare = c.compare(dc.wire(), key);
-                if (compare == 0)
-                    return current;
-                else if (compare > 0)
-                    return prevIndex;
-                prevIndex = current;
+    /**
+     * @return the position in {@code cycles} of the last cycle whose first excerpt is at most the key, or 0 if there isn't one
+     */
+    private static int findCycle(@NotNull long[] cycles,
+                                 @NotNull ExcerptTailer tailer,
+                                 @NotNull RollCycle rollCycle,
+                                 @NotNull ToIntFunction<Wire> compareToKey) {
+        int low = 0, high = cycles.length - 1, found = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareFirst((int) cycles[mid], tailer, rollCycle, compareToKey);
+            if (cmp < 0) {
+                found = mid;
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
             }
         }
+        return found;
+    }
 
-        return prevIndex;
+    private static int compareFirst(int cycle,
+                                    @NotNull ExcerptTailer tailer,
+                                    @NotNull RollCycle rollCycle,
+                                    @NotNull ToIntFunction<Wire> compareToKey) {
+        // a cycle which can't be read is treated as after the key.
+        if (!tailer.moveToIndex(rollCycle.toIndex(cycle, 0)))
+            return 1;
+        try (final DocumentContext dc = tailer.readingDocument()) {
+            if (!dc.isPresent())
+                return 1;
+            return compareToKey.applyAsInt(dc.wire());
+        }
+    }
+
+    private static int compare(@NotNull Comparator<Wire> c, @NotNull Wire wire, @NotNull Wire key, long readPosition) {
+        key.bytes().readPosition(readPosition);
+        return c.compare(wire, key);
     }
 
     /**
@@ -105,44 +176,51 @@ public enum BinarySearch {
                                        @NotNull final RollCycle rollCycle) {
         final long readPosition = key.bytes().readPosition();
         try {
-            long lowSeqNum = 0;
+            return findWithinCycle(wire -> compare(c, wire, key, readPosition), cycle, tailer, q, rollCycle);
+        } finally {
+            key.bytes().readPosition(readPosition);
+        }
+    }
 
-            long highSeqNum = q.exceptsPerCycle(cycle) - 1;
-            if (highSeqNum == 0)
-                return rollCycle.toIndex(cycle, 0);
+    private static long findWithinCycle(@NotNull ToIntFunction<Wire> compareToKey,
+                                        int cycle,
+                                        @NotNull ExcerptTailer tailer,
+                                        @NotNull SingleChronicleQueue q,
+                                        @NotNull final RollCycle rollCycle) {
+        long lowSeqNum = 0;
 
-            // nothing to search
-            if (highSeqNum < lowSeqNum)
-                return -1;
+        long highSeqNum = q.exceptsPerCycle(cycle) - 1;
+        if (highSeqNum == 0)
+            return rollCycle.toIndex(cycle, 0);
 
-            long midIndex = 0;
+        // nothing to search
+        if (highSeqNum < lowSeqNum)
+            return -1;
 
-            while (lowSeqNum <= highSeqNum) {
-                long midSeqNumber = (lowSeqNum + highSeqNum) >>> 1L;
+        long midIndex = 0;
 
-                midIndex = rollCycle.toIndex(cycle, midSeqNumber);
+        while (lowSeqNum <= highSeqNum) {
+            long midSeqNumber = (lowSeqNum + highSeqNum) >>> 1L;
 
-                final boolean b = tailer.moveToIndex(midIndex);
-                assert b;
-                try (DocumentContext dc = tailer.readingDocument()) {
-                    if (!dc.isPresent())
-                        return -1;
-                    key.bytes().readPosition(readPosition);
-                    int cmp = c.compare(dc.wire(), key);
+            midIndex = rollCycle.toIndex(cycle, midSeqNumber);
 
-                    if (cmp < 0)
-                        lowSeqNum = midSeqNumber + 1;
-                    else if (cmp > 0)
-                        highSeqNum = midSeqNumber - 1;
-                    else
-                        return midIndex; // key found
-                }
-            }
+            final boolean b = tailer.moveToIndex(midIndex);
+            assert b;
+            try (DocumentContext dc = tailer.readingDocument()) {
+                if (!dc.isPresent())
+                    return -1;
+                int cmp = compareToKey.applyAsInt(dc.wire());
 
-            return -midIndex;  // -approximateIndex
-        } finally {
-            key.bytes().readPosition(readPosition);
+                if (cmp < 0)
+                    lowSeqNum = midSeqNumber + 1;
+                else if (cmp > 0)
+                    highSeqNum = midSeqNumber - 1;
+                else
+                    return midIndex; // key found
+            }
         }
+
+        return -midIndex;  // -approximateIndex
     }
 
 }
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.KeyExtractor;
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+
+import static net.openhft.chronicle.core.io.Closeable.closeQuietly;
+
+/**
+ * Shares the excerpts of a queue between a fixed number of members, usually in different processes, so each excerpt
+ * is read by exactly one of them. Excerpts are assigned by the hash of a key, so excerpts with the same key are read
+ * in order by the same member, or in blocks of each cycle's index spacing round-robin, which members skip over
+ * without reading.
+ * <p>
+ * Each member reads with a named tailer, so its position is kept in the queue's metadata and it carries on from
+ * there when it rejoins. A member holds its place with a lease in the metadata, renewed by the queue's event loop
+ * while it is joined, so the place of a process which dies can be taken once the lease runs out, after
+ * {@code chronicle.queue.consumerGroup.leaseMillis}.
+ * <p>
+ * Every process must use the same name, number of members and assignment for a group.
+ */
+public final class ConsumerGroup {
+    static final long LEASE_MILLIS = Long.getLong("chronicle.queue.consumerGroup.leaseMillis", 10_000);
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final String name;
+    private final int members;
+    // null to assign blocks of excerpts
+    @Nullable
+    private final KeyExtractor keyExtractor;
+
+    private ConsumerGroup(@NotNull SingleChronicleQueue queue, @NotNull String name, int members, @Nullable KeyExtractor keyExtractor) {
+        if (members < 1)
+            throw new IllegalArgumentException("members must be positive");
+        if (queue.isReadOnly())
+            throw new IllegalStateException("Can't keep the positions of a consumer group in a read-only queue");
+        this.queue = queue;
+        this.name = name;
+        this.members = members;
+        this.keyExtractor = keyExtractor;
+        long existing = queue.metaStore.doWithExclusiveLock(ts -> {
+            LongValue value = ts.acquireValueFor("group." + name + ".members", 0);
+            value.compareAndSwapValue(0, members);
+            return value.getVolatileValue();
+        });
+        if (existing != members)
+            throw new IllegalArgumentException("Consumer group " + name + " has " + existing + " members, not " + members);
+    }
+
+    /**
+     * A group where an excerpt is read by the member its key hashes to.
+     */
+    @NotNull
+    public static ConsumerGroup byKey(@NotNull SingleChronicleQueue queue, @NotNull String name, int members, @NotNull KeyExtractor keyExtractor) {
+        return new ConsumerGroup(queue, name, members, keyExtractor);
+    }
+
+    /**
+     * A group where blocks of excerpts the size of each cycle's index spacing are read by each member in turn.
+     */
+    @NotNull
+    public static ConsumerGroup byBlock(@NotNull SingleChronicleQueue queue, @NotNull String name, int members) {
+        return new ConsumerGroup(queue, name, members, null);
+    }
+
+    public int members() {
+        return members;
+    }
+
+    /**
+     * Join as the first member whose place is free.
+     *
+     * @throws IllegalStateException if every place is taken
+     */
+    @NotNull
+    public Member join() {
+        for (int i = 0; i < members; i++) {
+            Member member = tryJoin(i);
+            if (member != null)
+                return member;
+        }
+        throw new IllegalStateException("All " + members + " members of consumer group " + name + " have joined");
+    }
+
+    /**
+     * Join as a particular member.
+     *
+     * @throws IllegalStateException if another process holds this place
+     */
+    @NotNull
+    public Member join(int member) {
+        if (member < 0 || member >= members)
+            throw new IllegalArgumentException("member must be between 0 and " + (members - 1));
+        Member joined = tryJoin(member);
+        if (joined == null)
+            throw new IllegalStateException("Member " + member + " of consumer group " + name + " has already joined");
+        return joined;
+    }
+
+    @Nullable
+    private Member tryJoin(int member) {
+        LongValue lease = queue.metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("group." + name + ".lease." + member, 0));
+        long now = queue.time().currentTimeMillis();
+        long expiry = lease.getVolatileValue();
+        if (expiry > now || !lease.compareAndSwapValue(expiry, now + LEASE_MILLIS)) {
+            closeQuietly(lease);
+            return null;
+        }
+        return new Member(member, lease, now + LEASE_MILLIS);
+    }
+
+    /**
+     * @param spacing the index spacing of the excerpt's cycle
+     * @return the member which reads the excerpt at {@code index}, leaving the excerpt to be read from the start
+     */
+    int memberFor(long index, @NotNull DocumentContext dc, int spacing) {
+        if (keyExtractor != null) {
+            Wire wire = dc.wire();
+            long readPosition = wire.bytes().readPosition();
+            long key;
+            try {
+                key = keyExtractor.key(wire);
+            } finally {
+                wire.bytes().readPosition(readPosition);
+            }
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) Long.remainderUnsigned(h ^ (h >>> 32), members);
+        }
+        RollCycle rollCycle = queue.rollCycle();
+        return blockOwner(rollCycle.toCycle(index), rollCycle.toSequenceNumber(index) / spacing);
+    }
+
+    private int blockOwner(int cycle, long block) {
+        return (int) Long.remainderUnsigned(cycle + block, members);
+    }
+
+    /**
+     * One place in a group, which reads the excerpts assigned to it. Like a tailer, this is not thread-safe.
+     */
+    public final class Member implements Closeable {
+        private final int member;
+        @NotNull
+        private final SingleChronicleQueueExcerpts.StoreTailer tailer;
+        @NotNull
+        private final LongValue lease;
+        private volatile long expiry;
+        private long noJumpBefore = Long.MIN_VALUE;
+        private boolean closed;
+
+        Member(int member, @NotNull LongValue lease, long expiry) {
+            this.member = member;
+            this.lease = lease;
+            this.expiry = expiry;
+            this.tailer = (SingleChronicleQueueExcerpts.StoreTailer) queue.createTailer("group." + name + "." + member);
+            queue.addEventHandler(new LeaseRenewer());
+        }
+
+        public int member() {
+            return member;
+        }
+
+        /**
+         * @return the tailer this member reads with, which is positioned after the last excerpt it read
+         */
+        @NotNull
+        public ExcerptTailer tailer() {
+            return tailer;
+        }
+
+        /**
+         * Read the next excerpt assigned to this member, skipping those assigned to the others.
+         *
+         * @return the excerpt, which is not present if there isn't one to read yet
+         * @throws IllegalStateException if this member's lease ran out and another process took its place
+         */
+        @NotNull
+        public DocumentContext readingDocument() {
+            if (closed)
+                throw new IllegalStateException("Closed");
+            renewLease();
+            for (; ; ) {
+                DocumentContext dc = tailer.readingDocument();
+                if (!dc.isPresent())
+                    return dc;
+                long index = dc.index();
+                if (memberFor(index, dc, tailer.indexSpacing()) == member)
+                    return dc;
+                if (keyExtractor == null && index >= noJumpBefore)
+                    skipToNextBlock(dc, index);
+                else
+                    dc.close();
+            }
+        }
+
+        /**
+         * Move to the start of the next block for this member, or if it hasn't been written yet, past this excerpt.
+         */
+        private void skipToNextBlock(@NotNull DocumentContext dc, long index) {
+            RollCycle rollCycle = queue.rollCycle();
+            int cycle = rollCycle.toCycle(index);
+            int spacing = tailer.indexSpacing();
+            long block = rollCycle.toSequenceNumber(index) / spacing;
+            long next = block + Long.remainderUnsigned(member - blockOwner(cycle, block) + members, members);
+            long nextIndex = rollCycle.toIndex(cycle, next * spacing);
+            dc.rollbackOnClose();
+            dc.close();
+            if (tailer.moveToIndex(nextIndex))
+                return;
+            // read on one at a time until then, rather than trying to move each time.
+            noJumpBefore = nextIndex;
+            tailer.moveToIndex(index);
+            try (DocumentContext skipped = tailer.readingDocument()) {
+                assert skipped.isPresent();
+            }
+        }
+
+        long expiry() {
+            return expiry;
+        }
+
+        private synchronized void renewLease() {
+            if (closed)
+                return;
+            long now = queue.time().currentTimeMillis();
+            if (now < expiry - LEASE_MILLIS * 2 / 3)
+                return;
+            long newExpiry = now + LEASE_MILLIS;
+            if (!lease.compareAndSwapValue(expiry, newExpiry))
+                throw new IllegalStateException("Member " + member + " of consumer group " + name + " lost its lease");
+            expiry = newExpiry;
+        }
+
+        /**
+         * Leave the group, so another process can take this place.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed)
+                return;
+            closed = true;
+            lease.compareAndSwapValue(expiry, 0);
+            closeQuietly(lease);
+        }
+
+        /**
+         * Renews the lease from the queue's event loop, so a member which is busy or waiting for excerpts keeps its place.
+         */
+        private final class LeaseRenewer implements EventHandler {
+            @Override
+            public boolean action() throws InvalidEventHandlerException {
+                if (closed || queue.isClosed())
+                    throw new InvalidEventHandlerException("Member " + member + " of consumer group " + name + " left");
+                try {
+                    renewLease();
+                } catch (IllegalStateException lost) {
+                    // reported to the member on its next read
+                    throw new InvalidEventHandlerException(lost.getMessage());
+                }
+                return false;
+            }
+
+            @NotNull
+            @Override
+            public HandlerPriority priority() {
+                return HandlerPriority.MONITOR;
+            }
+        }
+    }
+}
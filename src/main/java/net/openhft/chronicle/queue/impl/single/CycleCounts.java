@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The number of excerpts and bytes in each sealed cycle, so counting excerpts doesn't have to open cold cycles.
+ * <p>
+ * The counts are in a memory mapped file in the queue's directory, written by the appender which writes a cycle's
+ * EOF. The file has a header then a 16 byte slot per cycle from the first cycle when it was created, each the count
+ * + 1, so 0 is unknown, then the length of the cycle's file. Cycles before that, or more than
+ * {@code chronicle.queue.cycleCounts.maxCycles} after it, aren't counted. A cycle's slot is cleared if its file is
+ * created again, and the cycles skipped before it are counted as empty.
+ * <p>
+ * The header has a version which is bumped on every change, so ranges of cycles are summed from prefix sums which
+ * are only rebuilt after a change, see {@link #countBetween(int, int, int)}. Skipped cycles have a length of 0, so
+ * a range with a cycle deleted from the middle of the queue isn't summed, as the deleted cycle would still be counted.
+ * <p>
+ * Only used with {@link SingleChronicleQueueBuilder#cycleCounts(boolean)}.
+ */
+final class CycleCounts implements Closeable {
+    static final String FILE_NAME = "cycle-counts.cq4c";
+    private static final int MAX_CYCLES = Integer.getInteger("chronicle.queue.cycleCounts.maxCycles", 1 << 22);
+    private static final long CHUNK_SIZE = 1 << 20;
+    private static final int MAGIC = 0x434E5431; // CNT1
+    // how often to look for a file another process might have created
+    private static final long RECHECK_MILLIS = 100;
+
+    private static final long BASE = 8;
+    private static final long SLOTS = 16;
+    private static final long VERSION = 24;
+    private static final long HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final File file;
+    private final boolean readOnly;
+    @Nullable
+    private volatile MappedBytes bytes;
+    // set before bytes is published
+    private long base;
+    private long checkedMillis;
+    private boolean closed;
+    // prefixSums[i] is the sum of the counts of the slots before i, unknown[i] the number of those not known and
+    // files[i] the number of those which had a file
+    private long[] prefixSums = {0};
+    private int[] unknown = {0};
+    private int[] files = {0};
+    private long prefixVersion = -1;
+
+    CycleCounts(@NotNull SingleChronicleQueue queue, @NotNull File file, boolean readOnly) {
+        this.queue = queue;
+        this.file = file;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return the number of excerpts in a sealed cycle, or -1 if it isn't known
+     */
+    long count(int cycle) {
+        MappedBytes bytes = recheck();
+        long offset = offset(bytes, cycle);
+        return offset < 0 ? -1 : bytes.readVolatileLong(offset) - 1;
+    }
+
+    /**
+     * @return the length of a sealed cycle's file, or -1 if it isn't known
+     */
+    long length(int cycle) {
+        MappedBytes bytes = recheck();
+        long offset = offset(bytes, cycle);
+        return offset < 0 || bytes.readVolatileLong(offset) == 0 ? -1 : bytes.readLong(offset + 8);
+    }
+
+    /**
+     * @param cycleFiles the number of cycle files from {@code fromCycle} to {@code toCycle}
+     * @return the number of excerpts in the cycles from {@code fromCycle} to {@code toCycle} inclusive, or -1 if any
+     * of them isn't known, or a cycle in the range was deleted
+     */
+    synchronized long countBetween(int fromCycle, int toCycle, int cycleFiles) {
+        if (fromCycle > toCycle)
+            return 0;
+        MappedBytes bytes = recheck();
+        if (bytes == null)
+            return -1;
+        long from = fromCycle - base;
+        long to = toCycle - base + 1;
+        if (from < 0 || to > bytes.readVolatileLong(SLOTS))
+            return -1;
+        long version = bytes.readVolatileLong(VERSION);
+        if (version != prefixVersion || to >= prefixSums.length)
+            rebuildPrefixSums(bytes, version);
+        if (to >= prefixSums.length || unknown[(int) to] != unknown[(int) from]
+                || files[(int) to] - files[(int) from] != cycleFiles)
+            return -1;
+        return prefixSums[(int) to] - prefixSums[(int) from];
+    }
+
+    private void rebuildPrefixSums(@NotNull MappedBytes bytes, long version) {
+        int slots = (int) Math.min(bytes.readVolatileLong(SLOTS), MAX_CYCLES);
+        long[] prefixSums = new long[slots + 1];
+        int[] unknown = new int[slots + 1];
+        int[] files = new int[slots + 1];
+        for (int i = 0; i < slots; i++) {
+            long offset = HEADER_SIZE + (long) i * SLOT_SIZE;
+            long count = bytes.readVolatileLong(offset) - 1;
+            prefixSums[i + 1] = prefixSums[i] + Math.max(0, count);
+            unknown[i + 1] = unknown[i] + (count < 0 ? 1 : 0);
+            files[i + 1] = files[i] + (count >= 0 && bytes.readLong(offset + 8) > 0 ? 1 : 0);
+        }
+        this.prefixSums = prefixSums;
+        this.unknown = unknown;
+        this.files = files;
+        // changed while it was read, so read it again next time.
+        prefixVersion = bytes.readVolatileLong(VERSION) == version ? version : -1;
+    }
+
+    /**
+     * Record the excerpts in a cycle once its EOF has been written, so no more can be added.
+     */
+    synchronized void sealed(int cycle, long count, long length) {
+        if (readOnly)
+            return;
+        MappedBytes bytes = open(true, cycle);
+        if (bytes == null)
+            return;
+        long slot = cycle - base;
+        if (slot < 0 || slot >= MAX_CYCLES)
+            return;
+        long offset = HEADER_SIZE + slot * SLOT_SIZE;
+        bytes.writeLong(offset + 8, length);
+        bytes.writeOrderedLong(offset, count + 1);
+        extendTo(bytes, slot + 1);
+        bytes.addAndGetLong(VERSION, 1);
+    }
+
+    /**
+     * Forget a cycle whose file has been created, in case it was deleted and is being written again, and count the
+     * cycles after the last one as empty, as they were skipped.
+     *
+     * @param lastCycle the last cycle before this one was created, or {@link Integer#MIN_VALUE} if there wasn't one
+     */
+    synchronized void created(int cycle, int lastCycle) {
+        if (readOnly)
+            return;
+        MappedBytes bytes = open(lastCycle != Integer.MIN_VALUE, cycle);
+        if (bytes == null)
+            return;
+        long offset = offset(bytes, cycle);
+        if (offset >= 0)
+            bytes.writeOrderedLong(offset, 0);
+        long to = Math.min(cycle - base, MAX_CYCLES);
+        long from = lastCycle == Integer.MIN_VALUE ? to : Math.max(lastCycle + 1L - base, 0);
+        for (long slot = from; slot < to; slot++) {
+            long skipped = HEADER_SIZE + slot * SLOT_SIZE;
+            if (bytes.compareAndSwapLong(skipped, 0, 1))
+                bytes.writeLong(skipped + 8, 0);
+        }
+        extendTo(bytes, to);
+        bytes.addAndGetLong(VERSION, 1);
+    }
+
+    private static void extendTo(@NotNull MappedBytes bytes, long slots) {
+        for (long used; slots > (used = bytes.readVolatileLong(SLOTS)); )
+            if (bytes.compareAndSwapLong(SLOTS, used, slots))
+                break;
+    }
+
+    private long offset(@Nullable MappedBytes bytes, int cycle) {
+        if (bytes == null)
+            return -1;
+        long slot = cycle - base;
+        if (slot < 0 || slot >= bytes.readVolatileLong(SLOTS))
+            return -1;
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    @Nullable
+    private MappedBytes recheck() {
+        MappedBytes bytes = this.bytes;
+        if (bytes != null)
+            return bytes;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now < checkedMillis + RECHECK_MILLIS)
+                return null;
+            checkedMillis = now;
+            return open(false, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @param firstCycle the first cycle to count if the file is created
+     */
+    @Nullable
+    private synchronized MappedBytes open(boolean create, int firstCycle) {
+        if (bytes != null || closed)
+            return bytes;
+        if (!file.exists() && (!create || readOnly))
+            return null;
+        MappedBytes mapped;
+        try {
+            mapped = readOnly
+                    ? MappedBytes.mappedBytes(file, CHUNK_SIZE, OS.pageSize(), true)
+                    : MappedBytes.mappedBytes(file, CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        if (mapped.readVolatileInt(0) != MAGIC) {
+            if (!create) {
+                // not initialised yet.
+                mapped.release();
+                return null;
+            }
+            long newBase = Math.min(firstCycle, queue.firstCycle());
+            // other processes could be creating it as well.
+            queue.metaStore.doWithExclusiveLock(ts -> {
+                if (mapped.readVolatileInt(0) != MAGIC) {
+                    mapped.writeLong(BASE, newBase);
+                    mapped.writeLong(SLOTS, 0);
+                    mapped.writeLong(VERSION, 0);
+                    mapped.writeOrderedInt(0, MAGIC);
+                }
+                return null;
+            });
+        }
+        base = mapped.readLong(BASE);
+        return bytes = mapped;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        MappedBytes bytes = this.bytes;
+        this.bytes = null;
+        if (bytes != null)
+            bytes.release();
+    }
+}
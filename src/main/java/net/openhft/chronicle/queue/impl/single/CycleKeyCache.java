@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * The first and last key of each completed cycle for a named key extractor, so a {@link BinarySearch} across cycles
+ * doesn't have to open and read a file for every cycle it looks at.
+ * <p>
+ * The keys are kept in memory and, unless the queue is read-only, in a memory mapped file per name in the queue's
+ * directory so other processes and later runs can use them. The file has a header then a 24 byte slot per cycle from
+ * the first cycle when it was created, each a flag which is set once the first and last key after it are written.
+ * Cycles before that, or more than {@code chronicle.queue.binarySearch.maxCachedCycles} after it, are only kept in
+ * memory.
+ * <p>
+ * A key of {@link Long#MIN_VALUE} can't be cached, as it is used to mean unknown.
+ */
+final class CycleKeyCache implements Closeable {
+    static final long UNKNOWN = Long.MIN_VALUE;
+    static final String SUFFIX = ".cq4k";
+    private static final int MAX_CYCLES = Integer.getInteger("chronicle.queue.binarySearch.maxCachedCycles", 1 << 22);
+    private static final long CHUNK_SIZE = 1 << 20;
+    private static final int MAGIC = 0x4B455931; // KEY1
+
+    private static final long BASE = 8;
+    private static final long HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final File file;
+    @NotNull
+    private final ToLongFunction<Wire> keyExtractor;
+    // cycle -> {first, last}
+    private final Map<Integer, long[]> keys = new HashMap<>();
+    @Nullable
+    private MappedBytes bytes;
+    // set once bytes is
+    private long base;
+    private boolean closed;
+
+    CycleKeyCache(@NotNull SingleChronicleQueue queue, @NotNull String name, @NotNull ToLongFunction<Wire> keyExtractor) {
+        this.queue = queue;
+        this.file = new File(queue.path, fileName(name));
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * @return the name of the file for the keys cached under {@code name}, with a hash of the name if it has characters
+     * which can't be used in a file name
+     */
+    @NotNull
+    static String fileName(@NotNull String name) {
+        String safe = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+        if (!safe.equals(name))
+            safe += "-" + Integer.toHexString(name.hashCode());
+        return "binary-search-" + safe + SUFFIX;
+    }
+
+    @NotNull
+    ToLongFunction<Wire> keyExtractor() {
+        return keyExtractor;
+    }
+
+    /**
+     * @return the first key in a cycle, or {@link #UNKNOWN} if it has no excerpts
+     */
+    long firstKey(@NotNull ExcerptTailer tailer, int cycle) {
+        long[] firstLast = firstAndLast(tailer, cycle);
+        return firstLast == null ? readKey(tailer, cycle, 0) : firstLast[0];
+    }
+
+    /**
+     * @return the last key in a completed cycle, or {@link #UNKNOWN} if the cycle is still being written or has no excerpts
+     */
+    long lastKey(@NotNull ExcerptTailer tailer, int cycle) {
+        long[] firstLast = firstAndLast(tailer, cycle);
+        return firstLast == null ? UNKNOWN : firstLast[1];
+    }
+
+    private synchronized long[] firstAndLast(@NotNull ExcerptTailer tailer, int cycle) {
+        // the last cycle might still be written to.
+        if (cycle >= queue.lastCycle())
+            return null;
+        long[] firstLast = keys.get(cycle);
+        if (firstLast != null)
+            return firstLast;
+        MappedBytes bytes = open(cycle);
+        long offset = offset(bytes, cycle);
+        if (offset >= 0 && bytes.readVolatileLong(offset) != 0)
+            firstLast = new long[]{bytes.readLong(offset + 8), bytes.readLong(offset + 16)};
+        if (firstLast == null) {
+            firstLast = readKeys(tailer, cycle);
+            if (offset >= 0 && !queue.isReadOnly() && firstLast[0] != UNKNOWN && firstLast[1] != UNKNOWN) {
+                // other processes can only write the same keys.
+                bytes.writeLong(offset + 8, firstLast[0]);
+                bytes.writeLong(offset + 16, firstLast[1]);
+                bytes.writeOrderedLong(offset, 1);
+            }
+        }
+        keys.put(cycle, firstLast);
+        return firstLast;
+    }
+
+    private long offset(@Nullable MappedBytes bytes, int cycle) {
+        if (bytes == null)
+            return -1;
+        long slot = cycle - base;
+        if (slot < 0 || slot >= MAX_CYCLES)
+            return -1;
+        long offset = HEADER_SIZE + slot * SLOT_SIZE;
+        // a read-only mapping can't be read past the end of the file.
+        return queue.isReadOnly() && offset + SLOT_SIZE > file.length() ? -1 : offset;
+    }
+
+    /**
+     * @param firstCycle the first cycle to cache if the file is created
+     */
+    @Nullable
+    private MappedBytes open(int firstCycle) {
+        if (bytes != null || closed)
+            return bytes;
+        boolean readOnly = queue.isReadOnly();
+        if (readOnly && !file.exists())
+            return null;
+        MappedBytes mapped;
+        try {
+            mapped = readOnly
+                    ? MappedBytes.mappedBytes(file, CHUNK_SIZE, OS.pageSize(), true)
+                    : MappedBytes.mappedBytes(file, CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        if (mapped.readVolatileInt(0) != MAGIC) {
+            if (readOnly) {
+                // not initialised yet.
+                mapped.release();
+                return null;
+            }
+            long newBase = Math.min(firstCycle, queue.firstCycle());
+            // other processes could be creating it as well.
+            queue.metaStore.doWithExclusiveLock(ts -> {
+                if (mapped.readVolatileInt(0) != MAGIC) {
+                    mapped.writeLong(BASE, newBase);
+                    mapped.writeOrderedInt(0, MAGIC);
+                }
+                return null;
+            });
+        }
+        base = mapped.readLong(BASE);
+        return bytes = mapped;
+    }
+
+    @NotNull
+    private long[] readKeys(@NotNull ExcerptTailer tailer, int cycle) {
+        long count = queue.exceptsPerCycle(cycle);
+        if (count <= 0)
+            return new long[]{UNKNOWN, UNKNOWN};
+        return new long[]{readKey(tailer, cycle, 0), readKey(tailer, cycle, count - 1)};
+    }
+
+    private long readKey(@NotNull ExcerptTailer tailer, int cycle, long sequenceNumber) {
+        RollCycle rollCycle = queue.rollCycle();
+        if (!tailer.moveToIndex(rollCycle.toIndex(cycle, sequenceNumber)))
+            return UNKNOWN;
+        try (DocumentContext dc = tailer.readingDocument()) {
+            if (!dc.isPresent() || rollCycle.toCycle(dc.index()) != cycle)
+                return UNKNOWN;
+            return keyExtractor.applyAsLong(dc.wire());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        MappedBytes bytes = this.bytes;
+        this.bytes = null;
+        if (bytes != null)
+            bytes.release();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the next cycle's file from the queue's event loop ahead of the roll,
+ * see {@link SingleChronicleQueueBuilder#precreateNextCycle(long)}
+ */
+class CyclePrecreator implements EventHandler {
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    private final SingleChronicleQueue queue;
+    private long nextCheckMS;
+
+    CyclePrecreator(SingleChronicleQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException {
+        if (queue.isClosed())
+            throw new InvalidEventHandlerException("Queue closed");
+        long now = System.currentTimeMillis();
+        if (now < nextCheckMS)
+            return false;
+        nextCheckMS = now + CHECK_INTERVAL_MS;
+
+        try {
+            return queue.precreateNextCycleIfDue();
+        } catch (Exception e) {
+            if (queue.isClosed())
+                throw new InvalidEventHandlerException(e);
+            Jvm.warn().on(getClass(), "Failed to pre-create the next cycle", e);
+            return false;
+        }
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return HandlerPriority.MONITOR;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Indexes excerpts from the queue's event loop when {@link SingleChronicleQueueBuilder#deferredIndexing(boolean)} is set,
+ * so appenders only write the excerpt itself.
+ * <p>
+ * Each action holds the write lock for at most {@link #MAX_ENTRIES} index entries so appenders are never held up for long.
+ */
+class DeferredIndexer implements EventHandler {
+    static final int MAX_ENTRIES = 64;
+
+    private final SingleChronicleQueue queue;
+    private SingleChronicleQueueExcerpts.StoreAppender appender;
+
+    DeferredIndexer(SingleChronicleQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException {
+        if (queue.isClosed())
+            throw new InvalidEventHandlerException("Queue closed");
+        if (appender == null)
+            appender = queue.newStoreAppender();
+
+        try {
+            return appender.indexPending(MAX_ENTRIES) > 0;
+        } catch (Exception e) {
+            if (queue.isClosed())
+                throw new InvalidEventHandlerException(e);
+            Jvm.warn().on(getClass(), "Failed to index", e);
+            return false;
+        }
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return HandlerPriority.MEDIUM;
+    }
+}
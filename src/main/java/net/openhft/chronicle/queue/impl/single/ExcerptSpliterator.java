@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.queue.impl.WireStore;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.ParseException;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static net.openhft.chronicle.queue.impl.single.SingleChronicleQueueExcerpts.StoreTailer;
+
+/**
+ * A {@link Spliterator} over the excerpts from one index up to, but not including, another, for
+ * {@link SingleChronicleQueue#stream(long, long, Function)}.
+ * <p>
+ * A range is split at a cycle boundary if it covers more than one cycle, otherwise at a multiple of the index spacing,
+ * so the new part starts at an excerpt the index points to directly. Each part reads with its own tailer,
+ * created when it is first advanced, so the parts can be read in parallel. {@link #close()} releases the tailers
+ * of the parts which weren't read to the end.
+ */
+final class ExcerptSpliterator<T> implements Spliterator<T> {
+    // excerpts in a cycle to read rather than split further
+    private static final long MIN_SPLIT = 1 << 10;
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final Function<? super Wire, ? extends T> reader;
+    @NotNull
+    private final long[] cycles;
+    // the tailers of all the parts which haven't been released
+    @NotNull
+    private final Set<StoreTailer> tailers;
+    private int lo;
+    private final int hi;
+    // the first sequence number in cycles[lo]
+    private long fromSeq;
+    // the sequence number after the last in cycles[hi], or -1 for the end of the cycle
+    private long toSeq;
+    @Nullable
+    private StoreTailer tailer;
+    private boolean done;
+
+    private ExcerptSpliterator(@NotNull SingleChronicleQueue queue, @NotNull Function<? super Wire, ? extends T> reader,
+                               @NotNull long[] cycles, @NotNull Set<StoreTailer> tailers, int lo, int hi, long fromSeq, long toSeq) {
+        this.queue = queue;
+        this.reader = reader;
+        this.cycles = cycles;
+        this.tailers = tailers;
+        this.lo = lo;
+        this.hi = hi;
+        this.fromSeq = fromSeq;
+        this.toSeq = toSeq;
+        this.done = lo > hi;
+    }
+
+    @NotNull
+    static <T> ExcerptSpliterator<T> of(@NotNull SingleChronicleQueue queue, long fromIndex, long toIndex,
+                                        @NotNull Function<? super Wire, ? extends T> reader) {
+        RollCycle rollCycle = queue.rollCycle();
+        int firstCycle = queue.firstCycle();
+        int lastCycle = queue.lastCycle();
+        if (firstCycle > lastCycle)
+            return new ExcerptSpliterator<>(queue, reader, new long[0], ConcurrentHashMap.newKeySet(), 0, -1, 0, -1);
+        // e.g. Long.MAX_VALUE for everything
+        toIndex = Math.min(toIndex, rollCycle.toIndex(lastCycle + 1, 0));
+        int fromCycle = Math.max(firstCycle, rollCycle.toCycle(fromIndex));
+        int toCycle = Math.min(lastCycle, rollCycle.toCycle(toIndex));
+        if (fromIndex >= toIndex || fromCycle > toCycle)
+            return new ExcerptSpliterator<>(queue, reader, new long[0], ConcurrentHashMap.newKeySet(), 0, -1, 0, -1);
+
+        long[] cycles;
+        try {
+            NavigableSet<Long> set = queue.listCyclesBetween(fromCycle, toCycle);
+            cycles = new long[set.size()];
+            int i = 0;
+            for (Long cycle : set)
+                cycles[i++] = cycle;
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+        if (cycles.length == 0)
+            return new ExcerptSpliterator<>(queue, reader, cycles, ConcurrentHashMap.newKeySet(), 0, -1, 0, -1);
+
+        long fromSeq = cycles[0] == rollCycle.toCycle(fromIndex) ? rollCycle.toSequenceNumber(fromIndex) : 0;
+        long toSeq = cycles[cycles.length - 1] == rollCycle.toCycle(toIndex) ? rollCycle.toSequenceNumber(toIndex) : -1;
+        return new ExcerptSpliterator<>(queue, reader, cycles, ConcurrentHashMap.newKeySet(), 0, cycles.length - 1, fromSeq, toSeq);
+    }
+
+    @Override
+    public boolean tryAdvance(@NotNull Consumer<? super T> action) {
+        if (done)
+            return false;
+        StoreTailer tailer = tailer();
+        if (tailer != null) {
+            RollCycle rollCycle = queue.rollCycle();
+            try (DocumentContext dc = tailer.readingDocument()) {
+                if (dc.isPresent() && inRange(rollCycle, dc.index())) {
+                    action.accept(reader.apply(dc.wire()));
+                    return true;
+                }
+            }
+        }
+        finish();
+        return false;
+    }
+
+    private boolean inRange(@NotNull RollCycle rollCycle, long index) {
+        int cycle = rollCycle.toCycle(index);
+        return cycle < cycles[hi] || (cycle == cycles[hi] && (toSeq < 0 || rollCycle.toSequenceNumber(index) < toSeq));
+    }
+
+    /**
+     * @return the tailer, moved to the start of the range the first time, or null if there is nothing in the range
+     */
+    @Nullable
+    private StoreTailer tailer() {
+        if (tailer == null) {
+            tailer = (StoreTailer) queue.createTailer();
+            tailers.add(tailer);
+            RollCycle rollCycle = queue.rollCycle();
+            for (int i = lo; i <= hi; i++) {
+                if (tailer.moveToIndex(rollCycle.toIndex((int) cycles[i], i == lo ? fromSeq : 0)))
+                    return tailer;
+            }
+            return null;
+        }
+        return tailer;
+    }
+
+    private void finish() {
+        done = true;
+        if (tailer != null && tailers.remove(tailer))
+            tailer.releaseResources();
+    }
+
+    /**
+     * Release the tailers of this spliterator and of all the parts split from it, e.g. when a stream which wasn't
+     * read to the end is closed.
+     */
+    void close() {
+        for (StoreTailer t : tailers)
+            if (tailers.remove(t))
+                t.releaseResources();
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<T> trySplit() {
+        // once reading has started, the rest of the range is read by this tailer.
+        if (done || tailer != null)
+            return null;
+        if (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            ExcerptSpliterator<T> prefix = new ExcerptSpliterator<>(queue, reader, cycles, tailers, lo, mid - 1, fromSeq, -1);
+            lo = mid;
+            fromSeq = 0;
+            return prefix;
+        }
+        long end = toSeq < 0 ? queue.exceptsPerCycle((int) cycles[lo]) : toSeq;
+        if (end - fromSeq < 2 * MIN_SPLIT)
+            return null;
+        long spacing = indexSpacing((int) cycles[lo]);
+        long mid = (fromSeq + (end - fromSeq) / 2) / spacing * spacing;
+        if (mid <= fromSeq)
+            return null;
+        ExcerptSpliterator<T> prefix = new ExcerptSpliterator<>(queue, reader, cycles, tailers, lo, lo, fromSeq, mid);
+        fromSeq = mid;
+        toSeq = end;
+        return prefix;
+    }
+
+    /**
+     * @return the index spacing stored in the cycle, as each cycle can have its own
+     */
+    private long indexSpacing(int cycle) {
+        WireStore store = queue.storeForCycle(cycle, queue.epoch(), false);
+        if (store == null)
+            return queue.indexSpacing();
+        try {
+            return store instanceof SingleChronicleQueueStore
+                    ? ((SingleChronicleQueueStore) store).rollIndexSpacing()
+                    : queue.indexSpacing();
+        } finally {
+            queue.release(store);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        if (done)
+            return 0;
+        // counting the excerpts in other cycles would mean opening them.
+        return lo == hi && toSeq >= 0 ? Math.max(0, toSeq - fromSeq) : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.wire.BinaryWireCode;
+import net.openhft.chronicle.wire.Wires;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * When {@link SingleChronicleQueueBuilder#timestamps(boolean)} is set, each excerpt is preceded by a meta data record
+ * holding the time it was written, so readers which don't know about it skip it like any other meta data.
+ * <p>
+ * The record is 16 bytes, so the excerpt's header keeps the alignment it would have had, and the time is always
+ * the 8 bytes before the excerpt's header. It reads as padding then an int64 in binary wire.
+ */
+final class ExcerptTimestamps {
+    static final int LENGTH = 16;
+    static final int HEADER = Wires.META_DATA | (LENGTH - Wires.SPB_HEADER_SIZE);
+    // little endian, three bytes of padding then the int64 code.
+    static final int PREFIX = (BinaryWireCode.INT64 << 24) | (BinaryWireCode.PADDING << 16) | (BinaryWireCode.PADDING << 8) | BinaryWireCode.PADDING;
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    private ExcerptTimestamps() {
+    }
+
+    /**
+     * Write a complete record at {@code position}, which must not have been written to.
+     */
+    static void write(@NotNull Bytes<?> bytes, long position, long epochNanos) {
+        bytes.writeInt(position + 4, PREFIX);
+        bytes.writeLong(position + 8, epochNanos);
+        bytes.writeOrderedInt(position, HEADER);
+    }
+
+    /**
+     * @param headerPosition the position of an excerpt's header
+     * @return when the excerpt was written, or {@link #UNKNOWN} if it wasn't given a timestamp
+     */
+    static long read(@NotNull Bytes<?> bytes, long headerPosition) {
+        long position = headerPosition - LENGTH;
+        if (position < 0
+                || bytes.readVolatileInt(position) != HEADER
+                || bytes.readInt(position + 4) != PREFIX)
+            return UNKNOWN;
+        return bytes.readLong(position + 8);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueExcerpts.StoreTailer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Checks the index of every sealed cycle of a queue against the positions of its excerpts, and optionally repairs it,
+ * so moveToIndex doesn't fall back to long linear scans after a writer crashed part way through indexing.
+ * Cycles are checked in parallel. Repairing must only be done while nothing is writing to the queue.
+ */
+public final class IndexVerifier {
+    private IndexVerifier() {
+    }
+
+    /**
+     * @param dir         the queue's directory
+     * @param repair      true to rewrite missing and incorrect index entries
+     * @param parallelism the number of cycles to check at once
+     * @return what was found
+     */
+    @NotNull
+    public static Report verify(@NotNull File dir, boolean repair, int parallelism) {
+        try (SingleChronicleQueue queue = SingleChronicleQueueBuilder.binary(dir)
+                .readOnly(!repair)
+                .build()) {
+            return verify(queue, repair, parallelism);
+        }
+    }
+
+    @NotNull
+    public static Report verify(@NotNull SingleChronicleQueue queue, boolean repair, int parallelism) {
+        Report report = new Report();
+        int firstCycle = queue.firstCycle();
+        int lastCycle = queue.lastCycle();
+        // the last cycle can still be written to.
+        if (firstCycle >= lastCycle)
+            return report;
+        NavigableSet<Long> cycles;
+        try {
+            cycles = queue.listCyclesBetween(firstCycle, lastCycle - 1);
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<Report>> tasks = new ArrayList<>();
+            for (long cycle : cycles)
+                tasks.add(pool.submit(() -> verifyCycle(queue, (int) cycle, repair)));
+            for (ForkJoinTask<Report> task : tasks)
+                report.add(task.join());
+        } finally {
+            pool.shutdown();
+        }
+        return report;
+    }
+
+    @NotNull
+    private static Report verifyCycle(@NotNull SingleChronicleQueue queue, int cycle, boolean repair) {
+        Report report = new Report();
+        report.cycles++;
+        StoreTailer tailer = new StoreTailer(queue);
+        try {
+            if (tailer.moveToIndex(queue.rollCycle().toIndex(cycle, 0)))
+                ((SingleChronicleQueueStore) tailer.store).indexing.verify(tailer, repair, report);
+        } finally {
+            tailer.releaseResources();
+        }
+        return report;
+    }
+
+    /**
+     * The number of index entries checked, and the number of each kind of problem found.
+     * Each entry missing or incorrect makes looking up the excerpts after it scan from an earlier entry.
+     */
+    public static final class Report {
+        int cycles;
+        long entries;
+        long missing;
+        long incorrect;
+        long repaired;
+        long unrepairable;
+
+        void add(@NotNull Report report) {
+            cycles += report.cycles;
+            entries += report.entries;
+            missing += report.missing;
+            incorrect += report.incorrect;
+            repaired += report.repaired;
+            unrepairable += report.unrepairable;
+        }
+
+        public int cycles() {
+            return cycles;
+        }
+
+        public long entries() {
+            return entries;
+        }
+
+        public long missing() {
+            return missing;
+        }
+
+        public long incorrect() {
+            return incorrect;
+        }
+
+        /**
+         * @return the linear scan hotspots removed
+         */
+        public long repaired() {
+            return repaired;
+        }
+
+        /**
+         * @return the entries which couldn't be repaired as the index array they would be in doesn't exist
+         */
+        public long unrepairable() {
+            return unrepairable;
+        }
+
+        @Override
+        public String toString() {
+            return "cycles: " + cycles +
+                    ", entries: " + entries +
+                    ", missing: " + missing +
+                    ", incorrect: " + incorrect +
+                    ", repaired: " + repaired +
+                    ", unrepairable: " + unrepairable;
+        }
+    }
+}
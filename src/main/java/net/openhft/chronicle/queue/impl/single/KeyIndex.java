@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A memory mapped hash index from key to sequence number, for one cycle, in a file beside the cycle's file. The same
+ * format maps each key to the index of its first excerpt for the whole queue, see {@link KeyIndexes}
+ * <p>
+ * The file has a header then hash tables of 16 byte slots, each the key then the sequence number + 1, so 0 is an
+ * empty slot. When a table is three quarters full, another twice the size is added after it, so tables hold
+ * increasing sequence numbers and the first table with a key has its first excerpt.
+ * Excerpts after {@link #indexedUpTo()} haven't been indexed yet.
+ * <p>
+ * Only one thread may add entries at a time, readers can look up keys concurrently.
+ */
+final class KeyIndex implements Closeable {
+    static final String SUFFIX = ".keyindex";
+    static final int INITIAL_CAPACITY = 1 << 12;
+    private static final long CHUNK_SIZE = 16 << 20;
+    private static final int MAGIC = 0x4B455931; // KEY1
+
+    private static final long TABLES = 4;
+    private static final long INDEXED_UP_TO = 8;
+    private static final long ENTRIES = 16;
+    private static final long HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+
+    @NotNull
+    private final MappedBytes bytes;
+
+    private KeyIndex(@NotNull MappedBytes bytes) {
+        this.bytes = bytes;
+    }
+
+    @NotNull
+    static File fileFor(@NotNull File cycleFile) {
+        String name = cycleFile.getName();
+        if (name.endsWith(SingleChronicleQueue.SUFFIX))
+            name = name.substring(0, name.length() - SingleChronicleQueue.SUFFIX.length());
+        return new File(cycleFile.getParentFile(), name + SUFFIX);
+    }
+
+    /**
+     * @param create true to create and initialise the file, only while holding the key index lock
+     * @return the index in {@code file}, or null if it doesn't exist, or hasn't been initialised, and {@code create} is
+     * false
+     */
+    @Nullable
+    static KeyIndex open(@NotNull File file, boolean create, boolean readOnly) {
+        if (!file.exists() && (!create || readOnly))
+            return null;
+        MappedBytes bytes;
+        try {
+            bytes = readOnly
+                    ? MappedBytes.mappedBytes(file, CHUNK_SIZE, OS.pageSize(), true)
+                    : MappedBytes.mappedBytes(file, CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        bytes.readLimit(bytes.capacity());
+        if (bytes.readVolatileInt(0) != MAGIC) {
+            if (readOnly || !create) {
+                // not initialised yet, only the process holding the lock can do that.
+                bytes.release();
+                return null;
+            }
+            bytes.writeLong(INDEXED_UP_TO, 0);
+            bytes.writeLong(ENTRIES, 0);
+            allocate(bytes, 0);
+            bytes.writeOrderedInt(TABLES, 1);
+            bytes.writeOrderedInt(0, MAGIC);
+        }
+        return new KeyIndex(bytes);
+    }
+
+    private static long capacity(int table) {
+        return (long) INITIAL_CAPACITY << table;
+    }
+
+    private static long offset(int table) {
+        return HEADER_SIZE + SLOT_SIZE * (capacity(table) - INITIAL_CAPACITY);
+    }
+
+    private static void allocate(@NotNull MappedBytes bytes, int table) {
+        // grow the file before the table is visible to readers
+        bytes.writeLong(offset(table + 1) - 8, 0L);
+    }
+
+    private static long slot(long key, long capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    /**
+     * @return the next sequence number to index
+     */
+    long indexedUpTo() {
+        return bytes.readVolatileLong(INDEXED_UP_TO);
+    }
+
+    void indexedUpTo(long sequenceNumber) {
+        bytes.writeOrderedLong(INDEXED_UP_TO, sequenceNumber);
+    }
+
+    /**
+     * Add an entry, excerpts must be added in order.
+     */
+    void add(long key, long sequenceNumber) {
+        int table = bytes.readVolatileInt(TABLES) - 1;
+        long entries = bytes.readLong(ENTRIES);
+        long capacity = capacity(table);
+        if (entries >= capacity / 4 * 3) {
+            allocate(bytes, ++table);
+            capacity = capacity(table);
+            entries = 0;
+            bytes.writeOrderedInt(TABLES, table + 1);
+        }
+        long offset = offset(table);
+        for (long i = slot(key, capacity); ; i = (i + 1) & (capacity - 1)) {
+            long pos = offset + i * SLOT_SIZE;
+            if (bytes.readLong(pos + 8) == 0) {
+                bytes.writeLong(pos, key);
+                bytes.writeOrderedLong(pos + 8, sequenceNumber + 1);
+                break;
+            }
+        }
+        bytes.writeLong(ENTRIES, entries + 1);
+    }
+
+    /**
+     * @return the sequence number of the first excerpt indexed with {@code key}, or -1 if there isn't one
+     */
+    long find(long key) {
+        return find(key, 0);
+    }
+
+    /**
+     * @return the sequence number of the first excerpt from {@code fromSequenceNumber} on indexed with {@code key}, or
+     * -1 if there isn't one
+     */
+    long find(long key, long fromSequenceNumber) {
+        int tables = bytes.readVolatileInt(TABLES);
+        for (int table = 0; table < tables; table++) {
+            long capacity = capacity(table);
+            long offset = offset(table);
+            long found = Long.MAX_VALUE;
+            for (long i = slot(key, capacity); ; i = (i + 1) & (capacity - 1)) {
+                long pos = offset + i * SLOT_SIZE;
+                long value = bytes.readVolatileLong(pos + 8);
+                if (value == 0)
+                    break;
+                if (bytes.readLong(pos) == key && value - 1 >= fromSequenceNumber)
+                    found = Math.min(found, value - 1);
+            }
+            if (found != Long.MAX_VALUE)
+                return found;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        bytes.release();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.queue.TailerDirection;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maintains the {@link KeyIndexes} from the queue's event loop when a
+ * {@link SingleChronicleQueueBuilder#keyExtractor(net.openhft.chronicle.queue.KeyExtractor)} is set.
+ * <p>
+ * It starts from the first cycle, so any missing indexes are rebuilt, then follows the queue to the last cycle.
+ * Each action indexes at most {@link #MAX_ENTRIES} excerpts. The indexes of deleted cycles are removed when it starts
+ * and each time it moves on to the next cycle.
+ */
+class KeyIndexer implements EventHandler {
+    static final int MAX_ENTRIES = 64;
+
+    private final SingleChronicleQueue queue;
+    private final KeyIndexes keyIndexes;
+    private int cycle = Integer.MIN_VALUE;
+
+    KeyIndexer(SingleChronicleQueue queue, KeyIndexes keyIndexes) {
+        this.queue = queue;
+        this.keyIndexes = keyIndexes;
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException {
+        if (queue.isClosed())
+            throw new InvalidEventHandlerException("Queue closed");
+
+        try {
+            if (cycle == Integer.MIN_VALUE) {
+                int firstCycle = queue.firstCycle();
+                if (firstCycle == Integer.MAX_VALUE)
+                    return false;
+                cycle = firstCycle;
+                keyIndexes.removeOrphans();
+            }
+            if (keyIndexes.indexPending(cycle, MAX_ENTRIES) > 0)
+                return true;
+            if (cycle >= queue.lastCycle())
+                return false;
+            int next = queue.nextCycle(cycle, TailerDirection.FORWARD);
+            if (next == -1)
+                return false;
+            cycle = next;
+            keyIndexes.removeOrphans();
+            return true;
+        } catch (Exception e) {
+            if (queue.isClosed())
+                throw new InvalidEventHandlerException(e);
+            Jvm.warn().on(getClass(), "Failed to index keys", e);
+            return false;
+        }
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return HandlerPriority.MEDIUM;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.KeyExtractor;
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.queue.TailerDirection;
+import net.openhft.chronicle.queue.impl.WireStore;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The {@link KeyIndex} of each cycle for the queue's {@link KeyExtractor}, and one for the whole queue from each key to
+ * the index of its first excerpt, so a lookup maps at most one file.
+ * <p>
+ * The indexes are added to by a {@link KeyIndexer} on the event loop, holding a lock of their own so only one process
+ * adds to them, without holding up appenders. A missing cycle index is rebuilt from the cycle's excerpts, and the queue's
+ * index is rebuilt with all of them. Lookups don't wait for the indexer, excerpts it hasn't reached yet are read and
+ * their keys compared. As keys can be shared, e.g. by text ids hashed to the same key, each excerpt found is read
+ * to check its key and whether it matches, skipping to the next excerpt with the key if it doesn't.
+ */
+final class KeyIndexes implements Closeable {
+    static final String FIRST_INDEXES = "first-indexes" + KeyIndex.SUFFIX;
+    private static final int MAX_OPEN = Integer.getInteger("chronicle.queue.keyIndex.maxOpen", 16);
+
+    @NotNull
+    private final SingleChronicleQueue queue;
+    @NotNull
+    private final KeyExtractor keyExtractor;
+    @NotNull
+    private final WriteLock lock;
+    private final Map<Integer, KeyIndex> open = new LinkedHashMap<Integer, KeyIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, KeyIndex> eldest) {
+            if (size() <= MAX_OPEN)
+                return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+    // from each key to the index of its first excerpt.
+    @Nullable
+    private KeyIndex firstIndexes;
+    private ExcerptTailer tailer;
+    private boolean closed;
+
+    KeyIndexes(@NotNull SingleChronicleQueue queue, @NotNull KeyExtractor keyExtractor, @NotNull WriteLock lock) {
+        this.queue = queue;
+        this.keyExtractor = keyExtractor;
+        this.lock = lock;
+    }
+
+    /**
+     * @param matches checks an excerpt with the key is the one wanted, e.g. compares the text a key was hashed from
+     * @return the index of the first excerpt with {@code key} which {@code matches}, or -1 if there isn't one
+     */
+    synchronized long indexOf(long key, @NotNull Predicate<Wire> matches) {
+        int firstCycle = queue.firstCycle();
+        if (closed || firstCycle == Integer.MAX_VALUE)
+            return -1;
+        KeyIndex firstIndexes = firstIndexes(false);
+        if (firstIndexes == null)
+            return indexOfByCycle(key, matches, firstCycle, 0);
+        RollCycle rollCycle = queue.rollCycle();
+        // read before the table, so every excerpt before it has been added.
+        long from = firstIndexes.indexedUpTo();
+        long index = firstIndexes.find(key);
+        if (index >= 0) {
+            int cycle = rollCycle.toCycle(index);
+            if (cycle < firstCycle)
+                // its first excerpt was in a cycle which has been deleted.
+                return indexOfByCycle(key, matches, firstCycle, 0);
+            if (matches(index, key, matches))
+                return index;
+            // another excerpt with the same key, look for the next one.
+            return indexOfByCycle(key, matches, cycle, rollCycle.toSequenceNumber(index) + 1);
+        }
+        return scanFrom(Math.max(from, rollCycle.toIndex(firstCycle, 0)), key, matches);
+    }
+
+    /**
+     * Look for the key in each cycle's index in turn, used when the queue's index can't answer.
+     */
+    private long indexOfByCycle(long key, @NotNull Predicate<Wire> matches, int cycle, long fromSequenceNumber) {
+        RollCycle rollCycle = queue.rollCycle();
+        try {
+            while (cycle != -1 && cycle <= queue.lastCycle()) {
+                long sequenceNumber = sequenceNumberOf(cycle, key, matches, fromSequenceNumber);
+                if (sequenceNumber >= 0)
+                    return rollCycle.toIndex(cycle, sequenceNumber);
+                cycle = queue.nextCycle(cycle, TailerDirection.FORWARD);
+                fromSequenceNumber = 0;
+            }
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+        return -1;
+    }
+
+    private long sequenceNumberOf(int cycle, long key, @NotNull Predicate<Wire> matches, long fromSequenceNumber) {
+        RollCycle rollCycle = queue.rollCycle();
+        KeyIndex keyIndex = keyIndex(cycle, false);
+        long from = fromSequenceNumber;
+        if (keyIndex != null) {
+            // read before the table, so every excerpt before it has been added.
+            from = Math.max(from, keyIndex.indexedUpTo());
+            for (long sequenceNumber = keyIndex.find(key, fromSequenceNumber); sequenceNumber >= 0;
+                 sequenceNumber = keyIndex.find(key, sequenceNumber + 1))
+                if (matches(rollCycle.toIndex(cycle, sequenceNumber), key, matches))
+                    return sequenceNumber;
+        }
+        ExcerptTailer tailer = tailer();
+        if (!tailer.moveToIndex(rollCycle.toIndex(cycle, from)))
+            return -1;
+        while (true) {
+            try (DocumentContext dc = tailer.readingDocument()) {
+                if (!dc.isPresent() || rollCycle.toCycle(dc.index()) != cycle)
+                    return -1;
+                if (matches(dc, key, matches))
+                    return rollCycle.toSequenceNumber(dc.index());
+            }
+        }
+    }
+
+    /**
+     * @return the index of the first excerpt from {@code index} on with {@code key}, or -1 if there isn't one
+     */
+    private long scanFrom(long index, long key, @NotNull Predicate<Wire> matches) {
+        ExcerptTailer tailer = tailer();
+        if (!tailer.moveToIndex(index)) {
+            // e.g. the end of a cycle the indexer has finished.
+            try {
+                int next = queue.nextCycle(queue.rollCycle().toCycle(index), TailerDirection.FORWARD);
+                if (next == -1 || !tailer.moveToIndex(queue.rollCycle().toIndex(next, 0)))
+                    return -1;
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        while (true) {
+            try (DocumentContext dc = tailer.readingDocument()) {
+                if (!dc.isPresent())
+                    return -1;
+                if (matches(dc, key, matches))
+                    return dc.index();
+            }
+        }
+    }
+
+    /**
+     * Read an excerpt an index points to, as the index only has the key, which could be shared by other excerpts.
+     */
+    private boolean matches(long index, long key, @NotNull Predicate<Wire> matches) {
+        ExcerptTailer tailer = tailer();
+        if (!tailer.moveToIndex(index))
+            return false;
+        try (DocumentContext dc = tailer.readingDocument()) {
+            return dc.isPresent() && dc.index() == index && matches(dc, key, matches);
+        }
+    }
+
+    private boolean matches(@NotNull DocumentContext dc, long key, @NotNull Predicate<Wire> matches) {
+        Wire wire = dc.wire();
+        long position = wire.bytes().readPosition();
+        if (keyExtractor.key(wire) != key)
+            return false;
+        wire.bytes().readPosition(position);
+        return matches.test(wire);
+    }
+
+    /**
+     * Add up to {@code maxEntries} excerpts of a cycle which haven't been indexed, creating its index if needed.
+     *
+     * @return the number of excerpts indexed
+     */
+    synchronized int indexPending(int cycle, int maxEntries) {
+        if (closed || upToDate(cycle))
+            return 0;
+        lock.lock();
+        try {
+            KeyIndex firstIndexes = firstIndexes(true);
+            KeyIndex keyIndex = keyIndex(cycle, true);
+            if (keyIndex == null || firstIndexes == null)
+                return 0;
+            long next = keyIndex.indexedUpTo();
+            ExcerptTailer tailer = tailer();
+            RollCycle rollCycle = queue.rollCycle();
+            if (!tailer.moveToIndex(rollCycle.toIndex(cycle, next)))
+                return 0;
+            int count = 0;
+            try {
+                for (; count < maxEntries; count++) {
+                    try (DocumentContext dc = tailer.readingDocument()) {
+                        if (!dc.isPresent() || rollCycle.toCycle(dc.index()) != cycle)
+                            break;
+                        long sequenceNumber = rollCycle.toSequenceNumber(dc.index());
+                        long key = keyOf(dc);
+                        if (key != KeyExtractor.NO_KEY) {
+                            keyIndex.add(key, sequenceNumber);
+                            if (firstIndexes.find(key) < 0)
+                                firstIndexes.add(key, dc.index());
+                        }
+                        next = sequenceNumber + 1;
+                    }
+                }
+            } finally {
+                keyIndex.indexedUpTo(next);
+                // a cycle index being rebuilt is behind the queue's.
+                long index = rollCycle.toIndex(cycle, next);
+                if (index > firstIndexes.indexedUpTo())
+                    firstIndexes.indexedUpTo(index);
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the cycle's index has reached its last excerpt, checked without the lock, so an idle indexer
+     * doesn't contend with other processes
+     */
+    private boolean upToDate(int cycle) {
+        KeyIndex keyIndex = open.get(cycle);
+        if (keyIndex == null || firstIndexes == null)
+            return false;
+        WireStore store = queue.storeForCycle(cycle, queue.epoch(), false);
+        if (!(store instanceof SingleChronicleQueueStore))
+            return false;
+        try {
+            long lastSequenceNumber = ((SingleChronicleQueueStore) store).knownLastSequenceNumber();
+            return lastSequenceNumber != Long.MIN_VALUE && keyIndex.indexedUpTo() > lastSequenceNumber;
+        } finally {
+            queue.release(store);
+        }
+    }
+
+    private long keyOf(@NotNull DocumentContext dc) {
+        try {
+            return keyExtractor.key(dc.wire());
+        } catch (RuntimeException e) {
+            // otherwise the indexer would be stuck on this excerpt.
+            Jvm.warn().on(getClass(), "Failed to extract a key from " + Long.toHexString(dc.index()) + ", not indexed", e);
+            return KeyExtractor.NO_KEY;
+        }
+    }
+
+    /**
+     * Delete the indexes of cycles which have been deleted.
+     */
+    synchronized void removeOrphans() {
+        if (closed)
+            return;
+        lock.lock();
+        try {
+            for (Iterator<Map.Entry<Integer, KeyIndex>> it = open.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, KeyIndex> entry = it.next();
+                if (!queue.fileForCycle(entry.getKey()).exists()) {
+                    entry.getValue().close();
+                    it.remove();
+                }
+            }
+            File[] files = queue.path.listFiles((dir, name) -> name.endsWith(KeyIndex.SUFFIX) && !name.equals(FIRST_INDEXES));
+            if (files == null)
+                return;
+            for (File file : files) {
+                String name = file.getName();
+                File cycleFile = new File(file.getParentFile(),
+                        name.substring(0, name.length() - KeyIndex.SUFFIX.length()) + SingleChronicleQueue.SUFFIX);
+                if (!cycleFile.exists() && !file.delete())
+                    Jvm.warn().on(getClass(), "Unable to delete " + file);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nullable
+    private KeyIndex firstIndexes(boolean create) {
+        if (firstIndexes == null) {
+            File file = new File(queue.path, FIRST_INDEXES);
+            boolean exists = file.exists();
+            firstIndexes = KeyIndex.open(file, create, queue.isReadOnly());
+            if (create && firstIndexes != null && !exists)
+                // so the cycle indexes are rebuilt, adding every key to this one.
+                deleteCycleIndexes();
+        }
+        return firstIndexes;
+    }
+
+    private void deleteCycleIndexes() {
+        open.values().forEach(KeyIndex::close);
+        open.clear();
+        File[] files = queue.path.listFiles((dir, name) -> name.endsWith(KeyIndex.SUFFIX) && !name.equals(FIRST_INDEXES));
+        if (files == null)
+            return;
+        for (File file : files)
+            if (!file.delete())
+                Jvm.warn().on(getClass(), "Unable to delete " + file);
+    }
+
+    @Nullable
+    private KeyIndex keyIndex(int cycle, boolean create) {
+        KeyIndex keyIndex = open.get(cycle);
+        if (keyIndex == null) {
+            keyIndex = KeyIndex.open(KeyIndex.fileFor(queue.fileForCycle(cycle)), create, queue.isReadOnly());
+            if (keyIndex != null)
+                open.put(cycle, keyIndex);
+        }
+        return keyIndex;
+    }
+
+    @NotNull
+    private ExcerptTailer tailer() {
+        if (tailer == null)
+            tailer = queue.createTailer();
+        return tailer;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        open.values().forEach(KeyIndex::close);
+        open.clear();
+        if (firstIndexes != null)
+            firstIndexes.close();
+        lock.close();
+    }
+}
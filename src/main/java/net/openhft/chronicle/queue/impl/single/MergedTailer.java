@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.KeyExtractor;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.NoDocumentContext;
+import org.jetbrains.annotations.NotNull;
+
+import static net.openhft.chronicle.wire.Wires.SPB_HEADER_SIZE;
+
+/**
+ * Reads the excerpts of several tailers, usually of different queues, in order of a key such as when they were written.
+ * <p>
+ * The next excerpt of each tailer is read to get its key then rolled back, so it is read in place when it is its turn,
+ * and a heap of the tailers by their next key picks which is read next. Excerpts with the same key are read in the
+ * order the tailers were given. Nothing is copied or allocated per excerpt.
+ * <p>
+ * The order is only global across the excerpts which have been written when they are read. An excerpt written
+ * later to a tailer which had nothing to read can have a lower key than excerpts already read from other tailers.
+ * Like the tailers themselves, this is not thread-safe.
+ */
+public final class MergedTailer {
+    /**
+     * Orders excerpts by when they were written, for queues with {@link SingleChronicleQueueBuilder#timestamps(boolean)}.
+     * Excerpts without a timestamp have {@link KeyExtractor#NO_KEY}, so they are read first.
+     */
+    public static final KeyExtractor TIMESTAMP = wire -> {
+        Bytes<?> bytes = wire.bytes();
+        long time = ExcerptTimestamps.read(bytes, bytes.readPosition() - SPB_HEADER_SIZE);
+        return time == ExcerptTimestamps.UNKNOWN ? KeyExtractor.NO_KEY : time;
+    };
+
+    @NotNull
+    private final ExcerptTailer[] tailers;
+    @NotNull
+    private final KeyExtractor keyExtractor;
+    // the key of the next excerpt of each tailer in the heap
+    @NotNull
+    private final long[] keys;
+    @NotNull
+    private final boolean[] inHeap;
+    // tailers with an excerpt to read, with the lowest key first
+    @NotNull
+    private final int[] heap;
+    private int size;
+    private int source = -1;
+
+    /**
+     * @param keyExtractor the key to order excerpts by, which must increase for the excerpts of each tailer
+     * @param tailers      to read from, where they are now
+     */
+    public MergedTailer(@NotNull KeyExtractor keyExtractor, @NotNull ExcerptTailer... tailers) {
+        if (tailers.length == 0)
+            throw new IllegalArgumentException("No tailers to merge");
+        this.keyExtractor = keyExtractor;
+        this.tailers = tailers.clone();
+        this.keys = new long[tailers.length];
+        this.inHeap = new boolean[tailers.length];
+        this.heap = new int[tailers.length];
+    }
+
+    /**
+     * Read the excerpt with the lowest key of the next excerpts of the tailers. The context must be closed before this
+     * is called again.
+     *
+     * @return the context of the excerpt, from the tailer {@link #source()}, which is not present if none of the tailers
+     * has an excerpt to read
+     */
+    @NotNull
+    public DocumentContext readingDocument() {
+        for (int i = 0; i < tailers.length; i++)
+            if (!inHeap[i])
+                peek(i);
+        if (size == 0) {
+            source = -1;
+            return NoDocumentContext.INSTANCE;
+        }
+        int next = heap[0];
+        removeFirst();
+        inHeap[next] = false;
+        source = next;
+        return tailers[next].readingDocument();
+    }
+
+    /**
+     * @return the position in the tailers given of the one the last excerpt was read from, or -1 if none was read
+     */
+    public int source() {
+        return source;
+    }
+
+    /**
+     * @return the tailer at a position in the tailers given
+     */
+    @NotNull
+    public ExcerptTailer tailer(int source) {
+        return tailers[source];
+    }
+
+    private void peek(int i) {
+        try (DocumentContext dc = tailers[i].readingDocument()) {
+            if (!dc.isPresent())
+                return;
+            keys[i] = keyExtractor.key(dc.wire());
+            dc.rollbackOnClose();
+        }
+        inHeap[i] = true;
+        add(i);
+    }
+
+    private boolean before(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+    private void add(int source) {
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(source, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = source;
+    }
+
+    private void removeFirst() {
+        int last = heap[--size];
+        int i = 0;
+        for (; ; ) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], last))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link WriteLock} for queues with many writing threads in the same process.
+ * <p>
+ * Threads of this process first queue up on a local lock, spinning briefly before parking,
+ * so only one of them at a time competes for the shared lock in the queue's table store.
+ * This stops every waiting writer from hammering the shared lock word, and from burning the CPU
+ * the current lock holder needs, which is what limits throughput once there are more writers than cores.
+ * <p>
+ * It doesn't help when the writers are in different processes, as each process still has one thread competing for
+ * the shared lock, which is taken in the same way as without this lock.
+ */
+public class MultiWriterWriteLock implements WriteLock {
+    private static final int SPIN_COUNT = Integer.getInteger("chronicle.queue.multiWriter.spinCount", 1_000);
+
+    private final WriteLock delegate;
+    private final ReentrantLock localLock = new ReentrantLock();
+
+    public MultiWriterWriteLock(WriteLock delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void lock() {
+        lockLocal();
+        try {
+            delegate.lock();
+        } catch (Throwable t) {
+            localLock.unlock();
+            throw t;
+        }
+    }
+
+    private void lockLocal() {
+        for (int i = 0; i < SPIN_COUNT; i++) {
+            if (!localLock.isLocked() && localLock.tryLock())
+                return;
+        }
+        localLock.lock();
+    }
+
+    @Override
+    public void unlock() {
+        try {
+            delegate.unlock();
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean locked() {
+        return delegate.locked();
+    }
+}
@@ -9,13 +9,17 @@ public enum PrecreatedFiles {
 
     private static final String PRE_CREATED_FILE_SUFFIX = ".precreated";
 
-    public static void renamePreCreatedFileToRequiredFile(final File requiredQueueFile) {
+    /**
+     * @return true if a pre-created file was renamed to the {@code requiredQueueFile}
+     */
+    public static boolean renamePreCreatedFileToRequiredFile(final File requiredQueueFile) {
         final File preCreatedFile = preCreatedFile(requiredQueueFile);
         if (preCreatedFile.exists()) {
-            if (!preCreatedFile.renameTo(requiredQueueFile)) {
-                Jvm.warn().on(PrecreatedFiles.class, "Failed to rename pre-created queue file");
-            }
+            if (preCreatedFile.renameTo(requiredQueueFile))
+                return true;
+            Jvm.warn().on(PrecreatedFiles.class, "Failed to rename pre-created queue file");
         }
+        return false;
     }
 
     public static File preCreatedFileForStoreFile(final File requiredStoreFile) {
@@ -23,6 +27,15 @@ public enum PrecreatedFiles {
                 PRE_CREATED_FILE_SUFFIX);
     }
 
+    /**
+     * @return the file a queue file is written to while it is being pre-created, so it is only renamed to
+     * {@link #preCreatedFile(File)} once it is complete
+     */
+    public static File preCreatingFile(final File requiredQueueFile) {
+        final File preCreatedFile = preCreatedFile(requiredQueueFile);
+        return new File(preCreatedFile.getParentFile(), preCreatedFile.getName() + ".tmp");
+    }
+
     public static File preCreatedFile(final File requiredQueueFile) {
         final String fileName = requiredQueueFile.getName();
         final String name = fileName.substring(0, fileName.length() - 4);
@@ -53,6 +53,7 @@ public final class Pretoucher implements Closeable {
         assignCurrentCycle();
         try {
             pretoucherState.pretouch(currentCycleMappedBytes);
+            queue.precreateNextCycleIfDue();
         } catch (IllegalStateException e) {
             if (queue.isClosed())
                 throw new InvalidEventHandlerException(e);
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.core.util.Histogram;
+import net.openhft.chronicle.queue.SyncMode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static net.openhft.chronicle.core.io.Closeable.closeQuietly;
+
+/**
+ * Forces appended excerpts to disk according to the queue's {@link SyncMode}.
+ * <p>
+ * Syncs are coalesced: a writer which finds its excerpt was covered by a sync started after it was appended
+ * does not sync again, and only one thread syncs at a time.
+ * Each sync is a {@link FileChannel#force(boolean)} of the whole cycle file, i.e. an fsync of the file rather than of
+ * the range appended. It returns once every dirty page of the file is on disk, which is usually only those written
+ * since the last sync, but includes any other writes to the file such as index updates.
+ */
+class QueueSyncer implements Closeable {
+    private final SyncMode mode;
+    private final int syncEveryMessages;
+    private final long syncIntervalNanos;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Histogram syncLatencies = new Histogram();
+    private final AtomicInteger messagesSinceSync = new AtomicInteger();
+    // guarded by syncLock
+    @Nullable
+    private File channelFile;
+    @Nullable
+    private FileChannel channel;
+    // the last excerpt appended, and the last excerpt known to be on disk
+    private volatile File appendedFile;
+    private volatile long appendedPosition = -1;
+    private volatile File syncedFile;
+    private volatile long syncedPosition = -1;
+    private volatile long lastSyncNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    QueueSyncer(@NotNull SyncMode mode, int syncEveryMessages, long syncIntervalMicros) {
+        this.mode = mode;
+        this.syncEveryMessages = Math.max(1, syncEveryMessages);
+        this.syncIntervalNanos = syncIntervalMicros * 1000;
+    }
+
+    /**
+     * Called by an appender once the excerpt ending at {@code position} has been written and the write lock released.
+     */
+    void onAppend(@NotNull File file, long position) {
+        if (!file.equals(appendedFile) || position > appendedPosition) {
+            appendedFile = file;
+            appendedPosition = position;
+        }
+        switch (mode) {
+            case EVERY_MESSAGE:
+                sync(file, position, true);
+                break;
+            case EVERY_N_MESSAGES:
+                if (messagesSinceSync.incrementAndGet() >= syncEveryMessages)
+                    sync(file, position, true);
+                break;
+            case EVERY_INTERVAL:
+                if (System.nanoTime() - lastSyncNanos >= syncIntervalNanos)
+                    sync(file, position, false);
+                break;
+            default:
+                // ASYNC is driven by the handler
+                break;
+        }
+    }
+
+    /**
+     * Sync everything appended so far, if anything.
+     */
+    void syncIfDirty() {
+        File file = appendedFile;
+        if (file != null)
+            sync(file, appendedPosition, false);
+    }
+
+    private boolean isSynced(File file, long position) {
+        return file.equals(syncedFile) && syncedPosition >= position;
+    }
+
+    private void sync(@NotNull File file, long position, boolean waitForSync) {
+        if (isSynced(file, position))
+            return;
+        if (waitForSync)
+            syncLock.lock();
+        else if (!syncLock.tryLock())
+            return;
+        try {
+            // another thread may have synced past this excerpt while we waited.
+            if (isSynced(file, position) || closed)
+                return;
+            // anything appended before the sync starts is covered by it.
+            File toSync = appendedFile;
+            long upTo = appendedPosition;
+            if (!file.equals(toSync)) {
+                toSync = file;
+                upTo = position;
+            }
+            messagesSinceSync.set(0);
+            long start = System.nanoTime();
+            force(toSync);
+            long end = System.nanoTime();
+            syncLatencies.sampleNanos(end - start);
+            lastSyncNanos = end;
+            syncedFile = toSync;
+            syncedPosition = upTo;
+        } catch (IOException e) {
+            Jvm.warn().on(getClass(), "Failed to sync " + file, e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void force(File file) throws IOException {
+        if (!file.equals(channelFile)) {
+            // a new cycle, make sure the end of the last one is on disk before moving on.
+            closeChannel(true);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            channelFile = file;
+        }
+        channel.force(false);
+    }
+
+    private void closeChannel(boolean force) {
+        FileChannel channel = this.channel;
+        this.channel = null;
+        this.channelFile = null;
+        if (channel == null)
+            return;
+        try {
+            if (force)
+                channel.force(false);
+        } catch (IOException e) {
+            Jvm.warn().on(getClass(), "Failed to sync on roll", e);
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * @return the latencies of each sync. Not thread safe, intended for monitoring.
+     */
+    @NotNull
+    Histogram syncLatencies() {
+        return syncLatencies;
+    }
+
+    /**
+     * Syncs anything not yet on disk, e.g. the tail of an {@link SyncMode#ASYNC} queue.
+     */
+    @Override
+    public void close() {
+        syncLock.lock();
+        try {
+            if (closed)
+                return;
+            File file = appendedFile;
+            if (file != null && !isSynced(file, appendedPosition))
+                force(file);
+        } catch (IOException e) {
+            Jvm.warn().on(getClass(), "Failed to sync on close", e);
+        } finally {
+            closeChannel(false);
+            closed = true;
+            syncLock.unlock();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Syncs from the event loop for {@link SyncMode#ASYNC}
+     */
+    static class SyncHandler implements EventHandler {
+        private final QueueSyncer syncer;
+        private long nextSyncNanos;
+
+        SyncHandler(QueueSyncer syncer) {
+            this.syncer = syncer;
+        }
+
+        @Override
+        public boolean action() throws InvalidEventHandlerException {
+            if (syncer.closed)
+                throw new InvalidEventHandlerException("Queue closed");
+            long now = System.nanoTime();
+            if (now < nextSyncNanos)
+                return false;
+            nextSyncNanos = now + syncer.syncIntervalNanos;
+            syncer.syncIfDirty();
+            return false;
+        }
+
+        @NotNull
+        @Override
+        public HandlerPriority priority() {
+            return HandlerPriority.MEDIUM;
+        }
+    }
+}
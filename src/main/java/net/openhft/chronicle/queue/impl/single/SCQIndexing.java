@@ -25,7 +25,6 @@ import net.openhft.chronicle.core.Maths;
 import net.openhft.chronicle.core.StackTrace;
 import net.openhft.chronicle.core.annotation.UsedViaReflection;
 import net.openhft.chronicle.core.io.Closeable;
-import net.openhft.chronicle.core.threads.ThreadLocalHelper;
 import net.openhft.chronicle.core.values.LongArrayValues;
 import net.openhft.chronicle.core.values.LongValue;
 import net.openhft.chronicle.queue.impl.ExcerptContext;
@@ -35,14 +34,20 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.EOFException;
 import java.io.StreamCorruptedException;
-import java.lang.ref.WeakReference;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Supplier;
 
 import static net.openhft.chronicle.wire.Wires.NOT_INITIALIZED;
 
 class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
     private static final boolean IGNORE_INDEXING_FAILURE = Boolean.getBoolean("queue.ignoreIndexingFailure");
+    private static final int INDEX_ARRAY_CACHE_SIZE = (int) Maths.nextPower2(Integer.getInteger("chronicle.queue.indexArrayCache.size", 32), 1);
+    private static final AtomicReferenceFieldUpdater<SCQIndexing, LongArrayValues> INDEX2INDEX_ARRAY =
+            AtomicReferenceFieldUpdater.newUpdater(SCQIndexing.class, LongArrayValues.class, "index2indexArray");
     private static Boolean REPORT_LINEAR_SCAN;
 
     static {
@@ -54,10 +59,16 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
     private final int indexSpacing, indexSpacingBits;
     private final LongValue index2Index;
     private final Supplier<LongArrayValues> longArraySupplier;
+    @Nullable
+    private volatile LongArrayValues index2indexArray;
+    // the write position indexPending last scanned up to, when the sequence of the write position wasn't known
+    private volatile long pendingCheckedPosition = -1;
+    // the secondary index arrays bound so far, shared by every thread using this store
     @NotNull
-    private final ThreadLocal<WeakReference<LongArrayValuesHolder>> index2indexArray;
+    private final AtomicReferenceArray<LongArrayValuesHolder> indexArrays;
+    // arrays evicted from the cache and no longer in use, to be bound again rather than allocated
     @NotNull
-    private final ThreadLocal<WeakReference<LongArrayValuesHolder>> indexArray;
+    private final ArrayBlockingQueue<LongArrayValuesHolder> freeIndexArrays;
     @NotNull
     private final WriteMarshallable index2IndexTemplate;
     @NotNull
@@ -93,22 +104,12 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
         this.index2Index = index2Index;
         this.nextEntryToBeIndexed = nextEntryToBeIndexed;
         this.longArraySupplier = longArraySupplier;
-        this.index2indexArray = new ThreadLocal<>();
-        this.indexArray = new ThreadLocal<>();
+        this.indexArrays = new AtomicReferenceArray<>(INDEX_ARRAY_CACHE_SIZE);
+        this.freeIndexArrays = new ArrayBlockingQueue<>(INDEX_ARRAY_CACHE_SIZE);
         this.index2IndexTemplate = w -> w.writeEventName(() -> "index2index").int64array(indexCount);
         this.indexTemplate = w -> w.writeEventName(() -> "index").int64array(indexCount);
     }
 
-    @NotNull
-    private LongArrayValuesHolder getIndex2IndexArray() {
-        return ThreadLocalHelper.getTL(index2indexArray, longArraySupplier, las -> new LongArrayValuesHolder(las.get()));
-    }
-
-    @NotNull
-    private LongArrayValuesHolder getIndexArray() {
-        return ThreadLocalHelper.getTL(indexArray, longArraySupplier, las -> new LongArrayValuesHolder(las.get()));
-    }
-
     public long toAddress0(long index) {
         long siftedIndex = index >> (indexSpacingBits + indexCountBits);
         long mask = indexCount - 1L;
@@ -127,19 +128,13 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
     public void close() {
         Closeable.closeQuietly(index2Index);
         Closeable.closeQuietly(nextEntryToBeIndexed);
-        // Eagerly clean up the contents of thread locals but only for this thread.
-        // The contents of the thread local for other threads will be cleaned up in
-        // MappedFile.performRelease
-        closeTL(indexArray);
-        closeTL(index2indexArray);
-    }
-
-    private void closeTL(ThreadLocal<WeakReference<LongArrayValuesHolder>> tl) {
-        WeakReference<LongArrayValuesHolder> weakReference = tl.get();
-        if (weakReference == null)
-            return;
-        LongArrayValuesHolder holder = weakReference.get();
-        if (holder != null)
+        Closeable.closeQuietly(index2indexArray);
+        for (int i = 0; i < indexArrays.length(); i++) {
+            LongArrayValuesHolder holder = indexArrays.getAndSet(i, null);
+            if (holder != null)
+                Closeable.closeQuietly(holder.values);
+        }
+        for (LongArrayValuesHolder holder; (holder = freeIndexArrays.poll()) != null; )
             Closeable.closeQuietly(holder.values);
     }
 
@@ -151,15 +146,32 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
                 .write(IndexingFields.lastIndex).int64forBinding(0L, nextEntryToBeIndexed);
     }
 
+    /**
+     * The secondary index array at an address, which must be released once used. An array evicted from the cache is
+     * only bound again once the last thread using it has released it.
+     */
     @NotNull
-    private LongArrayValues arrayForAddress(@NotNull Wire wire, long secondaryAddress) {
-        LongArrayValuesHolder holder = getIndexArray();
-        if (holder.address == secondaryAddress)
-            return holder.values;
-        holder.address = secondaryAddress;
+    private LongArrayValuesHolder arrayForAddress(@NotNull Wire wire, long secondaryAddress) {
+        int slot = (int) ((secondaryAddress * 0x9E3779B97F4A7C15L) >>> 32) & (indexArrays.length() - 1);
+        LongArrayValuesHolder holder = indexArrays.get(slot);
+        if (holder != null && holder.acquire()) {
+            // it could have been evicted and bound to another address before it was acquired.
+            if (holder.address == secondaryAddress)
+                return holder;
+            holder.release();
+        }
         wire.bytes().readPositionRemaining(secondaryAddress, 4); // to read the header.
         wire.readMetaDataHeader();
-        return array(wire, holder.values, false);
+        holder = freeIndexArrays.poll();
+        LongArrayValues values = array(wire, holder == null ? longArraySupplier.get() : holder.values, false);
+        if (holder == null)
+            holder = new LongArrayValuesHolder(values);
+        // one reference for the cache, and one for the caller.
+        holder.bind(secondaryAddress, 2);
+        LongArrayValuesHolder evicted = indexArrays.getAndSet(slot, holder);
+        if (evicted != null)
+            evicted.release();
+        return holder;
     }
 
     @NotNull
@@ -266,25 +278,30 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
             if (secondaryAddress <= 0) {
                 return null;
             }
-            @NotNull final LongArrayValues array1 = arrayForAddress(wire, secondaryAddress);
+            @NotNull final LongArrayValuesHolder holder = arrayForAddress(wire, secondaryAddress);
             long secondaryOffset = toAddress1(index);
 
-            do {
-                long fromAddress = array1.getValueAt(secondaryOffset);
-                if (fromAddress == 0) {
+            long fromAddress;
+            try {
+                do {
+                    fromAddress = holder.values.getValueAt(secondaryOffset);
+                    if (fromAddress != 0)
+                        break;
                     secondaryOffset--;
                     startIndex -= indexSpacing;
-                    continue;
-                }
-
-                if (index == startIndex) {
-                    ec.wire().bytes().readPositionUnlimited(fromAddress);
-                    return ScanResult.FOUND;
-                } else {
-                    return linearScan(ec.wire(), index, startIndex, fromAddress);
-                }
-            } while (secondaryOffset >= 0);
-            return null; // no index,
+                } while (secondaryOffset >= 0);
+            } finally {
+                holder.release();
+            }
+            if (fromAddress == 0)
+                return null; // no index,
+
+            if (index == startIndex) {
+                ec.wire().bytes().readPositionUnlimited(fromAddress);
+                return ScanResult.FOUND;
+            } else {
+                return linearScan(ec.wire(), index, startIndex, fromAddress);
+            }
         } catch (IllegalStateException e) {
             return linearScan(ec.wire(), index, -1, 0);
         }
@@ -499,33 +516,38 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
                 if (secondaryAddress == 0)
                     continue;
 
-                LongArrayValues indexValues = arrayForAddress(wire, secondaryAddress);
-                // TODO use a binary rather than linear search
+                LongArrayValuesHolder holder = arrayForAddress(wire, secondaryAddress);
+                try {
+                    LongArrayValues indexValues = holder.values;
+                    // TODO use a binary rather than linear search
 
-                // check the first one to see if any in the index is appropriate.
-                int used = Maths.toUInt31(indexValues.getUsed());
-                assert used >= 0;
-                if (used == 0)
-                    continue;
-
-                long posN = indexValues.getVolatileValueAt(0);
-                assert posN >= 0;
-                if (posN > position)
-                    continue;
+                    // check the first one to see if any in the index is appropriate.
+                    int used = Maths.toUInt31(indexValues.getUsed());
+                    assert used >= 0;
+                    if (used == 0)
+                        continue;
 
-                for (int index1 = used - 1; index1 >= 0; index1--) {
-                    long pos = indexValues.getVolatileValueAt(index1);
-                    // TODO pos shouldn't be 0, but holes in the index appear..
-                    if (pos == 0 || pos > position) {
+                    long posN = indexValues.getVolatileValueAt(0);
+                    assert posN >= 0;
+                    if (posN > position)
                         continue;
-                    }
-                    lastKnownAddress = pos;
-                    indexOfNext = ((long) index2 << (indexCountBits + indexSpacingBits)) + (index1 << indexSpacingBits);
 
-                    if (lastKnownAddress == position)
-                        return indexOfNext;
+                    for (int index1 = used - 1; index1 >= 0; index1--) {
+                        long pos = indexValues.getVolatileValueAt(index1);
+                        // TODO pos shouldn't be 0, but holes in the index appear..
+                        if (pos == 0 || pos > position) {
+                            continue;
+                        }
+                        lastKnownAddress = pos;
+                        indexOfNext = ((long) index2 << (indexCountBits + indexSpacingBits)) + (index1 << indexSpacingBits);
+
+                        if (lastKnownAddress == position)
+                            return indexOfNext;
 
-                    break Outer;
+                        break Outer;
+                    }
+                } finally {
+                    holder.release();
                 }
             }
         } catch (IllegalStateException e) {
@@ -553,16 +575,20 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
     }
 
     private LongArrayValues getIndex2index(@NotNull Wire wire) throws UnrecoverableTimeoutException {
-
-        LongArrayValuesHolder holder = getIndex2IndexArray();
-        LongArrayValues values = holder.values;
-        if (((Byteable) values).bytesStore() != null)
-            return values;
+        final LongArrayValues current = index2indexArray;
+        if (current != null && ((Byteable) current).bytesStore() != null)
+            return current;
         final long indexToIndex = index2Index.getVolatileValue();
 
+        LongArrayValues values;
         try (DocumentContext ignored = wire.readingDocument(indexToIndex)) {
-            return array(wire, values, true);
+            values = array(wire, longArraySupplier.get(), true);
         }
+        if (INDEX2INDEX_ARRAY.compareAndSet(this, current, values))
+            return values;
+        // another thread bound it first, use theirs.
+        Closeable.closeQuietly(values);
+        return index2indexArray;
     }
 
     private long getSecondaryAddress(@NotNull Wire wire, @NotNull LongArrayValues index2indexArr, int index2)
@@ -619,18 +645,217 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
         if (secondaryAddress > bytes.capacity())
             throw new IllegalStateException("sa2: " + secondaryAddress);
         bytes.readLimit(bytes.capacity());
-        LongArrayValues indexValues = arrayForAddress(wire, secondaryAddress);
-        int index3 = (int) ((sequenceNumber >>> indexSpacingBits) & (indexCount - 1));
+        LongArrayValuesHolder holder = arrayForAddress(wire, secondaryAddress);
+        try {
+            LongArrayValues indexValues = holder.values;
+            int index3 = (int) ((sequenceNumber >>> indexSpacingBits) & (indexCount - 1));
+
+            // check the last one first.
+            long posN = indexValues.getValueAt(index3);
+            if (posN == 0) {
+                indexValues.setValueAt(index3, position);
+                indexValues.setMaxUsed(index3 + 1);
+            } else {
+                assert posN == position;
+            }
+        } finally {
+            holder.release();
+        }
+        nextEntryToBeIndexed.setMaxValue(sequenceNumber + indexSpacing);
+    }
 
-        // check the last one first.
-        long posN = indexValues.getValueAt(index3);
-        if (posN == 0) {
-            indexValues.setValueAt(index3, position);
-            indexValues.setMaxUsed(index3 + 1);
+    /**
+     * @return true if {@link #indexPending(ExcerptContext, int)} might have an entry to add. This doesn't need the
+     * write lock, so an idle queue can be checked without contending with writers.
+     */
+    boolean hasPending() {
+        long writePosition = this.writePosition.getVolatileValue();
+        long lastSequence = this.sequence.getSequence(writePosition);
+        if (lastSequence < 0)
+            // e.g. an empty cycle, only worth scanning again if something was written.
+            return writePosition != pendingCheckedPosition;
+        return nextEntryToBeIndexed.getVolatileValue() <= lastSequence;
+    }
+
+    /**
+     * Index the excerpts appended since {@link #nextEntryToBeIndexed()}, for queues which defer indexing.
+     * The caller must hold the write lock, as a new index array may be appended.
+     *
+     * @param ec         the context whose wire is scanned, and whose wireForIndex is indexed
+     * @param maxEntries the most index entries to add
+     * @return the number of index entries added
+     */
+    int indexPending(@NotNull ExcerptContext ec, int maxEntries) throws StreamCorruptedException {
+        long next = nextEntryToBeIndexed.getVolatileValue();
+        long writePosition = this.writePosition.getVolatileValue();
+        long lastSequence = this.sequence.getSequence(writePosition);
+        if (maxEntries <= 0 || (lastSequence >= 0 && next > lastSequence))
+            return 0;
+        pendingCheckedPosition = lastSequence >= 0 ? -1 : writePosition;
+
+        Wire wire = ec.wire();
+        Bytes<?> bytes = wire.bytes();
+        long sequence;
+        if (next == 0) {
+            bytes.readPositionUnlimited(0);
+            sequence = 0;
         } else {
-            assert posN == position;
+            // start from the last entry indexed.
+            sequence = next - indexSpacing;
+            if (moveToIndex(ec, sequence) != ScanResult.FOUND)
+                return 0;
+        }
+
+        int entries = 0;
+        try {
+            while (entries < maxEntries && wire.readDataHeader()) {
+                long position = bytes.readPosition();
+                int header = bytes.readVolatileInt();
+                if (Wires.isNotComplete(header))
+                    break;
+                if (sequence >= next && indexable(sequence)) {
+                    setPositionForSequenceNumber(ec, sequence, position);
+                    entries++;
+                }
+                bytes.readSkip(Wires.lengthOf(header));
+                sequence++;
+            }
+        } catch (EOFException fallback) {
+            // reached the end of the cycle.
+        }
+        return entries;
+    }
+
+    /**
+     * Check every index entry of a sealed cycle against the positions of its excerpts, found by reading the headers
+     * from the start of the cycle. Only entries in index arrays which exist are repaired, as a new array would be
+     * written after the cycle's EOF.
+     *
+     * @param ec     the context whose wire is scanned, and whose wireForIndex is checked
+     * @param repair true to rewrite missing and incorrect entries
+     * @param report adds the entries checked, missing, incorrect and repaired
+     */
+    void verify(@NotNull ExcerptContext ec, boolean repair, @NotNull IndexVerifier.Report report) {
+        Wire wire = ec.wire();
+        Bytes<?> bytes = wire.bytes();
+        Wire indexWire = ec.wireForIndex();
+        LongArrayValues index2index = getIndex2index(indexWire);
+        bytes.readPositionUnlimited(0);
+        long sequence = 0;
+        try {
+            while (wire.readDataHeader()) {
+                long position = bytes.readPosition();
+                int header = bytes.readVolatileInt();
+                if (Wires.isNotComplete(header))
+                    break;
+                if (indexable(sequence)) {
+                    long entry = sequence >>> indexSpacingBits;
+                    if ((entry >>> indexCountBits) >= indexCount)
+                        break;
+                    verifyEntry(indexWire, index2index, entry, position, repair, report);
+                }
+                bytes.readSkip(Wires.lengthOf(header));
+                sequence++;
+            }
+        } catch (EOFException fallback) {
+            // reached the end of the cycle.
+        }
+        if (repair && sequence > 0)
+            nextEntryToBeIndexed.setMaxValue(((sequence - 1) & -indexSpacing) + indexSpacing);
+    }
+
+    private void verifyEntry(@NotNull Wire wire, @NotNull LongArrayValues index2index, long entry, long position,
+                             boolean repair, @NotNull IndexVerifier.Report report) {
+        report.entries++;
+        long secondaryAddress = index2index.getVolatileValueAt(entry >>> indexCountBits);
+        if (secondaryAddress == 0) {
+            report.missing++;
+            report.unrepairable++;
+            return;
+        }
+        LongArrayValuesHolder holder = arrayForAddress(wire, secondaryAddress);
+        try {
+            LongArrayValues indexValues = holder.values;
+            int index3 = (int) (entry & (indexCount - 1));
+            long indexed = indexValues.getVolatileValueAt(index3);
+            if (indexed == position)
+                return;
+            if (indexed == 0)
+                report.missing++;
+            else
+                report.incorrect++;
+            if (!repair)
+                return;
+            indexValues.setOrderedValueAt(index3, position);
+            indexValues.setMaxUsed(index3 + 1);
+            report.repaired++;
+        } finally {
+            holder.release();
+        }
+    }
+
+    /**
+     * Find the first excerpt written at or after a time, using the {@link ExcerptTimestamps} of the indexed excerpts as a
+     * sparse time index. This binary searches the index, then scans at most one index spacing of headers, and
+     * whatever hasn't been indexed yet, without reading any excerpt.
+     *
+     * @param ec         the context whose wireForIndex holds the index, and whose wire is scanned
+     * @param epochNanos the time to search for
+     * @return the sequence number, or -1 if no excerpt in this cycle was written at or after that time
+     */
+    long sequenceForTime(@NotNull ExcerptContext ec, long epochNanos) {
+        Bytes<?> bytes = ec.wire().bytes();
+        // scan from the last indexed excerpt written before the time, or the start.
+        long position = 0;
+        long sequence = 0;
+        try {
+            Wire wire = ec.wireForIndex();
+            LongArrayValues index2index = getIndex2index(wire);
+            long before = -1;
+            long after = nextEntryToBeIndexed.getVolatileValue() >> indexSpacingBits;
+            while (after - before > 1) {
+                long mid = (before + after) >>> 1;
+                long pos = positionForEntry(wire, index2index, mid);
+                // excerpts without a timestamp were written before they were enabled.
+                if (pos == 0 || ExcerptTimestamps.read(bytes, pos) < epochNanos)
+                    before = mid;
+                else
+                    after = mid;
+            }
+            if (before >= 0) {
+                position = positionForEntry(wire, index2index, before);
+                sequence = position == 0 ? 0 : before << indexSpacingBits;
+            }
+        } catch (IllegalStateException e) {
+            if (Jvm.isDebugEnabled(getClass()))
+                Jvm.debug().on(getClass(), "Unable to search the index for " + epochNanos, e);
+            position = 0;
+            sequence = 0;
+        }
+
+        for (; ; ) {
+            int header = bytes.readVolatileInt(position);
+            if (header == 0 || header == Wires.END_OF_DATA || Wires.isNotComplete(header))
+                return -1;
+            if (Wires.isData(header)) {
+                if (ExcerptTimestamps.read(bytes, position) >= epochNanos)
+                    return sequence;
+                sequence++;
+            }
+            position += Wires.lengthOf(header) + Wires.SPB_HEADER_SIZE;
+        }
+    }
+
+    private long positionForEntry(@NotNull Wire wire, @NotNull LongArrayValues index2index, long entry) {
+        long secondaryAddress = index2index.getVolatileValueAt(entry >>> indexCountBits);
+        if (secondaryAddress == 0)
+            return 0;
+        LongArrayValuesHolder holder = arrayForAddress(wire, secondaryAddress);
+        try {
+            return holder.values.getVolatileValueAt(entry & (indexCount - 1));
+        } finally {
+            holder.release();
         }
-        nextEntryToBeIndexed.setMaxValue(sequenceNumber + indexSpacing);
     }
 
     public boolean indexable(long index) {
@@ -659,6 +884,18 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
         return sequenceForPosition(ec, Long.MAX_VALUE, false);
     }
 
+    /**
+     * @return the sequence number of the last excerpt from the write position without scanning, -1 if there are none,
+     * or {@link Long#MIN_VALUE} if it isn't known
+     */
+    long knownLastSequenceNumber() {
+        long address = writePosition.getVolatileValue();
+        if (address == 0)
+            return -1;
+        long sequence = this.sequence == null ? Sequence.NOT_FOUND : this.sequence.getSequence(address);
+        return sequence >= 0 ? sequence : Long.MIN_VALUE;
+    }
+
     int indexCount() {
         return indexCount;
     }
@@ -709,13 +946,39 @@ class SCQIndexing implements Demarshallable, WriteMarshallable, Closeable {
         lastIndex // NOTE: the nextEntryToBeIndexed
     }
 
-    static class LongArrayValuesHolder {
+    /**
+     * A bound secondary index array, counting the cache and the threads using it.
+     */
+    final class LongArrayValuesHolder {
         final LongArrayValues values;
-        long address;
+        private final AtomicInteger references = new AtomicInteger();
+        volatile long address;
 
         LongArrayValuesHolder(LongArrayValues values) {
             this.values = values;
-            address = Long.MIN_VALUE;
+        }
+
+        void bind(long address, int references) {
+            this.address = address;
+            this.references.set(references);
+        }
+
+        /**
+         * @return false if it has been evicted and released by every thread, so could be bound again
+         */
+        boolean acquire() {
+            for (; ; ) {
+                int count = references.get();
+                if (count == 0)
+                    return false;
+                if (references.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0 && !freeIndexArrays.offer(this))
+                Closeable.closeQuietly(values);
         }
     }
 }
@@ -18,6 +18,7 @@
 package net.openhft.chronicle.queue.impl.single;
 
 import net.openhft.chronicle.core.annotation.UsedViaReflection;
+import net.openhft.chronicle.queue.CustomRollCycle;
 import net.openhft.chronicle.queue.RollCycle;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +39,12 @@ class SCQRoll implements Demarshallable, WriteMarshallable {
     @Nullable
     private ZoneId rollTimeZone;
     private long epoch;
+    // only for a CustomRollCycle, 0 for RollCycles
+    private int cycleShift;
+    private int indexCount;
+    private int indexSpacing;
+    private long maxCycleBytes = Long.MAX_VALUE;
+    private long maxCycleMessages = Long.MAX_VALUE;
 
     /**
      * used by {@link Demarshallable}
@@ -57,6 +64,14 @@ class SCQRoll implements Demarshallable, WriteMarshallable {
             rollTimeZone = ZoneId.of(zoneId);
         else
             rollTimeZone = null;
+        ValueIn cycleShiftVIN = wire.read(RollFields.cycleShift);
+        if (cycleShiftVIN.hasNext()) {
+            cycleShift = cycleShiftVIN.int32();
+            indexCount = wire.read(RollFields.indexCount).int32();
+            indexSpacing = wire.read(RollFields.indexSpacing).int32();
+            maxCycleBytes = wire.read(RollFields.maxCycleBytes).int64();
+            maxCycleMessages = wire.read(RollFields.maxCycleMessages).int64();
+        }
     }
 
     SCQRoll(@NotNull RollCycle rollCycle,
@@ -68,6 +83,14 @@ class SCQRoll implements Demarshallable, WriteMarshallable {
         this.epoch = epoch;
         this.rollTime = rollTime;
         this.rollTimeZone = rollTimeZone;
+        if (rollCycle instanceof CustomRollCycle) {
+            // so the queue can be opened without it.
+            this.cycleShift = ((CustomRollCycle) rollCycle).cycleShift();
+            this.indexCount = rollCycle.defaultIndexCount();
+            this.indexSpacing = rollCycle.defaultIndexSpacing();
+            this.maxCycleBytes = rollCycle.maxCycleBytes();
+            this.maxCycleMessages = rollCycle.maxCycleMessages();
+        }
     }
 
     @Override
@@ -79,7 +102,31 @@ class SCQRoll implements Demarshallable, WriteMarshallable {
             wire.write(RollFields.rollTime).time(rollTime);
         if (rollTimeZone != null)
             wire.write(RollFields.rollTimeZone).text(rollTimeZone.getId());
+        if (cycleShift > 0)
+            wire.write(RollFields.cycleShift).int32(cycleShift)
+                    .write(RollFields.indexCount).int32(indexCount)
+                    .write(RollFields.indexSpacing).int32(indexSpacing)
+                    .write(RollFields.maxCycleBytes).int64(maxCycleBytes)
+                    .write(RollFields.maxCycleMessages).int64(maxCycleMessages);
+    }
+
+    /**
+     * @return true if the queue was written with this roll cycle, as far as the metadata records
+     */
+    boolean matches(@NotNull RollCycle rollCycle) {
+        return rollCycle.format().equals(format)
+                && rollCycle.length() == length
+                && (cycleShift == 0 || rollCycle.toIndex(1, 0) == 1L << cycleShift);
+    }
 
+    /**
+     * @return the roll cycle the queue was written with if it was a {@link CustomRollCycle}, otherwise null
+     */
+    @Nullable
+    CustomRollCycle customRollCycle() {
+        return cycleShift > 0 && format != null
+                ? CustomRollCycle.of(format, length, indexCount, indexSpacing, cycleShift, maxCycleBytes, maxCycleMessages)
+                : null;
     }
 
     /**
@@ -136,10 +183,11 @@ class SCQRoll implements Demarshallable, WriteMarshallable {
                 ", epoch=" + epoch +
                 ", rollTime=" + rollTime +
                 ", rollTimeZone=" + rollTimeZone +
+                (cycleShift > 0 ? ", cycleShift=" + cycleShift + ", indexCount=" + indexCount + ", indexSpacing=" + indexSpacing : "") +
                 '}';
     }
 
     enum RollFields implements WireKey {
-        length, format, epoch, rollTime, rollTimeZone
+        length, format, epoch, rollTime, rollTimeZone, cycleShift, indexCount, indexSpacing, maxCycleBytes, maxCycleMessages
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.queue.DocumentGroup;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.batch.BatchAppender;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueExcerpts.StoreAppender;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.UnrecoverableTimeoutException;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread safe appender, which any number of threads can share. Callers take turns using one {@link StoreAppender},
+ * so the appender and its mappings don't grow with the number of threads.
+ * <p>
+ * A caller holds a {@link ReentrantLock} from {@link #writingDocument(boolean)} until the context is closed.
+ * Unlike a monitor, waiting for it doesn't pin the carrier of a virtual thread.
+ * {@link #lastIndexAppended()} is the last index appended by any caller, use {@link DocumentContext#index()} for your own.
+ */
+class SharedAppender implements ExcerptAppender {
+    @NotNull
+    private final StoreAppender appender;
+    private final ReentrantLock lock = new ReentrantLock();
+    // only used by the thread holding the lock
+    private final SharedDocumentContext context = new SharedDocumentContext();
+
+    SharedAppender(@NotNull StoreAppender appender) {
+        this.appender = appender;
+    }
+
+    private void lock() {
+        lock.lock();
+        appender.handOff();
+    }
+
+    @NotNull
+    @Override
+    public DocumentContext writingDocument() throws UnrecoverableTimeoutException {
+        return writingDocument(false);
+    }
+
+    @NotNull
+    @Override
+    public DocumentContext writingDocument(boolean metaData) throws UnrecoverableTimeoutException {
+        lock();
+        try {
+            context.dc = appender.writingDocument(metaData);
+            context.isClosed = false;
+            return context;
+        } catch (Throwable t) {
+            lock.unlock();
+            throw t;
+        }
+    }
+
+    @Override
+    public DocumentGroup writingDocuments(int expected) throws UnrecoverableTimeoutException {
+        lock();
+        try {
+            DocumentGroup group = appender.writingDocuments(expected);
+            return new DocumentGroup() {
+                @Override
+                public void rollbackOnClose() {
+                    group.rollbackOnClose();
+                }
+
+                @Override
+                public int documents() {
+                    return group.documents();
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        group.close();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            };
+        } catch (Throwable t) {
+            lock.unlock();
+            throw t;
+        }
+    }
+
+    @Override
+    public void writeBytes(@NotNull BytesStore bytes) throws UnrecoverableTimeoutException {
+        lock();
+        try {
+            appender.writeBytes(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int writeBytesBatch(@NotNull List<? extends BytesStore> payloads) throws UnrecoverableTimeoutException {
+        lock();
+        try {
+            return appender.writeBytesBatch(payloads);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int writeLengthPrefixedBatch(@NotNull BytesStore buffer) throws UnrecoverableTimeoutException {
+        lock();
+        try {
+            return appender.writeLengthPrefixedBatch(buffer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long batchAppend(int timeoutMS, BatchAppender batchAppender) {
+        lock();
+        try {
+            return appender.batchAppend(timeoutMS, batchAppender);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long lastIndexAppended() {
+        return appender.lastIndexAppended();
+    }
+
+    @Override
+    public int cycle() {
+        return appender.cycle();
+    }
+
+    @Override
+    public void padToCacheAlign(Padding padToCacheAlign) {
+        appender.padToCacheAlign(padToCacheAlign);
+    }
+
+    @NotNull
+    @Override
+    public Padding padToCacheAlignMode() {
+        return appender.padToCacheAlignMode();
+    }
+
+    /**
+     * @return the wire of the underlying appender, only safe to use inside a document context
+     */
+    @Nullable
+    @Override
+    public Wire wire() {
+        return appender.wire();
+    }
+
+    @Override
+    public int sourceId() {
+        return appender.sourceId();
+    }
+
+    @NotNull
+    @Override
+    public SingleChronicleQueue queue() {
+        return appender.queue();
+    }
+
+    @Override
+    public boolean recordHistory() {
+        return appender.recordHistory();
+    }
+
+    class SharedDocumentContext implements DocumentContext {
+        private DocumentContext dc;
+        private boolean isClosed = true;
+
+        @Override
+        public int sourceId() {
+            return dc.sourceId();
+        }
+
+        @Override
+        public boolean isPresent() {
+            return dc.isPresent();
+        }
+
+        @Override
+        public Wire wire() {
+            return dc.wire();
+        }
+
+        @Override
+        public boolean isMetaData() {
+            return dc.isMetaData();
+        }
+
+        @Override
+        public void metaData(boolean metaData) {
+            dc.metaData(metaData);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return isClosed;
+        }
+
+        @Override
+        public void rollbackOnClose() {
+            dc.rollbackOnClose();
+        }
+
+        @Override
+        public void close() {
+            if (isClosed)
+                return;
+            isClosed = true;
+            try {
+                dc.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long index() throws IORuntimeException {
+            return dc.index();
+        }
+
+        @Override
+        public boolean isNotComplete() {
+            return dc.isNotComplete();
+        }
+    }
+}
@@ -20,17 +20,22 @@ import net.openhft.chronicle.bytes.BytesRingBufferStats;
 import net.openhft.chronicle.bytes.MappedBytes;
 import net.openhft.chronicle.bytes.MappedFile;
 import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.Maths;
 import net.openhft.chronicle.core.OS;
 import net.openhft.chronicle.core.annotation.PackageLocal;
+import net.openhft.chronicle.core.threads.EventHandler;
 import net.openhft.chronicle.core.threads.EventLoop;
 import net.openhft.chronicle.core.threads.ThreadLocalHelper;
+import net.openhft.chronicle.core.time.SystemTimeProvider;
 import net.openhft.chronicle.core.time.TimeProvider;
+import net.openhft.chronicle.core.util.Histogram;
 import net.openhft.chronicle.core.util.StringUtils;
 import net.openhft.chronicle.core.values.LongValue;
 import net.openhft.chronicle.queue.*;
 import net.openhft.chronicle.queue.impl.*;
 import net.openhft.chronicle.queue.impl.table.SingleTableStore;
 import net.openhft.chronicle.threads.DiskSpaceMonitor;
+import net.openhft.chronicle.threads.Pauser;
 import net.openhft.chronicle.threads.TimingPauser;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
@@ -43,12 +48,15 @@ import java.lang.ref.WeakReference;
 import java.text.ParseException;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static net.openhft.chronicle.core.io.Closeable.closeQuietly;
 import static net.openhft.chronicle.queue.TailerDirection.NONE;
@@ -93,6 +101,7 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
     private final long bufferCapacity;
     private final int indexSpacing;
     private final int indexCount;
+    private final int adaptiveIndexSpacing;
     @NotNull
     private final TimeProvider time;
     @NotNull
@@ -105,6 +114,9 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
     private final LongValue lastAcknowledgedIndexReplicated;
     @Nullable
     private final LongValue lastIndexReplicated;
+    // the cycle and position of the last claim made by any appender, so writers only look for claims after one
+    @Nullable
+    private final LongValue lastClaimCycle, lastClaimPosition;
     @NotNull
     private final DirectoryListing directoryListing;
     @NotNull
@@ -113,6 +125,35 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
     private final WriteLock writeLock;
     private final boolean strongAppenders;
     private final boolean checkInterrupts;
+    @Nullable
+    private final AppenderRingBuffer appenderRingBuffer;
+    @Nullable
+    private final AppenderRingBuffer.Drainer drainer;
+    private final Pauser ringBufferPauser;
+    private final boolean ownsEventLoop;
+    private boolean eventLoopStarted;
+    @Nullable
+    private final QueueSyncer syncer;
+    private final boolean deferredIndexing;
+    private final long precreateNextCycleMillis;
+    private final Object precreateLock = new Object();
+    private volatile int lastPrecreatedCycle = Integer.MIN_VALUE;
+    private final int appenderPoolSize;
+    @Nullable
+    private volatile AppenderPool appenderPool;
+    @Nullable
+    private volatile SharedAppender sharedAppender;
+    private final boolean timestamps;
+    private final int tailerCommitEveryMessages;
+    private final long tailerCommitIntervalNanos;
+    private final long epochNanosOffset;
+    private final Map<String, CycleKeyCache> cycleKeyCaches = new ConcurrentHashMap<>();
+    @Nullable
+    private final KeyIndexes keyIndexes;
+    @NotNull
+    private final AppendNotifier appendNotifier;
+    @Nullable
+    private final CycleCounts cycleCounts;
     @NotNull
     private final RollingResourcesCache dateCache;
     protected int sourceId;
@@ -146,6 +187,7 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         onRingBufferStats = builder.onRingBufferStats();
         indexCount = builder.indexCount();
         indexSpacing = builder.indexSpacing();
+        adaptiveIndexSpacing = builder.adaptiveIndexSpacing();
         time = builder.timeProvider();
         pauserSupplier = builder.pauserSupplier();
         // add a 10% random element to make it less likely threads will timeout at the same time.
@@ -175,14 +217,184 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         if (readOnly) {
             this.lastIndexReplicated = null;
             this.lastAcknowledgedIndexReplicated = null;
+            this.lastClaimCycle = null;
+            this.lastClaimPosition = null;
         } else {
             this.lastIndexReplicated = metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.lastIndexReplicated", -1L));
             this.lastAcknowledgedIndexReplicated = metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.lastAcknowledgedIndexReplicated", -1L));
+            this.lastClaimCycle = metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.lastClaimCycle", Long.MIN_VALUE));
+            this.lastClaimPosition = metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.lastClaimPosition", Long.MIN_VALUE));
         }
 
+        if (builder.notifyTailers() && !readOnly)
+            appendNotifier = new AppendNotifier(
+                    metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.appendSequence", 0L)),
+                    metaStore.doWithExclusiveLock(ts -> ts.acquireValueFor("chronicle.appendWaiters", 0L)));
+        else
+            appendNotifier = new AppendNotifier(null, null);
+
         this.deltaCheckpointInterval = builder.deltaCheckpointInterval();
 
         sourceId = builder.sourceId();
+
+        ringBufferPauser = builder.ringBufferPauser();
+        ownsEventLoop = !builder.hasEventLoop();
+        syncer = builder.syncMode() == SyncMode.NONE || readOnly
+                ? null
+                : new QueueSyncer(builder.syncMode(), builder.syncEveryMessages(), builder.syncIntervalMicros());
+        deferredIndexing = builder.deferredIndexing() && !readOnly;
+        precreateNextCycleMillis = readOnly ? 0 : builder.precreateNextCycleMillis();
+        appenderPoolSize = builder.appenderPoolSize();
+        timestamps = builder.timestamps();
+        tailerCommitEveryMessages = builder.tailerCommitEveryMessages();
+        tailerCommitIntervalNanos = builder.tailerCommitIntervalMicros() * 1000;
+        epochNanosOffset = time.currentTimeMillis() * 1_000_000L - System.nanoTime();
+        if (builder.asyncAppenderRingBuffer() && !readOnly) {
+            appenderRingBuffer = new AppenderRingBuffer(bufferCapacity);
+            drainer = new AppenderRingBuffer.Drainer(this, appenderRingBuffer, builder.drainerPriority());
+        } else {
+            appenderRingBuffer = null;
+            drainer = null;
+        }
+
+        // always put references to "this" last.
+        cycleCounts = builder.cycleCounts() ? new CycleCounts(this, new File(path, CycleCounts.FILE_NAME), readOnly) : null;
+        keyIndexes = builder.keyExtractor() == null ? null : new KeyIndexes(this, builder.keyExtractor(), builder.keyIndexLock());
+        if (drainer != null)
+            addEventHandler(drainer);
+        if (syncer != null && builder.syncMode() == SyncMode.ASYNC)
+            addEventHandler(new QueueSyncer.SyncHandler(syncer));
+        if (deferredIndexing)
+            addEventHandler(new DeferredIndexer(this));
+        if (precreateNextCycleMillis > 0)
+            addEventHandler(new CyclePrecreator(this));
+        if (keyIndexes != null && !readOnly)
+            addEventHandler(new KeyIndexer(this, keyIndexes));
+    }
+
+    synchronized void addEventHandler(EventHandler handler) {
+        eventLoop.addHandler(handler);
+        if (!eventLoopStarted) {
+            eventLoop.start();
+            eventLoopStarted = true;
+        }
+    }
+
+    /**
+     * @return true if excerpts are indexed by a {@link DeferredIndexer} rather than the appender
+     */
+    boolean deferredIndexing() {
+        return deferredIndexing;
+    }
+
+    /**
+     * @return true if each excerpt is preceded by the time it was written, see {@link ExcerptTimestamps}
+     */
+    boolean timestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the number of moves between a named tailer writing its position, 1 to write it every time
+     */
+    int tailerCommitEveryMessages() {
+        return tailerCommitEveryMessages;
+    }
+
+    long tailerCommitIntervalNanos() {
+        return tailerCommitIntervalNanos;
+    }
+
+    /**
+     * @return the time for an {@link ExcerptTimestamps} record. With the system clock this is the nanosecond timer from
+     * when the queue was created, so it doesn't go backwards if the wall clock is adjusted.
+     */
+    long currentTimeNanos() {
+        if (time != SystemTimeProvider.INSTANCE)
+            return time.currentTimeMillis() * 1_000_000L;
+        return System.nanoTime() + epochNanosOffset;
+    }
+
+    @NotNull
+    @Override
+    public <T> Stream<T> stream(long fromIndex, long toIndex, @NotNull Function<? super Wire, ? extends T> reader) {
+        ExcerptSpliterator<T> spliterator = ExcerptSpliterator.of(this, fromIndex, toIndex, reader);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * A spliterator over the excerpts from {@code fromIndex} up to, but not including, {@code toIndex}, which splits
+     * at cycle and index boundaries. See {@link #stream(long, long, Function)}
+     */
+    @NotNull
+    public <T> Spliterator<T> spliterator(long fromIndex, long toIndex, @NotNull Function<? super Wire, ? extends T> reader) {
+        return ExcerptSpliterator.of(this, fromIndex, toIndex, reader);
+    }
+
+    @NotNull
+    AppendNotifier appendNotifier() {
+        return appendNotifier;
+    }
+
+    /**
+     * @return the secondary index of excerpts by key, or null if there is no {@link KeyExtractor}
+     */
+    @Nullable
+    KeyIndexes keyIndexes() {
+        return keyIndexes;
+    }
+
+    /**
+     * @return the number of excerpts in each sealed cycle, or null unless {@link SingleChronicleQueueBuilder#cycleCounts(boolean)}
+     */
+    @Nullable
+    CycleCounts cycleCounts() {
+        return cycleCounts;
+    }
+
+    @NotNull
+    File fileForCycle(int cycle) {
+        return dateCache.resourceFor(cycle).path;
+    }
+
+    /**
+     * @return the cached first and last keys of each cycle for the key extractor registered under {@code name}
+     */
+    @NotNull
+    CycleKeyCache cycleKeyCache(@NotNull String name, @NotNull ToLongFunction<Wire> keyExtractor) {
+        return cycleKeyCaches.computeIfAbsent(name, n -> new CycleKeyCache(this, n, keyExtractor));
+    }
+
+    /**
+     * Create the next cycle's file, if it is due within {@code precreateNextCycleMillis}, as a pre-created file
+     * which is renamed when the queue rolls to it.
+     *
+     * @return true if a file was created
+     */
+    boolean precreateNextCycleIfDue() {
+        if (precreateNextCycleMillis <= 0 || isClosed())
+            return false;
+        int nextCycle = cycle(() -> time.currentTimeMillis() + precreateNextCycleMillis);
+        // only claim the cycle under the lock, the file is created and touched outside it.
+        synchronized (precreateLock) {
+            if (nextCycle == lastPrecreatedCycle || nextCycle <= cycle())
+                return false;
+            lastPrecreatedCycle = nextCycle;
+        }
+        return storeSupplier.precreate(nextCycle);
+    }
+
+    @Nullable
+    QueueSyncer syncer() {
+        return syncer;
+    }
+
+    /**
+     * @return the time taken by each sync to disk, or null if the {@link SyncMode} is NONE
+     */
+    @Nullable
+    public Histogram syncLatencies() {
+        return syncer == null ? null : syncer.syncLatencies();
     }
 
     protected CycleCalculator cycleCalculator(ZoneId zoneId) {
@@ -253,6 +465,36 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
             lastIndexReplicated.setMaxValue(indexReplicated);
     }
 
+    /**
+     * Records a claim made by {@link ExcerptAppender#claimingDocument(int)}. Must hold the write lock.
+     *
+     * @param position the position of the claim's header
+     */
+    void claimed(int cycle, long position) {
+        if (lastClaimCycle == null || lastClaimPosition == null)
+            return;
+        long claimCycle = lastClaimCycle.getVolatileValue();
+        // a cycle before the last claim's is always scanned for claims.
+        if (cycle < claimCycle)
+            return;
+        if (cycle > claimCycle || position > lastClaimPosition.getVolatileValue())
+            lastClaimPosition.setOrderedValue(position);
+        lastClaimCycle.setOrderedValue(cycle);
+    }
+
+    /**
+     * @param writePosition the store's write position, which is only ever moved onto an excerpt, not a claim which is
+     *                      outstanding
+     * @return false if no claim can have been made after {@code writePosition} in {@code cycle}, so the headers after it
+     * don't have to be scanned. Must hold the write lock.
+     */
+    boolean claimsMayFollow(int cycle, long writePosition) {
+        if (lastClaimCycle == null || lastClaimPosition == null)
+            return true;
+        long claimCycle = lastClaimCycle.getVolatileValue();
+        return claimCycle > cycle || claimCycle == cycle && lastClaimPosition.getVolatileValue() > writePosition;
+    }
+
     @Override
     public void clear() {
         throw new UnsupportedOperationException("Not yet implemented");
@@ -361,6 +603,47 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         return indexSpacing;
     }
 
+    /**
+     * @return the index spacing for a cycle about to be created, see {@link SingleChronicleQueueBuilder#adaptiveIndexSpacing(int)}
+     */
+    int indexSpacingForNewCycle() {
+        if (adaptiveIndexSpacing <= 0 || cycleCounts == null)
+            return indexSpacing;
+        // the new cycle isn't listed until its header is written.
+        int previous = lastCycle();
+        long count = cycleCounts.count(previous);
+        if (count < 0 && previous > firstCycle()) {
+            // a cycle pre-created while the last one is still written to is sized from the cycle before it.
+            try {
+                previous = listCyclesBetween(firstCycle(), previous - 1).last().intValue();
+            } catch (ParseException e) {
+                throw Jvm.rethrow(e);
+            }
+            count = cycleCounts.count(previous);
+        }
+        long length = cycleCounts.length(previous);
+        if (count <= 0 || length <= 0)
+            return indexSpacing;
+        return adaptiveIndexSpacing(rollCycle, indexCount, adaptiveIndexSpacing / Math.max(1, length / count), count);
+    }
+
+    /**
+     * @param spacing the number of excerpts which would be about the bytes to scan
+     * @param count   the number of excerpts in the last cycle
+     * @return a power of 2 close to {@code spacing}, which can index four times {@code count} and keeps the
+     * encoding of the store's write position the same as the roll cycle's default spacing
+     */
+    static int adaptiveIndexSpacing(@NotNull RollCycle rollCycle, int indexCount, long spacing, long count) {
+        int s = Integer.highestOneBit((int) Math.max(1, Math.min(spacing, 1 << 30)));
+        while ((long) indexCount * indexCount * s < 4 * count && s < 1 << 30)
+            s <<= 1;
+        int countBits = Maths.intLog2(indexCount);
+        int shift = Math.max(32, Maths.intLog2(rollCycle.defaultIndexCount()) * 2 + Maths.intLog2(rollCycle.defaultIndexSpacing()));
+        while (s > 1 && countBits * 2 + Maths.intLog2(s) > shift)
+            s >>>= 1;
+        return s;
+    }
+
     @Override
     public long epoch() {
         return epoch;
@@ -392,12 +675,28 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
 
     @NotNull
     protected ExcerptAppender newAppender() {
+        if (appenderRingBuffer != null)
+            return new AsyncExcerptAppender(this, appenderRingBuffer, ringBufferPauser);
+        return newStoreAppender();
+    }
+
+    @NotNull
+    StoreAppender newStoreAppender() {
         queueLock.waitForLock();
 
         final WireStorePool newPool = WireStorePool.withSupplier(storeSupplier, storeFileListener);
         return new StoreAppender(this, newPool, checkInterrupts);
     }
 
+    /**
+     * @return the last index written to the queue from the ring buffer when {@link #buffered()}
+     */
+    long lastIndexDrained() {
+        if (drainer == null)
+            throw new IllegalStateException("Not buffered");
+        return drainer.lastIndexAppended();
+    }
+
     protected StoreFileListener storeFileListener() {
         return storeFileListener;
     }
@@ -407,6 +706,42 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         return storeSupplier;
     }
 
+    /**
+     * @return a bounded pool of appenders, for when there are too many threads for an appender each
+     */
+    @NotNull
+    public AppenderPool appenderPool() {
+        AppenderPool pool = this.appenderPool;
+        if (pool == null) {
+            if (readOnly)
+                throw new IllegalStateException("Can't append to a read-only chronicle");
+            synchronized (this) {
+                pool = this.appenderPool;
+                if (pool == null)
+                    this.appenderPool = pool = new AppenderPool(this, appenderPoolSize);
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return an appender which any number of threads can use at once, writing one at a time
+     */
+    @NotNull
+    public ExcerptAppender sharedAppender() {
+        SharedAppender appender = this.sharedAppender;
+        if (appender == null) {
+            if (readOnly)
+                throw new IllegalStateException("Can't append to a read-only chronicle");
+            synchronized (this) {
+                appender = this.sharedAppender;
+                if (appender == null)
+                    this.sharedAppender = appender = new SharedAppender(newStoreAppender());
+            }
+        }
+        return appender;
+    }
+
     @NotNull
     @Override
     public ExcerptAppender acquireAppender() {
@@ -484,6 +819,9 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
     }
 
     public long exceptsPerCycle(int cycle) {
+        long count = cycleCounts == null ? -1 : cycleCounts.count(cycle);
+        if (count >= 0)
+            return count;
         StoreTailer tailer = acquireTailer();
         try {
             long index = rollCycle.toIndex(cycle, 0);
@@ -577,6 +915,10 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         if (cycles.size() == 2)
             return result;
 
+        long between = cycleCounts == null ? -1 : cycleCounts.countBetween(lowerCycle + 1, upperCycle - 1, cycles.size() - 2);
+        if (between >= 0)
+            return result + between;
+
         final long[] array = cycles.stream().mapToLong(i -> i).toArray();
         for (int i = 1; i < array.length - 1; i++) {
             long x = exceptsPerCycle(Math.toIntExact(array[i]));
@@ -604,18 +946,49 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
     @SuppressWarnings("unchecked")
     @Override
     public void close() {
+        try {
+            close0();
+        } finally {
+            // the drainer releases it once drained, unless the drain timed out.
+            if (appenderRingBuffer != null)
+                appenderRingBuffer.releaseBuffer();
+        }
+    }
+
+    private void close0() {
+        if (appenderRingBuffer != null && !isClosed.get())
+            awaitRingBufferDrained();
 
         if (isClosed.getAndSet(true))
             return;
 
-        closeQuietly(directoryListing, queueLock, writeLock, lastAcknowledgedIndexReplicated, lastIndexReplicated);
+        closeQuietly(directoryListing, queueLock, writeLock, lastAcknowledgedIndexReplicated, lastIndexReplicated,
+                lastClaimCycle, lastClaimPosition);
 
         synchronized (closers) {
             closers.forEach((k, v) -> v.accept(k));
             closers.clear();
         }
+        // after the closers, as appenders and tailers use them until they are closed.
+        closeQuietly(syncer, keyIndexes, appendNotifier, cycleCounts);
+        cycleKeyCaches.values().forEach(CycleKeyCache::close);
         this.pool.close();
         closeQuietly(metaStore);
+        if (eventLoopStarted && ownsEventLoop)
+            closeQuietly(eventLoop);
+    }
+
+    private void awaitRingBufferDrained() {
+        appenderRingBuffer.close();
+        long end = System.currentTimeMillis() + timeoutMS;
+        while (!appenderRingBuffer.isEmpty()) {
+            if (System.currentTimeMillis() > end) {
+                Jvm.warn().on(getClass(), "Timed out waiting for the ring buffer to drain, " +
+                        appenderRingBuffer.behind() + " bytes were not written to " + path);
+                break;
+            }
+            Jvm.pause(1);
+        }
     }
 
     @Override
@@ -645,8 +1018,30 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
         return rollCycle().toIndex(cycle, 0);
     }
 
+    /**
+     * With {@link SingleChronicleQueueBuilder#cycleCounts(boolean)}, the sealed cycles are counted from the prefix sums
+     * of their counts, so only the last cycle is read, see {@link CycleCounts}
+     */
     @Override
     public long entryCount() {
+        int firstCycle = firstCycle();
+        if (firstCycle == Integer.MAX_VALUE)
+            return 0;
+        if (cycleCounts != null) {
+            int lastCycle = lastCycle();
+            long sealed;
+            try {
+                sealed = cycleCounts.countBetween(firstCycle, lastCycle - 1, listCyclesBetween(firstCycle, lastCycle).size() - 1);
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+            if (sealed >= 0) {
+                long last = exceptsPerCycle(lastCycle);
+                if (last >= 0)
+                    return sealed + last;
+            }
+        }
+
         final ExcerptTailer tailer = createTailer();
         tailer.toEnd();
         long lastIndex = tailer.index();
@@ -813,8 +1208,9 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
                 if (createIfAbsent)
                     checkDiskSpace(that.path);
 
+                boolean precreated = false;
                 if (!dateValue.pathExists && createIfAbsent && !path.exists()) {
-                    PrecreatedFiles.renamePreCreatedFileToRequiredFile(path);
+                    precreated = PrecreatedFiles.renamePreCreatedFileToRequiredFile(path);
                 }
                 dateValue.pathExists = true;
 
@@ -836,7 +1232,7 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
 
                     wireStore.initIndex(wire);
                     // do not allow tailer to see the file until it's header is written
-                    directoryListing.onFileCreated(path, cycle);
+                    onCycleCreated(path, cycle);
                     // allow directoryListing to pick up the file immediately
                     firstAndLastCycleTime = 0;
                 } else {
@@ -850,6 +1246,11 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
                         //noinspection unchecked
                         throw new StreamCorruptedException("The first message should be the header, was " + name);
                     }
+                    if (precreated) {
+                        // the header and index were written when it was pre-created.
+                        onCycleCreated(path, cycle);
+                        firstAndLastCycleTime = 0;
+                    }
                 }
 
                 return wireStore;
@@ -859,6 +1260,75 @@ public class SingleChronicleQueue implements RollingChronicleQueue {
             }
         }
 
+        /**
+         * Create and initialise the file for {@code cycle} as a pre-created file, and touch its first block,
+         * so rolling to it is only a rename.
+         *
+         * @return true if the file was created
+         */
+        private void onCycleCreated(@NotNull File path, int cycle) {
+            if (cycleCounts == null) {
+                directoryListing.onFileCreated(path, cycle);
+                return;
+            }
+            directoryListing.refresh();
+            int lastCycle = directoryListing.getMaxCreatedCycle();
+            directoryListing.onFileCreated(path, cycle);
+            cycleCounts.created(cycle, lastCycle);
+        }
+
+        boolean precreate(int cycle) {
+            File path = dateCache.resourceFor(cycle).path;
+            File preCreated = PrecreatedFiles.preCreatedFile(path);
+            File preCreating = PrecreatedFiles.preCreatingFile(path);
+            if (path.exists() || preCreated.exists() || preCreating.exists())
+                return false;
+
+            checkDiskSpace(SingleChronicleQueue.this.path);
+            WireStore wireStore = null;
+            MappedBytes mappedBytes = null;
+            try {
+                MappedFile mappedFile = mappedFile(preCreating);
+                try {
+                    mappedBytes = MappedBytes.mappedBytes(mappedFile);
+                } finally {
+                    mappedFile.release();
+                }
+                AbstractWire wire = (AbstractWire) wireType.apply(mappedBytes);
+                wire.headerNumber(rollCycle.toIndex(cycle, 0) - 1);
+                if (!wire.writeFirstHeader())
+                    return false;
+                wireStore = storeFactory.apply(SingleChronicleQueue.this, wire);
+                wire.updateFirstHeader();
+                wireStore.initIndex(wire);
+
+                // allocate the disk and page in the first block, so the first writes don't wait for either.
+                int pageSize = OS.pageSize();
+                for (long pos = mappedBytes.writePosition() & -pageSize; pos < blockSize; pos += pageSize)
+                    mappedBytes.compareAndSwapLong(pos, 0L, 0L);
+            } catch (IOException e) {
+                Jvm.warn().on(getClass(), "Unable to pre-create " + preCreated, e);
+                return false;
+            } finally {
+                // the store releases the bytes it was created with.
+                if (wireStore != null)
+                    wireStore.release();
+                else if (mappedBytes != null)
+                    mappedBytes.release();
+            }
+            if (!preCreating.renameTo(preCreated)) {
+                Jvm.warn().on(getClass(), "Failed to rename " + preCreating + " to " + preCreated);
+                preCreating.delete();
+                return false;
+            }
+            if (path.exists() && preCreated.exists()) {
+                // an appender created the cycle while it was pre-created, so this file would never be used.
+                preCreated.delete();
+                return false;
+            }
+            return true;
+        }
+
         private void checkDiskSpace(@NotNull final File filePath) {
             // This operation can stall for 500 ms or more under load.
             DiskSpaceMonitor.INSTANCE.pollDiskSpace(filePath);
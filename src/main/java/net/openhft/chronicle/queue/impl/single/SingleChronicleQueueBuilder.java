@@ -31,9 +31,11 @@ import net.openhft.chronicle.core.util.ObjectUtils;
 import net.openhft.chronicle.core.util.ThrowingBiFunction;
 import net.openhft.chronicle.core.util.Updater;
 import net.openhft.chronicle.queue.BufferMode;
+import net.openhft.chronicle.queue.KeyExtractor;
 import net.openhft.chronicle.queue.QueueOffsetSpec;
 import net.openhft.chronicle.queue.RollCycle;
 import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.SyncMode;
 import net.openhft.chronicle.queue.impl.RollingChronicleQueue;
 import net.openhft.chronicle.queue.impl.StoreFileListener;
 import net.openhft.chronicle.queue.impl.TableStore;
@@ -126,6 +128,20 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
     private Boolean readOnly;
     private Boolean strongAppenders;
     private Boolean checkInterrupts;
+    private Boolean multiWriter;
+    private SyncMode syncMode;
+    private Integer syncEveryMessages;
+    private Long syncIntervalMicros;
+    private Boolean deferredIndexing;
+    private Long precreateNextCycleMillis;
+    private Integer appenderPoolSize;
+    private Boolean timestamps;
+    private KeyExtractor keyExtractor;
+    private Boolean notifyTailers;
+    private Integer tailerCommitEveryMessages;
+    private Long tailerCommitIntervalMicros;
+    private Integer adaptiveIndexSpacing;
+    private Boolean cycleCounts;
 
     private TableStore<SCQMeta> metaStore;
 
@@ -251,7 +267,9 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
                 queue.wireType(),
                 (MappedBytes) wire.bytes(),
                 queue.indexCount(),
-                queue.indexSpacing());
+                queue instanceof SingleChronicleQueue
+                        ? ((SingleChronicleQueue) queue).indexSpacingForNewCycle()
+                        : queue.indexSpacing());
 
         wire.writeEventName(MetaDataKeys.header).typedMarshallable(wireStore);
 
@@ -337,8 +355,9 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
         boolean result = false;
         if (readBufferMode != BufferMode.None)
             result = onlyAvailableInEnterprise("Buffering");
-        if (writeBufferMode != BufferMode.None)
-            result = onlyAvailableInEnterprise("Buffering");
+        // without Enterprise, asynchronous writes use the open source ring buffer
+        if (writeBufferMode != BufferMode.None && ENTERPRISE_QUEUE_CONSTRUCTOR != null)
+            result = true;
         if (rollTimeZone != null && !rollTimeZone.getId().equals("UTC") && !rollTimeZone.getId().equals("Z"))
             result = onlyAvailableInEnterprise("Non-UTC roll time zone");
         if (wireType == WireType.DELTA_BINARY)
@@ -432,9 +451,9 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
             if (sourceId() == 0)
                 sourceId(newMeta.sourceId());
 
-            if (!newMeta.roll().format().equals(rollCycle().format())) {
+            if (!newMeta.roll().matches(rollCycle())) {
                 // roll cycle changed
-                overrideRollCycleForFileNameLength(newMeta.roll().format().length());
+                overrideRollCycle(newMeta.roll());
             }
 
             // if it was overridden - reset
@@ -467,6 +486,25 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
         }
     }
 
+    private void overrideRollCycle(@NotNull SCQRoll roll) {
+        RollCycle custom = roll.customRollCycle();
+        if (custom != null) {
+            LOGGER.warn("Overriding roll cycle from {} to {}", rollCycle, custom);
+            rollCycle = custom;
+            return;
+        }
+        for (RollCycles cycle : RollCycles.VALUES) {
+            if (cycle.format().equals(roll.format()) && cycle.length() == roll.length()) {
+                LOGGER.warn("Overriding roll cycle from {} to {}", rollCycle, cycle);
+                rollCycle = cycle;
+                return;
+            }
+        }
+        // e.g. a CustomRollCycle written before its parameters were kept.
+        throw new IllegalStateException("The queue's roll cycle of " + roll.length() + " ms with format " + roll.format() +
+                " isn't one of RollCycles, it must be opened with the RollCycle it was written with");
+    }
+
     private void overrideRollCycleForFileNameLength(int patternLength) {
         for (RollCycles cycle : RollCycles.VALUES) {
             if (cycle.format().length() == patternLength) {
@@ -496,7 +534,20 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
 
     @NotNull
     WriteLock writeLock() {
-        return readOnly() ? new ReadOnlyWriteLock() : new TableStoreWriteLock(metaStore, pauserSupplier(), timeoutMS() * 3 / 2);
+        if (readOnly())
+            return new ReadOnlyWriteLock();
+        WriteLock writeLock = new TableStoreWriteLock(metaStore, pauserSupplier(), timeoutMS() * 3 / 2);
+        return multiWriter() ? new MultiWriterWriteLock(writeLock) : writeLock;
+    }
+
+    /**
+     * @return the lock held while adding to the {@link KeyIndexes}, separate from the write lock
+     */
+    @NotNull
+    WriteLock keyIndexLock() {
+        if (readOnly())
+            return new ReadOnlyWriteLock();
+        return new TableStoreWriteLock(metaStore, pauserSupplier(), timeoutMS() * 3 / 2, "chronicle.keyIndex.lock");
     }
 
     public int deltaCheckpointInterval() {
@@ -738,7 +789,15 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
     }
 
     /**
-     * @return BufferMode to use for writes. Only None is available is the OSS
+     * @return true if appends should go through the open source {@link AppenderRingBuffer}
+     */
+    boolean asyncAppenderRingBuffer() {
+        return writeBufferMode() == BufferMode.Asynchronous && ENTERPRISE_QUEUE_CONSTRUCTOR == null;
+    }
+
+    /**
+     * @return BufferMode to use for writes. Without Chronicle Queue Enterprise, Asynchronous uses an off heap ring buffer
+     * drained by the {@link #eventLoop()}
      */
     @NotNull
     public BufferMode writeBufferMode() {
@@ -792,6 +851,10 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
         return eventLoop == null ? new EventGroup(true) : eventLoop;
     }
 
+    boolean hasEventLoop() {
+        return eventLoop != null;
+    }
+
     @NotNull
     public SingleChronicleQueueBuilder eventLoop(EventLoop eventLoop) {
         this.eventLoop = eventLoop;
@@ -1015,6 +1078,256 @@ public class SingleChronicleQueueBuilder implements Cloneable, Marshallable {
         return this;
     }
 
+    public boolean multiWriter() {
+        return Boolean.TRUE.equals(multiWriter);
+    }
+
+    @NotNull
+    public SyncMode syncMode() {
+        return syncMode == null ? SyncMode.NONE : syncMode;
+    }
+
+    /**
+     * @param syncMode when appended excerpts are forced to disk, the default is {@link SyncMode#NONE}
+     * @return this
+     */
+    public SingleChronicleQueueBuilder syncMode(@NotNull SyncMode syncMode) {
+        this.syncMode = syncMode;
+        return this;
+    }
+
+    public int syncEveryMessages() {
+        return syncEveryMessages == null ? 64 : syncEveryMessages;
+    }
+
+    /**
+     * @param syncEveryMessages the number of excerpts between syncs for {@link SyncMode#EVERY_N_MESSAGES}
+     * @return this
+     */
+    public SingleChronicleQueueBuilder syncEveryMessages(int syncEveryMessages) {
+        if (syncEveryMessages < 1)
+            throw new IllegalArgumentException("syncEveryMessages must be positive");
+        this.syncEveryMessages = syncEveryMessages;
+        return this;
+    }
+
+    public long syncIntervalMicros() {
+        return syncIntervalMicros == null ? 1_000 : syncIntervalMicros;
+    }
+
+    /**
+     * @param syncIntervalMicros the time between syncs for {@link SyncMode#EVERY_INTERVAL} and {@link SyncMode#ASYNC}
+     * @return this
+     */
+    public SingleChronicleQueueBuilder syncIntervalMicros(long syncIntervalMicros) {
+        if (syncIntervalMicros < 0)
+            throw new IllegalArgumentException("syncIntervalMicros must not be negative");
+        this.syncIntervalMicros = syncIntervalMicros;
+        return this;
+    }
+
+    /**
+     * Optimise the write lock for many threads in this process appending at the same time.
+     * Writers in this process queue up locally so only one of them competes for the queue's write lock.
+     *
+     * @param multiWriter true if many threads will append concurrently
+     * @return this
+     */
+    public SingleChronicleQueueBuilder multiWriter(boolean multiWriter) {
+        this.multiWriter = multiWriter;
+        return this;
+    }
+
+    public boolean deferredIndexing() {
+        return Boolean.TRUE.equals(deferredIndexing);
+    }
+
+    /**
+     * Take indexing off the appender's critical path. Appenders only write the excerpt, and the queue's event loop
+     * indexes them shortly after. Until then moveToIndex scans from the last excerpt indexed.
+     * Appenders catch up on indexing themselves if the event loop falls too far behind, so the scan is bounded.
+     *
+     * @param deferredIndexing true to index on the event loop
+     * @return this
+     */
+    public SingleChronicleQueueBuilder deferredIndexing(boolean deferredIndexing) {
+        this.deferredIndexing = deferredIndexing;
+        return this;
+    }
+
+    public long precreateNextCycleMillis() {
+        return precreateNextCycleMillis == null ? 0 : precreateNextCycleMillis;
+    }
+
+    /**
+     * Create the next cycle's file this long before the queue rolls to it, from the queue's event loop or a {@link Pretoucher}.
+     * The file is initialised and its first block touched, so the roll only has to rename it. The default of 0 is off.
+     *
+     * @param precreateNextCycleMillis how long before the roll to create the next cycle's file
+     * @return this
+     */
+    public SingleChronicleQueueBuilder precreateNextCycle(long precreateNextCycleMillis) {
+        if (precreateNextCycleMillis < 0)
+            throw new IllegalArgumentException("precreateNextCycleMillis must not be negative");
+        this.precreateNextCycleMillis = precreateNextCycleMillis;
+        return this;
+    }
+
+    public int appenderPoolSize() {
+        return appenderPoolSize == null ? Runtime.getRuntime().availableProcessors() : appenderPoolSize;
+    }
+
+    /**
+     * @param appenderPoolSize the most appenders {@link SingleChronicleQueue#appenderPool()} creates, the default is the number of cores
+     * @return this
+     */
+    public SingleChronicleQueueBuilder appenderPoolSize(int appenderPoolSize) {
+        if (appenderPoolSize < 1)
+            throw new IllegalArgumentException("appenderPoolSize must be positive");
+        this.appenderPoolSize = appenderPoolSize;
+        return this;
+    }
+
+    public boolean timestamps() {
+        return Boolean.TRUE.equals(timestamps);
+    }
+
+    /**
+     * Record when each excerpt is written, in a meta data record before it, so {@link net.openhft.chronicle.queue.ExcerptTailer#moveToTime(long)}
+     * can find excerpts by time without reading them. This adds 16 bytes per excerpt.
+     * Excerpts written with {@link net.openhft.chronicle.queue.ExcerptAppender#batchAppend(int, net.openhft.chronicle.queue.batch.BatchAppender)} don't have a timestamp.
+     *
+     * @param timestamps true to record the time each excerpt is written
+     * @return this
+     */
+    public SingleChronicleQueueBuilder timestamps(boolean timestamps) {
+        this.timestamps = timestamps;
+        return this;
+    }
+
+    @Nullable
+    public KeyExtractor keyExtractor() {
+        return keyExtractor;
+    }
+
+    /**
+     * Maintain a secondary index of excerpts by key, so {@link net.openhft.chronicle.queue.ExcerptTailer#moveToKey(long)}
+     * can find them without a full scan. Each cycle's index is a memory mapped hash table in a {@code .keyindex} file
+     * beside the cycle's file. The queue's event loop adds to it shortly after excerpts are written, and rebuilds it
+     * from the cycle if it is missing.
+     *
+     * @param keyExtractor reads an excerpt's key, this must be the same for every process using the queue
+     * @return this
+     */
+    public SingleChronicleQueueBuilder keyExtractor(@Nullable KeyExtractor keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        return this;
+    }
+
+    public boolean notifyTailers() {
+        return Boolean.TRUE.equals(notifyTailers);
+    }
+
+    /**
+     * Wake tailers waiting in {@link net.openhft.chronicle.queue.ExcerptTailer#awaitNext(long, java.util.concurrent.TimeUnit)}
+     * as soon as an excerpt is written, in this process or another. While a tailer is waiting, appenders add one to a
+     * sequence in the queue's metadata after each excerpt, which costs an atomic add shared by every writer of the queue.
+     * By default this is off, and waiting tailers poll with a backoff of up to
+     * {@code chronicle.queue.awaitNext.maxParkMicros}.
+     *
+     * @param notifyTailers true for appenders to wake waiting tailers
+     * @return this
+     */
+    public SingleChronicleQueueBuilder notifyTailers(boolean notifyTailers) {
+        this.notifyTailers = notifyTailers;
+        return this;
+    }
+
+    public int tailerCommitEveryMessages() {
+        if (tailerCommitEveryMessages == null)
+            // only an interval was set, so commit on the interval alone
+            return tailerCommitIntervalMicros() > 0 ? Integer.MAX_VALUE : 1;
+        return tailerCommitEveryMessages;
+    }
+
+    /**
+     * How often a named tailer, see {@link SingleChronicleQueue#createTailer(String)}, writes its position to the
+     * queue's metadata. The default of 1 writes it on every move, unless only {@link #tailerCommitIntervalMicros(long)}
+     * is set, in which case it is written on that interval alone. Larger values keep the position in the tailer and
+     * write it every {@code tailerCommitEveryMessages} moves, after {@link #tailerCommitIntervalMicros(long)}, when
+     * there is nothing to read, on {@link net.openhft.chronicle.queue.ExcerptTailer#commit()} or when the queue closes.
+     * A tailer restarted after a crash reads again at most the excerpts read since its last commit.
+     *
+     * @param tailerCommitEveryMessages the number of moves between writing a named tailer's position
+     * @return this
+     */
+    public SingleChronicleQueueBuilder tailerCommitEveryMessages(int tailerCommitEveryMessages) {
+        if (tailerCommitEveryMessages < 1)
+            throw new IllegalArgumentException("tailerCommitEveryMessages must be positive");
+        this.tailerCommitEveryMessages = tailerCommitEveryMessages;
+        return this;
+    }
+
+    public long tailerCommitIntervalMicros() {
+        return tailerCommitIntervalMicros == null ? 0 : tailerCommitIntervalMicros;
+    }
+
+    /**
+     * @param tailerCommitIntervalMicros the longest a named tailer keeps a position before writing it, 0 for no
+     *                                   limit. Unless {@link #tailerCommitEveryMessages(int)} is also set, the
+     *                                   position is only written on this interval
+     * @return this
+     */
+    public SingleChronicleQueueBuilder tailerCommitIntervalMicros(long tailerCommitIntervalMicros) {
+        if (tailerCommitIntervalMicros < 0)
+            throw new IllegalArgumentException("tailerCommitIntervalMicros must not be negative");
+        this.tailerCommitIntervalMicros = tailerCommitIntervalMicros;
+        return this;
+    }
+
+    public int adaptiveIndexSpacing() {
+        return adaptiveIndexSpacing == null ? 0 : adaptiveIndexSpacing;
+    }
+
+    /**
+     * Choose the index spacing of each new cycle from the excerpt count and size of the cycle before it, so a linear
+     * scan from an index entry reads about {@code scanBytes}, rather than a fixed number of excerpts.
+     * Each cycle's spacing is recorded in its own header, so cycles written before this was set are still read.
+     * The spacing is never so small that a cycle four times busier than the last couldn't be indexed.
+     * The default of 0 always uses {@link #indexSpacing()}. This needs {@link #cycleCounts(boolean)}, which it turns
+     * on unless it is explicitly turned off, in which case the default spacing is used.
+     *
+     * @param scanBytes the bytes to aim for between index entries
+     * @return this
+     */
+    public SingleChronicleQueueBuilder adaptiveIndexSpacing(int scanBytes) {
+        if (scanBytes < 0)
+            throw new IllegalArgumentException("scanBytes must not be negative");
+        this.adaptiveIndexSpacing = scanBytes;
+        return this;
+    }
+
+    public boolean cycleCounts() {
+        if (cycleCounts == null)
+            // adaptive index spacing is chosen from the counts
+            return adaptiveIndexSpacing() > 0;
+        return cycleCounts;
+    }
+
+    /**
+     * Record the number of excerpts and bytes of each cycle when it is sealed, in a {@code cycle-counts.cq4c} file in
+     * the queue's directory, so {@link SingleChronicleQueue#countExcerpts(long, long)} and
+     * {@link SingleChronicleQueue#entryCount()} don't have to open each cycle. By default this is off, and no file is
+     * created.
+     *
+     * @param cycleCounts true to record the count of each cycle
+     * @return this
+     */
+    public SingleChronicleQueueBuilder cycleCounts(boolean cycleCounts) {
+        this.cycleCounts = cycleCounts;
+        return this;
+    }
+
     public SingleChronicleQueueBuilder clone() {
         try {
             return (SingleChronicleQueueBuilder) super.clone();
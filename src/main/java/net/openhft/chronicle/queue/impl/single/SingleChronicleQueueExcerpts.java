@@ -26,6 +26,7 @@ import net.openhft.chronicle.core.pool.StringBuilderPool;
 import net.openhft.chronicle.core.values.LongValue;
 import net.openhft.chronicle.queue.*;
 import net.openhft.chronicle.queue.batch.BatchAppender;
+import net.openhft.chronicle.queue.batch.ExcerptBatchHandler;
 import net.openhft.chronicle.queue.impl.*;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
@@ -38,6 +39,12 @@ import java.io.IOException;
 import java.io.StreamCorruptedException;
 import java.nio.BufferOverflowException;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 import static net.openhft.chronicle.queue.TailerDirection.*;
 import static net.openhft.chronicle.queue.TailerState.*;
@@ -66,12 +73,16 @@ public class SingleChronicleQueueExcerpts {
     }
 
     static class StoreAppender implements ExcerptAppender, ExcerptContext, InternalAppender {
+        // how many index entries a deferred indexer can fall behind before appenders index for themselves.
+        private static final int DEFERRED_INDEX_MAX_LAG = Integer.getInteger("chronicle.queue.deferredIndexing.maxLag", 16);
         @NotNull
         private final SingleChronicleQueue queue;
         @NotNull
         private final WriteLock writeLock;
         @NotNull
         private final StoreAppenderContext context;
+        @NotNull
+        private final ClaimContext claimContext;
         private final ClosableResources<?> closableResources;
         private final WireStorePool storePool;
         private final boolean checkInterrupts;
@@ -83,6 +94,7 @@ public class SingleChronicleQueueExcerpts {
         @Nullable
         private Wire wireForIndex;
         private long positionOfHeader = 0;
+        private long endOfLastWrite;
         private long lastIndex = Long.MIN_VALUE;
         private long lastPosition;
         private int lastCycle;
@@ -90,6 +102,10 @@ public class SingleChronicleQueueExcerpts {
         private Pretoucher pretoucher = null;
         private Padding padToCacheLines = Jvm.isArm() ? Padding.WORD : Padding.SMART;
         private NativeBytesStore<Void> batchTmp;
+        @Nullable
+        private StoreDocumentGroup group;
+        private final long maxCycleBytes;
+        private final long maxCycleMessages;
 
         StoreAppender(@NotNull SingleChronicleQueue queue,
                       @NotNull WireStorePool storePool,
@@ -97,16 +113,28 @@ public class SingleChronicleQueueExcerpts {
             this.queue = queue;
             this.storePool = storePool;
             this.checkInterrupts = checkInterrupts;
+            this.maxCycleBytes = queue.rollCycle().maxCycleBytes();
+            this.maxCycleMessages = queue.rollCycle().maxCycleMessages();
 
             this.writeLock = queue.writeLock();
             assert writeLock != null;
             this.context = new StoreAppenderContext();
+            this.claimContext = new ClaimContext();
             this.closableResources = new ClosableResources<>(storePool);
 
             // always put references to "this" last.
             queue.addCloseListener(this, StoreAppender::close);
         }
 
+        /**
+         * Called before another thread uses this appender, once the last has finished with it, e.g. by an {@link AppenderPool}
+         */
+        void handOff() {
+            WireStore store = this.store;
+            if (store instanceof SingleChronicleQueueStore)
+                ((SingleChronicleQueueStore) store).clearAccessThread();
+        }
+
         @Deprecated // Should not be providing accessors to reference-counted objects
         @NotNull
         WireStore store() {
@@ -365,22 +393,277 @@ public class SingleChronicleQueueExcerpts {
         public DocumentContext writingDocument(boolean metaData) throws UnrecoverableTimeoutException {
             if (queue.isClosed.get())
                 throw new IllegalStateException("Queue is closed");
+            int safeLength = (int) queue.overlapSize();
+            if (group != null) {
+                // already locked, and the whole group stays in one cycle.
+                openContext(metaData, safeLength);
+                return context;
+            }
+            lockCycleToWrite(false);
+
+            resetPosition();
+            assert checkWritePositionHeaderNumber();
+
+            // sets the writeLimit based on the safeLength
+            openContext(metaData, safeLength);
+            return context;
+        }
+
+        /**
+         * Takes the write lock only to reserve the space, by writing a header which is not complete but has the length
+         * reserved, so later claims can skip over it. The excerpts before an outstanding claim are indexed by the next
+         * writer to hold the lock, see {@link #absorbClaims()}
+         */
+        @NotNull
+        @Override
+        public DocumentContext claimingDocument(int maxLength) throws UnrecoverableTimeoutException {
+            if (queue.isClosed.get())
+                throw new IllegalStateException("Queue is closed");
+            if (!claimContext.isClosed)
+                throw new IllegalStateException("The last claim hasn't been closed");
+            if (group != null)
+                throw new IllegalStateException("Can't claim while writing a group of documents");
+            if (maxLength < 0 || maxLength > Wires.LENGTH_MASK)
+                throw new IllegalArgumentException("maxLength: " + maxLength);
+
+            long position;
+            int header = NOT_COMPLETE | maxLength;
+            lockCycleToWrite(true);
+            try {
+                absorbClaims();
+                while ((position = endOfClaims()) < 0) {
+                    // another appender has sealed this cycle, so claim in the one it rolled to.
+                    int lastCycle = queue.lastCycle();
+                    if (lastCycle <= cycle)
+                        throw new IllegalStateException("Cycle " + cycle + " has already ended");
+                    setCycle2(lastCycle, true);
+                    absorbClaims();
+                }
+                if (queue.timestamps()) {
+                    ExcerptTimestamps.write(wire.bytes(), position, nextTimestamp(position));
+                    position += ExcerptTimestamps.LENGTH;
+                }
+                if (!wire.bytes().compareAndSwapInt(position, 0, header))
+                    throw new IllegalStateException("Unable to claim at " + position + " as another writer doesn't hold the write lock");
+                queue.claimed(cycle, position);
+            } catch (StreamCorruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                writeLock.unlock();
+            }
+
+            claimContext.open(position, header);
+            return claimContext;
+        }
+
+        /**
+         * @return the position after the last excerpt or claim in this cycle, or -1 if the cycle has ended
+         */
+        private long endOfClaims() {
+            Bytes<?> bytes = wire.bytes();
+            long pos = store.writePosition();
+            for (; ; ) {
+                int header = bytes.readVolatileInt(pos);
+                if (header == 0)
+                    return pos;
+                if (header == END_OF_DATA)
+                    return -1;
+                // claims which aren't complete have their reserved length in the header.
+                pos += lengthOf(header) + SPB_HEADER_SIZE;
+            }
+        }
+
+        /**
+         * Takes the write lock and acquires the cycle to write to, once no claim which has to be committed first is
+         * outstanding. An excerpt can't be given an index before the claims ahead of it, and a cycle can't be sealed
+         * before its claims are, but a claim can be made after other claims. Claims are waited for without the lock,
+         * see {@link #awaitClaims()}, so claimants and other writers carry on meanwhile.
+         *
+         * @param claiming true to only wait for claims if the cycle is about to roll
+         */
+        private void lockCycleToWrite(boolean claiming) throws UnrecoverableTimeoutException {
+            for (; ; ) {
+                writeLock.lock();
+                boolean locked = false;
+                try {
+                    if (claiming && !rollDue() || absorbClaims()) {
+                        acquireCycleToWrite();
+                        // e.g. claims in a cycle another appender rolled to.
+                        locked = claiming || absorbClaims();
+                        if (locked)
+                            return;
+                    }
+                } catch (StreamCorruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    if (!locked)
+                        writeLock.unlock();
+                }
+                awaitClaims();
+            }
+        }
+
+        /**
+         * @return true if the next write would roll to a new cycle. Must hold the write lock.
+         */
+        private boolean rollDue() {
+            if (wire == null)
+                return false;
+            int cycle = queue.cycle();
+            return this.cycle != cycle && !keepCycle(cycle);
+        }
+
+        /**
+         * Moves the store's write position over the claims committed since it was last moved, indexing them in the order
+         * they were claimed. Only excerpts before the first outstanding claim can be given a sequence number.
+         * The headers are only scanned if a claim has been made after the write position. Must hold the write lock.
+         *
+         * @return true if no claim is outstanding in this cycle
+         */
+        private boolean absorbClaims() throws StreamCorruptedException {
+            if (wire == null)
+                return true;
+            long pos = store.writePosition();
+            if (!queue.claimsMayFollow(cycle, pos))
+                return true;
+            Bytes<?> bytes = wire.bytes();
+            pos += lengthOf(bytes.readVolatileInt(pos)) + SPB_HEADER_SIZE;
+            long sequence = Long.MIN_VALUE;
+            for (; ; ) {
+                int header = bytes.readVolatileInt(pos);
+                if (header == 0 || header == END_OF_DATA)
+                    return true;
+                if (isNotComplete(header))
+                    return false;
+                if (isData(header)) {
+                    if (sequence == Long.MIN_VALUE)
+                        sequence = store.lastSequenceNumber(this);
+                    sequence++;
+                    store.writePosition(pos);
+                    writeIndexForPosition(queue.rollCycle().toIndex(cycle, sequence), pos);
+                }
+                pos += lengthOf(header) + SPB_HEADER_SIZE;
+            }
+        }
+
+        /**
+         * Waits, without the write lock, for the first claim outstanding in this cycle to be committed. A claim which
+         * isn't committed within the timeout is discarded, as its claimant has most likely died, so it can't stop every
+         * later writer.
+         */
+        private void awaitClaims() throws UnrecoverableTimeoutException {
+            if (!claimContext.isClosed)
+                throw new IllegalStateException("The claim made by this appender must be closed before it writes again");
+            Bytes<?> bytes = wire.bytes();
+            long pos = store.writePosition();
+            long timeoutTime = System.currentTimeMillis() + timeoutMS();
+            for (; ; ) {
+                int header = bytes.readVolatileInt(pos);
+                if (header == 0 || header == END_OF_DATA)
+                    return;
+                if (!isNotComplete(header)) {
+                    pos += lengthOf(header) + SPB_HEADER_SIZE;
+                } else if (System.currentTimeMillis() > timeoutTime) {
+                    discardClaim(pos, header);
+                    return;
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Turns a claim which wasn't committed in time into padding of the length it reserved. Only a claim can be
+         * outstanding while this holds the write lock. Its claimant can't commit it afterwards, see
+         * {@link ClaimContext#close()}
+         */
+        private void discardClaim(long pos, int header) throws UnrecoverableTimeoutException {
             writeLock.lock();
+            try {
+                if (wire.bytes().compareAndSwapInt(pos, header, META_DATA | lengthOf(header)))
+                    Jvm.warn().on(getClass(), "Discarded the claim at " + pos + " in cycle " + cycle +
+                            " as it wasn't closed within " + timeoutMS() + " ms");
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        /**
+         * Takes the write lock until the group is closed. The first header of the group is left not complete
+         * until then, so tailers stop at it, and the store's write position and index are only updated on commit.
+         */
+        @NotNull
+        @Override
+        public DocumentGroup writingDocuments(int expected) throws UnrecoverableTimeoutException {
+            if (queue.isClosed.get())
+                throw new IllegalStateException("Queue is closed");
+            if (group != null)
+                throw new IllegalStateException("Already writing a group of documents");
+            lockCycleToWrite(false);
+            try {
+                resetPosition();
+                assert checkWritePositionHeaderNumber();
+            } catch (Throwable t) {
+                writeLock.unlock();
+                throw t;
+            }
+            StoreDocumentGroup group = this.group = new StoreDocumentGroup();
+            group.start(expected, wire.headerNumber());
+            return group;
+        }
+
+        /**
+         * Set the wire if this is the first write, and roll to the current cycle unless the roll cycle keeps the last
+         * cycle until it is full, see {@link RollCycle#maxCycleBytes()}
+         *
+         * @return the cycle to write to
+         */
+        private int acquireCycleToWrite() {
             int cycle = queue.cycle();
 
             if (wire == null)
                 setWireIfNull(cycle);
 
-            if (this.cycle != cycle)
+            if (this.cycle != cycle && !keepCycle(cycle))
                 rollCycleTo(cycle);
+            return this.cycle;
+        }
 
-            int safeLength = (int) queue.overlapSize();
-            resetPosition();
-            assert checkWritePositionHeaderNumber();
+        /**
+         * @param cycle the current cycle
+         * @return true if the last cycle is kept after its time is up, as it isn't full
+         */
+        private boolean keepCycle(int cycle) {
+            if (maxCycleBytes == Long.MAX_VALUE && maxCycleMessages == Long.MAX_VALUE)
+                return false;
+            if (isSealed()) {
+                // another appender has rolled, so carry on with the cycle it rolled to
+                int lastCycle = queue.lastCycle();
+                if (lastCycle <= this.cycle)
+                    return false;
+                setCycle2(lastCycle, true);
+                return lastCycle >= cycle || keepCycle(cycle);
+            }
+            return store.writePosition() < maxCycleBytes
+                    && queue.rollCycle().toSequenceNumber(wire.headerNumber() + 1) < maxCycleMessages;
+        }
 
-            // sets the writeLimit based on the safeLength
-            openContext(metaData, safeLength);
-            return context;
+        /**
+         * @return true if the EOF follows the last excerpt, read from the store rather than the directory listing as
+         * this is checked on every write to a kept cycle
+         */
+        private boolean isSealed() {
+            Bytes<?> bytes = wire.bytes();
+            long pos = store.writePosition();
+            for (; ; ) {
+                int header = bytes.readVolatileInt(pos);
+                if (Wires.isEndOfFile(header))
+                    return true;
+                if (header == 0 || isNotComplete(header))
+                    return false;
+                // e.g. meta data, which doesn't move the write position.
+                pos += lengthOf(header) + SPB_HEADER_SIZE;
+            }
         }
 
         private void setWireIfNull(int cycle) {
@@ -393,7 +676,7 @@ public class SingleChronicleQueueExcerpts {
                 while (cur >= firstCycle) {
                     setCycle2(cur, false);
                     if (wire != null) {
-                        if (!store.writeEOF(wire, timeoutMS()))
+                        if (!writeEOF())
                             break;
                     }
                     cur--;
@@ -403,8 +686,22 @@ public class SingleChronicleQueueExcerpts {
             setCycle2(lastCycle, true);
         }
 
-        private long writeHeader(@NotNull Wire wire, int safeLength) {
+        private long writeHeader(@NotNull Wire wire, int safeLength, boolean metaData) {
             Bytes<?> bytes = wire.bytes();
+            if (group != null && group.documents() > 0) {
+                // the store's write position isn't moved until the group is committed.
+                bytes.writePosition(group.end);
+                if (!metaData && queue.timestamps())
+                    writeTimestamp(bytes);
+                return wire.enterHeader(safeLength);
+            }
+            try {
+                // the lock is only taken once no claim is outstanding, see lockCycleToWrite
+                if (!absorbClaims())
+                    throw new IllegalStateException("Can't write after a claim which is outstanding");
+            } catch (StreamCorruptedException e) {
+                throw new IllegalStateException(e);
+            }
             // writePosition points at the last record in the queue, so we can just skip it and we're ready for write
             long pos = positionOfHeader;
             long lastPos = store.writePosition();
@@ -421,13 +718,55 @@ public class SingleChronicleQueueExcerpts {
             assert header != NOT_INITIALIZED;
             lastPos += lengthOf(bytes.readVolatileInt(lastPos)) + SPB_HEADER_SIZE;
             bytes.writePosition(lastPos);
+            if (!metaData && queue.timestamps())
+                writeTimestamp(bytes);
 
             return wire.enterHeader(safeLength);
         }
 
+        /**
+         * Write the time before the excerpt about to be written, see {@link ExcerptTimestamps}
+         */
+        private void writeTimestamp(@NotNull Bytes<?> bytes) {
+            long pos = bytes.writePosition();
+            for (; ; ) {
+                int header = bytes.readVolatileInt(pos);
+                if (header == 0)
+                    break;
+                // leave enterHeader to handle the end of the cycle.
+                if (header == END_OF_DATA || isNotComplete(header))
+                    return;
+                // e.g. the timestamp of an excerpt which was rolled back.
+                pos += lengthOf(header) + SPB_HEADER_SIZE;
+            }
+            bytes.writeLimit(bytes.capacity());
+            ExcerptTimestamps.write(bytes, pos, nextTimestamp(pos));
+            bytes.writePosition(pos + ExcerptTimestamps.LENGTH);
+        }
+
+        /**
+         * The time for an excerpt's {@link ExcerptTimestamps}, no earlier than the last stored in this cycle, as the clock of
+         * each appending process is only aligned to the wall clock to the millisecond. Must hold the write lock.
+         *
+         * @param position where the timestamp will be written
+         */
+        private long nextTimestamp(long position) {
+            Bytes<?> bytes = wire.bytes();
+            long pos = store.writePosition();
+            long last = ExcerptTimestamps.read(bytes, pos);
+            // e.g. claims, and excerpts rolled back
+            while (pos < position) {
+                int header = bytes.readVolatileInt(pos);
+                if (header == ExcerptTimestamps.HEADER)
+                    last = Math.max(last, ExcerptTimestamps.read(bytes, pos + ExcerptTimestamps.LENGTH));
+                pos += lengthOf(header) + SPB_HEADER_SIZE;
+            }
+            return Math.max(last, queue.currentTimeNanos());
+        }
+
         private void openContext(boolean metaData, int safeLength) {
             assert wire != null;
-            this.positionOfHeader = writeHeader(wire, safeLength); // sets wire.bytes().writePosition = position + 4;
+            this.positionOfHeader = writeHeader(wire, safeLength, metaData); // sets wire.bytes().writePosition = position + 4;
             context.isClosed = false;
             context.rollbackOnClose = false;
             context.wire = wire; // Jvm.isDebug() ? acquireBufferWire() : wire;
@@ -469,23 +808,82 @@ public class SingleChronicleQueueExcerpts {
 
         @Override
         public void writeBytes(@NotNull BytesStore bytes) throws UnrecoverableTimeoutException {
-            writeLock.lock();
+            if (group != null) {
+                try (DocumentContext dc = writingDocument()) {
+                    // the same format as writeBytesUnderLock
+                    context.padToCacheAlign = false;
+                    dc.wire().bytes().write(bytes);
+                }
+                return;
+            }
+            lockCycleToWrite(false);
             try {
-                int cycle = queue.cycle();
-                if (wire == null)
-                    setWireIfNull(cycle);
+                writeBytesUnderLock(bytes, bytes.readPosition(), bytes.readRemaining());
+            } finally {
+                writeLock.unlock();
+            }
+            afterAppend(endOfLastWrite);
+        }
 
-                if (this.cycle != cycle)
-                    rollCycleTo(cycle);
+        /**
+         * Write all the {@code payloads} holding the write lock once. Each excerpt is indexed as it is written,
+         * and the batch moves on to a new cycle if the cycle rolls part way through.
+         */
+        @Override
+        public int writeBytesBatch(@NotNull List<? extends BytesStore> payloads) throws UnrecoverableTimeoutException {
+            if (payloads.isEmpty())
+                return 0;
+            if (group != null)
+                return ExcerptAppender.super.writeBytesBatch(payloads);
+            lockCycleToWrite(false);
+            try {
+                for (BytesStore bytes : payloads)
+                    writeBytesUnderLock(bytes, bytes.readPosition(), bytes.readRemaining());
+            } finally {
+                writeLock.unlock();
+            }
+            afterAppend(endOfLastWrite);
+            return payloads.size();
+        }
 
-                this.positionOfHeader = writeHeader(wire, (int) queue.overlapSize()); // writeHeader sets wire.byte().writePosition
+        @Override
+        public int writeLengthPrefixedBatch(@NotNull BytesStore buffer) throws UnrecoverableTimeoutException {
+            if (group != null)
+                return ExcerptAppender.super.writeLengthPrefixedBatch(buffer);
+            int count = 0;
+            long end = buffer.readLimit();
+            lockCycleToWrite(false);
+            try {
+                for (long pos = buffer.readPosition(); pos < end; count++) {
+                    int length = buffer.readInt(pos);
+                    pos += Integer.BYTES;
+                    if (length < 0 || pos + length > end)
+                        throw new IllegalArgumentException("Invalid length " + length + " at " + (pos - Integer.BYTES));
+                    writeBytesUnderLock(buffer, pos, length);
+                    pos += length;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (count > 0)
+                afterAppend(endOfLastWrite);
+            return count;
+        }
+
+        private void writeBytesUnderLock(@NotNull BytesStore bytes, long offset, long length) {
+            assert writeLock.locked();
+            try {
+                int cycle = acquireCycleToWrite();
+
+                this.positionOfHeader = writeHeader(wire, (int) queue.overlapSize(), false); // writeHeader sets wire.byte().writePosition
 
                 assert ((AbstractWire) wire).isInsideHeader();
                 beforeAppend(wire, wire.headerNumber() + 1);
                 Bytes<?> wireBytes = wire.bytes();
-                wireBytes.write(bytes);
+                wireBytes.write(bytes, offset, length);
                 if (padToCacheLines == Padding.WORD)
                     wireBytes.writeSkip((-wireBytes.writePosition()) & 0x3);
+                endOfLastWrite = wireBytes.writePosition();
                 wire.updateHeader(positionOfHeader, false, 0);
                 lastIndex(wire.headerNumber());
                 lastPosition = positionOfHeader;
@@ -494,11 +892,21 @@ public class SingleChronicleQueueExcerpts {
                 writeIndexForPosition(lastIndex, positionOfHeader);
             } catch (StreamCorruptedException e) {
                 throw new AssertionError(e);
-            } finally {
-                writeLock.unlock();
             }
         }
 
+        /**
+         * Wake tailers waiting for an excerpt, and pass the end of the excerpt just written to the queue's
+         * {@link QueueSyncer}, if it has one.
+         */
+        private void afterAppend(long endOfWrite) {
+            queue.appendNotifier().onAppend();
+            QueueSyncer syncer = queue.syncer();
+            WireStore store = this.store;
+            if (syncer != null && store != null)
+                syncer.onAppend(store.file(), endOfWrite);
+        }
+
         /**
          * Write bytes at an index, but only if the index is at the end of the chronicle. If index is after the end of the chronicle, throw an
          * IllegalStateException. If the index is before the end of the chronicle then do not change the state of the chronicle.
@@ -511,8 +919,22 @@ public class SingleChronicleQueueExcerpts {
 
             if (queue.isClosed.get())
                 throw new IllegalStateException("Queue is closed");
+            if (group != null)
+                throw new IllegalStateException("Can't write at an index while writing a group of documents");
 
-            writeLock.lock();
+            // as lockCycleToWrite, but the cycle is the index's.
+            for (; ; ) {
+                writeLock.lock();
+                try {
+                    if (absorbClaims())
+                        break;
+                } catch (StreamCorruptedException e) {
+                    writeLock.unlock();
+                    throw new IllegalStateException(e);
+                }
+                writeLock.unlock();
+                awaitClaims();
+            }
             try {
                 int cycle = queue.rollCycle().toCycle(index);
 
@@ -534,6 +956,7 @@ public class SingleChronicleQueueExcerpts {
             } finally {
                 writeLock.unlock();
             }
+            queue.appendNotifier().onAppend();
         }
 
         private void writeBytesInternal(long index, @NotNull BytesStore bytes) {
@@ -622,7 +1045,21 @@ public class SingleChronicleQueueExcerpts {
             if (this.cycle == cycle)
                 throw new AssertionError();
 
-            store.writeEOF(wire, timeoutMS());
+            try {
+                // only this cycle's writers can index its claims, and none are outstanding under the lock.
+                absorbClaims();
+            } catch (StreamCorruptedException e) {
+                Jvm.warn().on(getClass(), "Unable to index claims in cycle " + this.cycle, e);
+            }
+            if (queue.deferredIndexing()) {
+                // the indexer moves on to the new cycle, so finish this one.
+                try {
+                    store.indexPending(this, Integer.MAX_VALUE);
+                } catch (StreamCorruptedException e) {
+                    Jvm.warn().on(getClass(), "Unable to index cycle " + this.cycle, e);
+                }
+            }
+            writeEOF();
 
             int lastCycle = queue.lastCycle;
 
@@ -639,17 +1076,66 @@ public class SingleChronicleQueueExcerpts {
          * create a new cycle or add a message. Only used by tests.
          */
         void writeEndOfCycleIfRequired() {
-            if (wire != null && queue.cycle() != cycle)
-                store.writeEOF(wire, timeoutMS());
+            int cycle = queue.cycle();
+            if (wire != null && cycle != this.cycle && !keepCycle(cycle))
+                writeEOF();
+        }
+
+        /**
+         * Seal the current cycle, and record how many excerpts it has as no more can be added, if cycles are counted.
+         *
+         * @return true if this wrote the EOF
+         */
+        private boolean writeEOF() {
+            if (!store.writeEOF(wire, timeoutMS()))
+                return false;
+            CycleCounts cycleCounts = queue.cycleCounts();
+            if (cycleCounts == null)
+                return true;
+            try {
+                cycleCounts.sealed(cycle, store.lastSequenceNumber(this) + 1, wire.bytes().writePosition());
+            } catch (StreamCorruptedException e) {
+                Jvm.warn().on(getClass(), "Unable to count the excerpts in cycle " + cycle, e);
+            }
+            return true;
         }
 
         void writeIndexForPosition(long index, long position)
                 throws UnrecoverableTimeoutException, StreamCorruptedException {
 
             long sequenceNumber = queue.rollCycle().toSequenceNumber(index);
+            if (queue.deferredIndexing()) {
+                store.setLastSequenceNumber(sequenceNumber, position);
+                // bound how far moveToIndex has to scan if the indexer falls behind.
+                if (sequenceNumber - store.nextEntryToBeIndexed() >= (long) DEFERRED_INDEX_MAX_LAG * queue.indexSpacing())
+                    store.indexPending(this, Integer.MAX_VALUE);
+                return;
+            }
             store.setPositionForSequenceNumber(this, sequenceNumber, position);
         }
 
+        /**
+         * Index the excerpts appended to the latest cycle which haven't been indexed yet, for a {@link DeferredIndexer}
+         *
+         * @param maxEntries the most index entries to add
+         * @return the number of index entries added
+         */
+        int indexPending(int maxEntries) throws StreamCorruptedException {
+            int cycle = queue.lastCycle();
+            if (cycle == Integer.MIN_VALUE)
+                return 0;
+            // only take the write lock when there is something to index, or a new cycle to move to.
+            if (cycle == this.cycle && store != null && !store.hasPendingIndex())
+                return 0;
+            writeLock.lock();
+            try {
+                setCycle(cycle);
+                return store == null ? 0 : store.indexPending(this, maxEntries);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
         boolean checkIndex(long index, long position) {
             try {
                 final long seq1 = queue.rollCycle().toSequenceNumber(index + 1) - 1;
@@ -693,6 +1179,242 @@ public class SingleChronicleQueueExcerpts {
             wire.bytes().writePosition(startOfMessage);
         }
 
+        class StoreDocumentGroup implements DocumentGroup {
+            private long[] dataPositions = new long[8];
+            private int dataCount;
+            private int documents;
+            private long startHeaderNumber;
+            private long firstPosition;
+            private int firstHeader;
+            private long end;
+            private boolean rollbackOnClose;
+
+            void start(int expected, long headerNumber) {
+                if (expected > dataPositions.length)
+                    dataPositions = new long[expected];
+                dataCount = 0;
+                documents = 0;
+                startHeaderNumber = headerNumber;
+                rollbackOnClose = false;
+            }
+
+            /**
+             * Completes the header of the document just written, except for the first which is only completed
+             * on commit, so every document written after it stays hidden.
+             */
+            void documentWritten(boolean metaData) {
+                assert wire != null;
+                Bytes<?> bytes = wire.bytes();
+                long end = bytes.writePosition();
+                if (documents == 0) {
+                    firstPosition = positionOfHeader;
+                    int length = (int) (end - positionOfHeader - SPB_HEADER_SIZE);
+                    firstHeader = metaData ? length | META_DATA : length;
+                    // as updateHeader would.
+                    if (!metaData)
+                        wire.headerNumber(wire.headerNumber() + 1);
+                    ((AbstractWire) wire).forceNotInsideHeader();
+                    bytes.writeLimit(bytes.capacity());
+                } else {
+                    wire.updateHeader(positionOfHeader, metaData, 0);
+                }
+                if (!metaData) {
+                    if (dataCount == dataPositions.length)
+                        dataPositions = Arrays.copyOf(dataPositions, dataCount * 2);
+                    dataPositions[dataCount++] = positionOfHeader;
+                }
+                documents++;
+                this.end = end;
+            }
+
+            @Override
+            public void rollbackOnClose() {
+                rollbackOnClose = true;
+            }
+
+            @Override
+            public int documents() {
+                return documents;
+            }
+
+            @Override
+            public void close() {
+                if (group != this) {
+                    LOG.warn("Already Closed, close was called twice.");
+                    return;
+                }
+                boolean committed = false;
+                try {
+                    final boolean interrupted = checkInterrupts && Thread.currentThread().isInterrupted();
+                    if (interrupted)
+                        LOG.warn("Thread is interrupted. Can't guarantee complete group of messages, so not committing");
+                    if (documents > 0) {
+                        if (rollbackOnClose || interrupted) {
+                            rollback();
+                        } else {
+                            commit();
+                            committed = true;
+                        }
+                    }
+                } finally {
+                    group = null;
+                    try {
+                        writeLock.unlock();
+                    } catch (Exception ex) {
+                        Jvm.warn().on(getClass(), "Exception while unlocking: ", ex);
+                    }
+                }
+                if (committed)
+                    afterAppend(endOfLastWrite);
+            }
+
+            private void commit() {
+                assert wire != null;
+                // publishes every document in the group at once.
+                wire.bytes().writeOrderedInt(firstPosition, firstHeader);
+                endOfLastWrite = end;
+                lastCycle = cycle;
+                try {
+                    for (int i = 0; i < dataCount; i++) {
+                        long position = dataPositions[i];
+                        lastIndex(startHeaderNumber + 1 + i);
+                        store.writePosition(position);
+                        writeIndexForPosition(lastIndex, position);
+                        lastPosition = position;
+                    }
+                } catch (StreamCorruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            private void rollback() {
+                assert wire != null;
+                Bytes<?> bytes = wire.bytes();
+                // zero out all contents, the first header is still not complete so nothing has been read.
+                for (long i = firstPosition; i < end; i++)
+                    bytes.writeByte(i, (byte) 0);
+                wire.headerNumber(startHeaderNumber);
+                position0(lastPosition, lastPosition);
+                ((AbstractWire) wire).forceNotInsideHeader();
+            }
+        }
+
+        /**
+         * An excerpt claimed with {@link #claimingDocument(int)}, written without the write lock.
+         */
+        class ClaimContext implements DocumentContext {
+            boolean isClosed = true;
+            private boolean metaData;
+            private boolean rollbackOnClose;
+            private long position;
+            private int header;
+            private long end;
+
+            void open(long position, int header) {
+                assert wire != null;
+                this.position = position;
+                this.header = header;
+                this.end = position + SPB_HEADER_SIZE + lengthOf(header);
+                Bytes<?> bytes = wire.bytes();
+                bytes.writePosition(position + SPB_HEADER_SIZE);
+                bytes.writeLimit(end);
+                isClosed = false;
+                metaData = false;
+                rollbackOnClose = false;
+            }
+
+            @Override
+            public int sourceId() {
+                return StoreAppender.this.sourceId();
+            }
+
+            @Override
+            public boolean isPresent() {
+                return false;
+            }
+
+            @Override
+            public Wire wire() {
+                return wire;
+            }
+
+            @Override
+            public boolean isMetaData() {
+                return metaData;
+            }
+
+            @Override
+            public void metaData(boolean metaData) {
+                this.metaData = metaData;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return isClosed;
+            }
+
+            /**
+             * The claimed space becomes padding when closed
+             */
+            @Override
+            public void rollbackOnClose() {
+                this.rollbackOnClose = true;
+            }
+
+            /**
+             * Commits the excerpt. Any unused space after it becomes padding, unless there is less than a header's worth.
+             *
+             * @throws IllegalStateException if the claim wasn't closed within the timeout, so was discarded
+             */
+            @Override
+            public void close() {
+                if (isClosed) {
+                    LOG.warn("Already Closed, close was called twice.");
+                    return;
+                }
+                isClosed = true;
+                assert wire != null;
+                Bytes<?> bytes = wire.bytes();
+                try {
+                    final boolean interrupted = checkInterrupts && Thread.currentThread().isInterrupted();
+                    if (interrupted)
+                        LOG.warn("Thread is interrupted. Can't guarantee complete message, so not committing");
+                    if (rollbackOnClose || interrupted) {
+                        // fails if it has already been discarded as padding.
+                        bytes.compareAndSwapInt(position, header, META_DATA | lengthOf(header));
+                        return;
+                    }
+
+                    long dataEnd = bytes.writePosition();
+                    if (end - dataEnd >= SPB_HEADER_SIZE)
+                        bytes.writeOrderedInt(dataEnd, META_DATA | (int) (end - dataEnd - SPB_HEADER_SIZE));
+                    else
+                        dataEnd = end;
+                    int length = (int) (dataEnd - position - SPB_HEADER_SIZE);
+                    // publishes the excerpt, once those claimed before it are complete.
+                    if (!bytes.compareAndSwapInt(position, header, metaData ? META_DATA | length : length))
+                        throw new IllegalStateException("The claim at " + position + " in cycle " + cycle +
+                                " was discarded as it wasn't closed within " + timeoutMS() + " ms");
+                } finally {
+                    bytes.writeLimit(bytes.capacity());
+                }
+                afterAppend(end);
+            }
+
+            /**
+             * @return Long.MIN_VALUE as the index isn't known until the excerpts claimed before it are committed
+             */
+            @Override
+            public long index() {
+                return Long.MIN_VALUE;
+            }
+
+            @Override
+            public boolean isNotComplete() {
+                throw new UnsupportedOperationException();
+            }
+        }
+
         class StoreAppenderContext implements DocumentContext {
 
             boolean isClosed;
@@ -766,7 +1488,13 @@ public class SingleChronicleQueueExcerpts {
                         else if (padToCacheAlign)
                             wire.padToCacheAlign();
 
+                        if (group != null) {
+                            group.documentWritten(metaData);
+                            return;
+                        }
+
                         try {
+                            endOfLastWrite = wire.bytes().writePosition();
                             wire.updateHeader(positionOfHeader, metaData, 0);
                         } catch (IllegalStateException e) {
                             if (queue.isClosed())
@@ -794,13 +1522,14 @@ public class SingleChronicleQueueExcerpts {
                 } catch (@NotNull StreamCorruptedException | UnrecoverableTimeoutException e) {
                     throw new IllegalStateException(e);
                 } finally {
-                    if (unlock)
+                    if (unlock && group == null)
                         try {
                             writeLock.unlock();
                         } catch (Exception ex) {
                             Jvm.warn().on(getClass(), "Exception while unlocking: ", ex);
                         }
                 }
+                afterAppend(endOfLastWrite);
             }
 
             private void doRollback(boolean interrupted) {
@@ -885,6 +1614,7 @@ public class SingleChronicleQueueExcerpts {
         private final StoreTailerContext context = new StoreTailerContext();
         private final ClosableResources<?> closableResources;
         private final MoveToState moveToState = new MoveToState();
+        private final BackwardBlock backwardBlock = new BackwardBlock();
         long index; // index of the next read.
         @Nullable
         WireStore store;
@@ -897,7 +1627,16 @@ public class SingleChronicleQueueExcerpts {
         private long indexAtCreation = Long.MIN_VALUE;
         private boolean readingDocumentFound = false;
         private long address = NoBytesStore.NO_PAGE;
+        private final BooleanSupplier mayHaveNext = this::mayHaveNext;
         private boolean striding = false;
+        @Nullable
+        private TailerReadAhead readAhead;
+        // a named tailer keeps its position here and only writes indexValue every commitEveryMessages moves
+        private final boolean batchedCommit;
+        private final int commitEveryMessages;
+        private final long commitIntervalNanos;
+        private int uncommitted;
+        private long lastCommitNanos;
 
         public StoreTailer(@NotNull final SingleChronicleQueue queue) {
             this(queue, null);
@@ -906,6 +1645,10 @@ public class SingleChronicleQueueExcerpts {
         public StoreTailer(@NotNull final SingleChronicleQueue queue, LongValue indexValue) {
             this.queue = queue;
             this.indexValue = indexValue;
+            this.commitEveryMessages = queue.tailerCommitEveryMessages();
+            this.commitIntervalNanos = queue.tailerCommitIntervalNanos();
+            this.batchedCommit = indexValue != null && commitEveryMessages > 1;
+            this.lastCommitNanos = System.nanoTime();
             this.setCycle(Integer.MIN_VALUE);
             this.index = 0;
             queue.addCloseListener(this, StoreTailer::close);
@@ -981,6 +1724,7 @@ public class SingleChronicleQueueExcerpts {
         }
 
         private void close() {
+            commit();
             // the wire ref count will be released here by setting it to null
             context.wire(null);
             Wire w0 = wireForIndex;
@@ -1055,6 +1799,8 @@ public class SingleChronicleQueueExcerpts {
                     context.setStart(bytes.readPosition() - 4);
                     readingDocumentFound = true;
                     address = bytes.addressForRead(bytes.readPosition(), 4);
+                    if (readAhead != null)
+                        readAhead.onRead(cycle, bytes.readPosition());
                     Jvm.optionalSafepoint();
                     return context;
                 }
@@ -1070,6 +1816,9 @@ public class SingleChronicleQueueExcerpts {
                     // since we can't find an entry at current index, indicate that we're at the end of a cycle
                     state = TailerState.END_OF_CYCLE;
                 }
+                if (batchedCommit)
+                    // nothing to read, so there won't be a cheaper time to write the position
+                    commit();
                 if (context.wire() == null) {
                     address = NoBytesStore.NO_PAGE;
                 } else {
@@ -1093,6 +1842,64 @@ public class SingleChronicleQueueExcerpts {
             return net.openhft.chronicle.wire.NoDocumentContext.INSTANCE;
         }
 
+        /**
+         * Reads the excerpts in the current cycle without going through the state machine. It is only used at the
+         * end of the cycle, when there is nothing to read yet, or when not reading forward.
+         */
+        @Override
+        public int readBatch(@NotNull ExcerptBatchHandler handler, int maxMessages) {
+            if (queue.isClosed.get())
+                throw new IllegalStateException("Queue is closed");
+            int count = 0;
+            for (; ; ) {
+                if (state == FOUND_CYCLE && direction == FORWARD && !readAfterReplicaAcknowledged && wire() != null)
+                    count += readInCycle(handler, maxMessages - count);
+                if (count >= maxMessages)
+                    return count;
+                try (DocumentContext dc = readingDocument()) {
+                    if (!dc.isPresent())
+                        return count;
+                    handler.onExcerpt(dc.index(), dc.wire().bytes());
+                }
+                count++;
+            }
+        }
+
+        private int readInCycle(@NotNull ExcerptBatchHandler handler, int maxMessages) {
+            Bytes<?> bytes = wire().bytes();
+            long pos = bytes.readPosition();
+            long index = index();
+            int count = 0;
+            try {
+                while (count < maxMessages) {
+                    int header = bytes.readVolatileInt(pos);
+                    // the end of the cycle is also not complete.
+                    if (header == 0 || isNotComplete(header))
+                        break;
+                    long start = pos + SPB_HEADER_SIZE;
+                    pos = start + lengthOf(header);
+                    if (isData(header)) {
+                        bytes.readLimit(pos);
+                        bytes.readPosition(start);
+                        // consumed even if the handler throws, as it would be closing a document.
+                        count++;
+                        handler.onExcerpt(index++, bytes);
+                    }
+                }
+            } finally {
+                bytes.readLimit(bytes.capacity());
+                bytes.readPosition(pos);
+                if (count > 0) {
+                    index0(index);
+                    readingDocumentFound = true;
+                }
+                address = bytes.addressForRead(pos, 4);
+                if (readAhead != null)
+                    readAhead.onRead(cycle, pos);
+            }
+            return count;
+        }
+
         @SuppressWarnings("restriction")
         @Override
         public boolean peekDocument() {
@@ -1273,7 +2080,7 @@ public class SingleChronicleQueueExcerpts {
 
         private boolean inACycleNotForward() {
             Jvm.optionalSafepoint();
-            if (!moveToIndexInternal(index())) {
+            if (!(direction == BACKWARD ? moveToIndexBackward(index()) : moveToIndexInternal(index()))) {
                 try {
                     Jvm.optionalSafepoint();
                     // after toEnd() call, index is past the end of the queue
@@ -1378,7 +2185,17 @@ public class SingleChronicleQueueExcerpts {
          */
         @Override
         public long index() {
-            return indexValue == null ? this.index : indexValue.getValue();
+            return indexValue == null || batchedCommit ? this.index : indexValue.getValue();
+        }
+
+        @Override
+        public void commit() {
+            if (uncommitted == 0)
+                return;
+            indexValue.setOrderedValue(index);
+            uncommitted = 0;
+            if (commitIntervalNanos > 0)
+                lastCommitNanos = System.nanoTime();
         }
 
         @Override
@@ -1405,6 +2222,73 @@ public class SingleChronicleQueueExcerpts {
             return moveToIndexInternal(index);
         }
 
+        /**
+         * Searches from the cycle the time falls in, as excerpts are written to the cycle for the time they were written.
+         */
+        @Override
+        public boolean moveToTime(long epochNanos) {
+            int firstCycle = queue.firstCycle();
+            if (firstCycle == Integer.MAX_VALUE) {
+                toEnd();
+                return false;
+            }
+            int cycle = Math.max(firstCycle, queue.cycle(() -> epochNanos / 1_000_000L));
+            try {
+                // a cycle kept until it was full holds excerpts written after its own time, see RollCycle#maxCycleBytes()
+                NavigableSet<Long> cycles = queue.listCyclesBetween(firstCycle, Math.min(cycle, queue.lastCycle()));
+                if (!cycles.isEmpty())
+                    cycle = cycles.last().intValue();
+                while (cycle <= queue.lastCycle()) {
+                    if (cycle(cycle)) {
+                        long sequenceNumber = this.store.sequenceForTime(this, epochNanos);
+                        if (sequenceNumber >= 0)
+                            return moveToIndex(queue.rollCycle().toIndex(cycle, sequenceNumber));
+                    }
+                    cycle = queue.nextCycle(cycle, TailerDirection.FORWARD);
+                    if (cycle == -1)
+                        break;
+                }
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+            toEnd();
+            return false;
+        }
+
+        @Override
+        public boolean awaitNext(long timeout, @NotNull TimeUnit unit) {
+            return queue.appendNotifier().await(mayHaveNext, unit.toNanos(timeout));
+        }
+
+        /**
+         * @return true if readingDocument() could find something, without reading it
+         */
+        private boolean mayHaveNext() {
+            if (direction != FORWARD)
+                return true;
+            if (wire() == null || address == NoBytesStore.NO_PAGE)
+                // not in a cycle yet, or the cycle hasn't been created.
+                return queue.firstCycle() != Integer.MAX_VALUE && queue.lastCycle() >= cycle;
+            return peekDocument();
+        }
+
+        @Override
+        public boolean moveToKey(long key) {
+            return moveToKey(key, wire -> true);
+        }
+
+        @Override
+        public boolean moveToKey(long key, @NotNull Predicate<Wire> matches) {
+            KeyIndexes keyIndexes = queue.keyIndexes();
+            if (keyIndexes == null)
+                throw new UnsupportedOperationException("The queue was built without a KeyExtractor");
+            long index = keyIndexes.indexOf(key, matches);
+            if (index != -1)
+                return moveToIndex(index);
+            toEnd();
+            return false;
+        }
+
         ScanResult moveToIndexResult(long index) {
             final int cycle = queue.rollCycle().toCycle(index);
             final long sequenceNumber = queue.rollCycle().toSequenceNumber(index);
@@ -1470,6 +2354,66 @@ public class SingleChronicleQueueExcerpts {
             return scanResult == FOUND;
         }
 
+        /**
+         * Reading backward, each excerpt would otherwise be found by a linear scan from the index entry before it.
+         * Instead the positions of the excerpts from that index entry are recorded in one scan, and reused for
+         * each excerpt of the block, so a backward read costs about the same as a forward one.
+         */
+        private boolean moveToIndexBackward(final long index) {
+            RollCycle rollCycle = queue.rollCycle();
+            int cycle = rollCycle.toCycle(index);
+            long seq = rollCycle.toSequenceNumber(index);
+            if ((int) seq < 0 || cycle != this.cycle || state != FOUND_CYCLE || store == null)
+                return moveToIndexInternal(index);
+
+            long position = backwardBlock.positionOf(store, cycle, seq);
+            if (position < 0) {
+                if (!scanBackwardBlock(cycle, seq))
+                    return moveToIndexInternal(index);
+                position = backwardBlock.positionOf(store, cycle, seq);
+            }
+            index(index);
+            wire().bytes().readPositionUnlimited(position);
+            return true;
+        }
+
+        /**
+         * @return the index spacing of the cycle this tailer is on, as each cycle can have its own
+         */
+        int indexSpacing() {
+            return store instanceof SingleChronicleQueueStore
+                    ? ((SingleChronicleQueueStore) store).rollIndexSpacing()
+                    : queue.indexSpacing();
+        }
+
+        private boolean scanBackwardBlock(final int cycle, final long seq) {
+            int spacing = indexSpacing();
+            long first = seq - seq % spacing;
+            if (!moveToIndexInternal(queue.rollCycle().toIndex(cycle, first)))
+                return false;
+            Wire wire = wire();
+            Bytes<?> bytes = wire.bytes();
+            int count = (int) (seq - first) + 1;
+            long[] positions = backwardBlock.positions(count);
+            try {
+                for (int i = 0; ; i++) {
+                    positions[i] = bytes.readPosition();
+                    if (i == count - 1)
+                        break;
+                    int header = bytes.readVolatileInt();
+                    if (Wires.isNotComplete(header))
+                        return false;
+                    bytes.readSkip(Wires.lengthOf(header));
+                    if (!wire.readDataHeader())
+                        return false;
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+            backwardBlock.set(store, cycle, first, count);
+            return true;
+        }
+
         /**
          * gives approximately the last index, can not be relied on as the last index may have changed just after this was called. For this reason,
          * this code is not in queue as it should only be an internal method
@@ -1776,11 +2720,21 @@ public class SingleChronicleQueueExcerpts {
             return true;
         }
 
+        void readAhead(@Nullable TailerReadAhead readAhead) {
+            this.readAhead = readAhead;
+        }
+
         void index0(long index) {
-            if (indexValue == null)
+            if (indexValue == null) {
                 this.index = index;
-            else
+            } else if (batchedCommit) {
+                this.index = index;
+                if (++uncommitted >= commitEveryMessages
+                        || (commitIntervalNanos > 0 && System.nanoTime() - lastCommitNanos >= commitIntervalNanos))
+                    commit();
+            } else {
                 indexValue.setValue(index);
+            }
         }
 
         // DON'T INLINE THIS METHOD, as it's used by enterprise chronicle queue
@@ -1929,6 +2883,41 @@ public class SingleChronicleQueueExcerpts {
             return store;
         }
 
+        /**
+         * The positions of the excerpts of one block of a cycle, read backward from the last one.
+         */
+        private static final class BackwardBlock {
+            @Nullable
+            private WireStore store;
+            private int cycle;
+            private long firstSeq;
+            private int count;
+            private long[] positions = new long[0];
+
+            long[] positions(int count) {
+                store = null;
+                if (positions.length < count)
+                    positions = new long[count];
+                return positions;
+            }
+
+            void set(@NotNull WireStore store, int cycle, long firstSeq, int count) {
+                this.store = store;
+                this.cycle = cycle;
+                this.firstSeq = firstSeq;
+                this.count = count;
+            }
+
+            /**
+             * @return the position of the excerpt's header, or -1 if it isn't in this block
+             */
+            long positionOf(@NotNull WireStore store, int cycle, long seq) {
+                if (store != this.store || cycle != this.cycle || seq < firstSeq || seq - firstSeq >= count)
+                    return -1;
+                return positions[(int) (seq - firstSeq)];
+            }
+        }
+
         private static final class MoveToState {
             private long lastMovedToIndex = Long.MIN_VALUE;
             private TailerDirection directionAtLastMoveTo = TailerDirection.NONE;
@@ -332,6 +332,39 @@ public class SingleChronicleQueueStore implements WireStore {
 
     }
 
+    @Override
+    public void setLastSequenceNumber(long sequenceNumber, long position) {
+        sequence.setSequence(sequenceNumber, position);
+    }
+
+    @Override
+    public long nextEntryToBeIndexed() {
+        return indexing.nextEntryToBeIndexed();
+    }
+
+    /**
+     * @return the sequence number of the last excerpt without scanning, -1 if there are none, or {@link Long#MIN_VALUE}
+     * if it isn't known
+     */
+    long knownLastSequenceNumber() {
+        return indexing.knownLastSequenceNumber();
+    }
+
+    @Override
+    public boolean hasPendingIndex() {
+        return indexing.hasPending();
+    }
+
+    @Override
+    public int indexPending(@NotNull ExcerptContext ec, int maxEntries) throws StreamCorruptedException {
+        return indexing.indexPending(ec, maxEntries);
+    }
+
+    @Override
+    public long sequenceForTime(@NotNull ExcerptContext ec, long epochNanos) {
+        return indexing.sequenceForTime(ec, epochNanos);
+    }
+
     @Override
     public ScanResult linearScanTo(final long index, final long knownIndex, final ExcerptContext ec, final long knownAddress) {
         return indexing.linearScanTo(index, knownIndex, ec, knownAddress);
@@ -379,6 +412,13 @@ public class SingleChronicleQueueStore implements WireStore {
         return indexing.indexSpacing();
     }
 
+    /**
+     * Allow another thread to move the write position, once the last has finished with this store
+     */
+    void clearAccessThread() {
+        lastAccessedThread = null;
+    }
+
     private synchronized boolean singleThreadedAccess() {
         if (lastAccessedThread == null) {
             lastAccessedThread = Thread.currentThread();
@@ -35,7 +35,11 @@ public class TableStoreWriteLock extends AbstractTSQueueLock implements WriteLoc
     private final long timeout;
 
     public TableStoreWriteLock(final TableStore<?> tableStore, Supplier<TimingPauser> pauser, Long timeoutMs) {
-        super(LOCK_KEY, tableStore, pauser);
+        this(tableStore, pauser, timeoutMs, LOCK_KEY);
+    }
+
+    TableStoreWriteLock(final TableStore<?> tableStore, Supplier<TimingPauser> pauser, Long timeoutMs, final String lockKey) {
+        super(lockKey, tableStore, pauser);
         timeout = timeoutMs;
     }
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2018 Chronicle Software
+ *
+ * http://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.MappedBytes;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.impl.WireStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+
+/**
+ * A class designed to be called from a long-lived thread, to read ahead of a tailer catching up on history.
+ * <p>
+ * Upon invocation of the {@code execute()} method, this object will touch the pages of the store file the tailer is
+ * reading, ahead of the tailer, so the tailer doesn't wait for a page fault every page. Like the {@link Pretoucher},
+ * how far ahead depends on how far the tailer moved since the last call, up to {@code maxReadAhead} bytes.
+ * <p>
+ * Pages are only read, never written, so the pages the tailer has finished with are clean and cheap for the OS to drop.
+ * <p>
+ * Resources held by this object will be released when the underlying queue is closed, or this is closed.
+ */
+public final class TailerReadAhead implements Closeable {
+    static final long DEFAULT_MAX_READ_AHEAD = Long.getLong("chronicle.queue.readAhead.maxBytes", 64L << 20);
+    private static final long MIN_READ_AHEAD = 256 << 10;
+
+    private final SingleChronicleQueue queue;
+    private final SingleChronicleQueueExcerpts.StoreTailer tailer;
+    private final long maxReadAhead;
+    private final int pageSize = OS.pageSize();
+
+    // written by the tailer's thread
+    private volatile int tailerCycle = Integer.MIN_VALUE;
+    private volatile long tailerPosition;
+    private long nextPublish;
+
+    // used by the thread calling execute()
+    private int cycle = Integer.MIN_VALUE;
+    private WireStore store;
+    private MappedBytes bytes;
+    private long lastPos;
+    private long lastTouchedPage;
+    private long averageMove;
+    private long touched;
+
+    public TailerReadAhead(@NotNull ExcerptTailer tailer) {
+        this(tailer, DEFAULT_MAX_READ_AHEAD);
+    }
+
+    /**
+     * @param tailer       the tailer to read ahead of, it must be from a {@link SingleChronicleQueue}
+     * @param maxReadAhead the furthest ahead of the tailer to read
+     */
+    public TailerReadAhead(@NotNull ExcerptTailer tailer, long maxReadAhead) {
+        if (!(tailer instanceof SingleChronicleQueueExcerpts.StoreTailer))
+            throw new IllegalArgumentException("Can only read ahead of a SingleChronicleQueue tailer");
+        if (maxReadAhead < MIN_READ_AHEAD)
+            throw new IllegalArgumentException("maxReadAhead must be at least " + MIN_READ_AHEAD);
+        this.tailer = (SingleChronicleQueueExcerpts.StoreTailer) tailer;
+        this.queue = (SingleChronicleQueue) tailer.queue();
+        this.maxReadAhead = maxReadAhead;
+        queue.addCloseListener(this, TailerReadAhead::releaseResources);
+        this.tailer.readAhead(this);
+    }
+
+    /**
+     * Called by the tailer as it reads. Only publishes the position when it moves to another page.
+     */
+    void onRead(int cycle, long position) {
+        if (cycle == tailerCycle && position < nextPublish && position >= nextPublish - pageSize)
+            return;
+        nextPublish = position - position % pageSize + pageSize;
+        tailerPosition = position;
+        tailerCycle = cycle;
+    }
+
+    public void execute() throws InvalidEventHandlerException {
+        if (queue.isClosed())
+            throw new InvalidEventHandlerException("Queue closed");
+        int cycle = tailerCycle;
+        if (cycle == Integer.MIN_VALUE)
+            return;
+        long pos = tailerPosition;
+        try {
+            if (cycle != this.cycle && !acquire(cycle, pos))
+                return;
+
+            long moved = pos - lastPos;
+            if (moved < 0) {
+                // the tailer moved back
+                lastTouchedPage = pos - pos % pageSize;
+                moved = 0;
+            }
+            averageMove = moved / 4 + averageMove * 3 / 4;
+            long readAhead = Math.min(maxReadAhead, Math.max(MIN_READ_AHEAD, averageMove * 4)); // for the next 4 ticks.
+            // the appender's pretoucher looks after pages beyond the last excerpt.
+            long end = Math.min(pos + readAhead, store.writePosition());
+            if (lastTouchedPage < pos - pos % pageSize)
+                lastTouchedPage = pos - pos % pageSize;
+
+            Thread thread = Thread.currentThread();
+            for (; lastTouchedPage < end; lastTouchedPage += pageSize) {
+                if (thread.isInterrupted())
+                    break;
+                touched += bytes.readVolatileLong(lastTouchedPage);
+            }
+            lastPos = pos;
+        } catch (IllegalStateException e) {
+            if (queue.isClosed())
+                throw new InvalidEventHandlerException(e);
+            Jvm.warn().on(getClass(), e);
+        }
+    }
+
+    // visible for testing
+    long lastTouchedPage() {
+        return lastTouchedPage;
+    }
+
+    private boolean acquire(int cycle, long pos) {
+        releaseResources();
+        WireStore store = queue.storeForCycle(cycle, queue.epoch(), false);
+        if (store == null)
+            return false;
+        this.store = store;
+        bytes = store.bytes();
+        bytes.readLimit(bytes.capacity());
+        this.cycle = cycle;
+        lastPos = pos;
+        lastTouchedPage = pos - pos % pageSize;
+        averageMove = pageSize;
+        return true;
+    }
+
+    private void releaseResources() {
+        cycle = Integer.MIN_VALUE;
+        if (store != null) {
+            queue.release(store);
+            store = null;
+        }
+        if (bytes != null) {
+            bytes.close();
+            bytes = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        tailer.readAhead(null);
+        releaseResources();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RollCycleBuilderTest {
+    @Test
+    public void formatIsTheCoarsestWhichNamesEveryCycle() {
+        assertEquals("yyyyMMdd-HHmmss", RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).build().format());
+        assertEquals("yyyyMMdd-HHmmss", RollCycleBuilder.rollEvery(90, TimeUnit.SECONDS).build().format());
+        assertEquals("yyyyMMdd-HHmm", RollCycleBuilder.rollEvery(15, TimeUnit.MINUTES).build().format());
+        assertEquals("yyyyMMdd-HH", RollCycleBuilder.rollEvery(6, TimeUnit.HOURS).build().format());
+        assertEquals("yyyyMMdd", RollCycleBuilder.rollEvery(1, TimeUnit.DAYS).build().format());
+        assertEquals("yyyyMMdd-HH", RollCycleBuilder.rollEvery(2, TimeUnit.DAYS).build().format());
+        assertEquals("yyyyMMdd'T'HHmmss", RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).format("yyyyMMdd'T'HHmmss").build().format());
+        assertEquals("yyyyMMdd-HHmm", RollCycleBuilder.rollEvery(2, TimeUnit.HOURS).format("yyyyMMdd-HHmm").build().format());
+    }
+
+    @Test
+    public void currentCycleAndIndex() {
+        CustomRollCycle rollCycle = RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).build();
+        assertEquals(5_000, rollCycle.length());
+        assertEquals(32, rollCycle.cycleShift());
+
+        SetTimeProvider time = new SetTimeProvider();
+        time.currentTimeMillis(1_567_498_753_000L);
+        int cycle = rollCycle.current(time, 0);
+        assertEquals(1_567_498_753_000L / 5_000, cycle);
+        time.advanceMillis(4_999);
+        assertEquals(cycle + 1, rollCycle.current(time, 0));
+
+        long index = rollCycle.toIndex(cycle, 123);
+        assertEquals(cycle, rollCycle.toCycle(index));
+        assertEquals(123, rollCycle.toSequenceNumber(index));
+    }
+
+    @Test
+    public void indexCountIsComputedFromMaxCycleMessages() {
+        CustomRollCycle rollCycle = RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS)
+                .maxCycleMessages(1_000_000)
+                .build();
+        assertEquals(256, rollCycle.defaultIndexCount());
+        assertEquals(16, rollCycle.defaultIndexSpacing());
+        assertEquals(1_000_000, rollCycle.maxCycleMessages());
+        assertEquals(Long.MAX_VALUE, rollCycle.maxCycleBytes());
+
+        // a longer cycle leaves room for more sequence bits
+        CustomRollCycle large = RollCycleBuilder.rollEvery(1, TimeUnit.HOURS)
+                .indexSpacing(64)
+                .maxCycleMessages(1L << 40)
+                .build();
+        assertEquals(1 << 17, large.defaultIndexCount());
+        assertEquals(40, large.cycleShift());
+        long index = large.toIndex(1_000_000, (1L << 40) - 1);
+        assertEquals(1_000_000, large.toCycle(index));
+        assertEquals((1L << 40) - 1, large.toSequenceNumber(index));
+
+        // time based roll cycles don't limit the size of a cycle
+        assertEquals(Long.MAX_VALUE, RollCycles.DAILY.maxCycleMessages());
+        assertEquals(Long.MAX_VALUE, RollCycles.DAILY.maxCycleBytes());
+    }
+
+    @Test
+    public void invalidRollCycles() {
+        assertInvalid(() -> RollCycleBuilder.rollEvery(1500, TimeUnit.MILLISECONDS));
+        assertInvalid(() -> RollCycleBuilder.rollEvery(0, TimeUnit.SECONDS));
+        assertInvalid(() -> RollCycleBuilder.rollEvery(30, TimeUnit.DAYS));
+        // too small an index
+        assertInvalid(() -> RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS).indexCount(8).maxCycleMessages(1_000_000).build());
+        // too few bits left for second long cycles
+        assertInvalid(() -> RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS).maxCycleMessages(1L << 40).build());
+        assertInvalid(() -> RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS).maxCycleBytes(0));
+        // formats which give cycles the same name
+        assertInvalid(() -> RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).format("yyyyMMdd-HHmm").build());
+        assertInvalid(() -> RollCycleBuilder.rollEvery(90, TimeUnit.SECONDS).format("yyyyMMdd-HHmm").build());
+        assertInvalid(() -> RollCycleBuilder.rollEvery(2, TimeUnit.DAYS).format("yyyyMMdd").build());
+        assertInvalid(() -> RollCycleBuilder.rollEvery(1, TimeUnit.HOURS).format("yyyyMMdd'-HHmm'").build());
+    }
+
+    private static void assertInvalid(Runnable runnable) {
+        try {
+            runnable.run();
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.bench;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IOTools;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.TailerDirection;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueue;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading small excerpts forward with reading them backward from the end, as done to show the last N excerpts
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackwardReadBenchmark {
+    private static final int MESSAGES = 1_000_000;
+    private static final int MESSAGE_SIZE = 50;
+
+    private String path;
+    private SingleChronicleQueue queue;
+    private ExcerptTailer tailer;
+    private long sum;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BackwardReadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        path = OS.TARGET + "/backwardReadBenchmark-" + System.nanoTime();
+        queue = SingleChronicleQueueBuilder.binary(path).build();
+        ExcerptAppender appender = queue.acquireAppender();
+        Bytes<?> bytes = Bytes.allocateElasticDirect(MESSAGE_SIZE);
+        for (int i = 0; i < MESSAGES; i++) {
+            bytes.clear();
+            bytes.writeLong(i);
+            bytes.writeSkip(MESSAGE_SIZE - 8);
+            appender.writeBytes(bytes);
+        }
+        bytes.release();
+        tailer = queue.createTailer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        queue.close();
+        IOTools.deleteDirWithFiles(path, 2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long forward() {
+        tailer.direction(TailerDirection.FORWARD).toStart();
+        return readAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long backward() {
+        tailer.direction(TailerDirection.BACKWARD).toEnd();
+        return readAll();
+    }
+
+    private long readAll() {
+        for (; ; ) {
+            try (DocumentContext dc = tailer.readingDocument()) {
+                if (!dc.isPresent())
+                    return sum;
+                Bytes<?> bytes = dc.wire().bytes();
+                sum += bytes.readLong(bytes.readPosition());
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.bench;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IOTools;
+import net.openhft.chronicle.core.util.Histogram;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueue;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import net.openhft.chronicle.wire.DocumentContext;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Measures how append throughput scales from 1 to 16 writing threads sharing one queue,
+ * with and without multiWriter.
+ */
+public class ContendedWriterScalingMain {
+    static final int[] writers = {1, 2, 4, 8, 16};
+    static final int runMs = Integer.getInteger("runMs", 5_000);
+    static final String path = System.getProperty("path", OS.TMP);
+
+    public static void main(String[] args) throws InterruptedException {
+        for (boolean multiWriter : new boolean[]{false, true})
+            for (int w : writers)
+                run(w, multiWriter);
+    }
+
+    static void run(int writers, boolean multiWriter) throws InterruptedException {
+        String base = path + "/delete-" + System.nanoTime() + ".me";
+        try (SingleChronicleQueue queue = SingleChronicleQueueBuilder
+                .binary(base)
+                .testBlockSize()
+                .multiWriter(multiWriter)
+                .build()) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder written = new LongAdder();
+            Histogram[] histos = new Histogram[writers];
+            Thread[] threads = new Thread[writers];
+            for (int t = 0; t < writers; t++) {
+                Histogram histo = histos[t] = new Histogram();
+                threads[t] = new Thread(() -> {
+                    ExcerptAppender appender = queue.acquireAppender();
+                    while (running.get()) {
+                        long start = System.nanoTime();
+                        try (DocumentContext dc = appender.writingDocument()) {
+                            dc.wire().bytes().writeLong(start).writeLong(start).writeLong(start);
+                        }
+                        histo.sampleNanos(System.nanoTime() - start);
+                        written.increment();
+                    }
+                }, "writer-" + t);
+                threads[t].start();
+            }
+
+            Jvm.pause(runMs);
+            running.set(false);
+            for (Thread thread : threads)
+                thread.join();
+
+            System.out.printf("%s writers=%d throughput=%,d msg/s first writer latency=%s%n",
+                    multiWriter ? "multiWriter" : "sharedLock", writers,
+                    written.sum() * 1000 / runMs, histos[0].toMicrosFormat());
+        }
+        IOTools.deleteDirWithFiles(base, 2);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.bench;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IOTools;
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.core.util.Histogram;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueue;
+import net.openhft.chronicle.queue.impl.single.SingleChronicleQueueBuilder;
+import net.openhft.chronicle.wire.DocumentContext;
+
+/*
+ * Measures the latency of the first write after each roll, with and without the next cycle pre-created.
+ */
+public class RollLatencyMain {
+    static final int rolls = Integer.getInteger("rolls", 100);
+    static final int blockSize = Integer.getInteger("blockSize", 64 << 20);
+    static final String path = System.getProperty("path", OS.TMP);
+
+    public static void main(String[] args) {
+        for (int run = 0; run < 3; run++) {
+            System.out.println("on roll:     " + run(false).toMicrosFormat());
+            System.out.println("pre-created: " + run(true).toMicrosFormat());
+        }
+    }
+
+    static Histogram run(boolean precreate) {
+        String base = path + "/delete-" + System.nanoTime() + ".me";
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(System.currentTimeMillis() / 1000 * 1000);
+        Histogram histogram = new Histogram();
+        SingleChronicleQueueBuilder builder = SingleChronicleQueueBuilder.binary(base)
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .blockSize(blockSize)
+                .timeProvider(timeProvider);
+        if (precreate)
+            builder.precreateNextCycle(500);
+
+        try (SingleChronicleQueue q = builder.build()) {
+            ExcerptAppender appender = q.acquireAppender();
+            write(appender, 0);
+            for (int i = 1; i <= rolls; i++) {
+                // leave the event loop time to pre-create the next cycle.
+                timeProvider.advanceMillis(600);
+                Jvm.pause(250);
+                timeProvider.advanceMillis(400);
+
+                long start = System.nanoTime();
+                write(appender, i);
+                histogram.sampleNanos(System.nanoTime() - start);
+            }
+        }
+        IOTools.deleteDirWithFiles(base, 2);
+        return histogram;
+    }
+
+    private static void write(ExcerptAppender appender, int i) {
+        try (DocumentContext dc = appender.writingDocument()) {
+            dc.wire().bytes().writeInt(i);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.impl.WireStore;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveIndexSpacingTest {
+
+    @Test
+    public void spacingFollowsTheSizeOfExcerpts() {
+        File tmp = DirectoryUtils.tempDir("adaptiveIndexSpacing");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                // small index arrays, so the average excerpt size is mostly the excerpts
+                .indexCount(32)
+                .timeProvider(timeProvider)
+                .adaptiveIndexSpacing(1024)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            String large = new String(new char[2000]).replace('\0', 'x');
+            int[] counts = {200, 50, 10};
+            for (int c = 0; c < counts.length; c++) {
+                for (int i = 0; i < counts[c]; i++) {
+                    int n = i;
+                    String text = c == 1 ? large : "";
+                    appender.writeDocument(w -> w.write("n").int64(n).write("text").text(text));
+                }
+                timeProvider.advanceMillis(1_000);
+            }
+
+            int first = cq.firstCycle();
+            // nothing to go on for the first cycle
+            assertEquals(cq.indexSpacing(), spacing(cq, first));
+            // small excerpts
+            assertTrue(spacing(cq, first + 1) >= 8);
+            // large excerpts
+            assertEquals(1, spacing(cq, first + 2));
+
+            ExcerptTailer tailer = cq.createTailer();
+            for (int c = 0; c < counts.length; c++)
+                for (int i = counts[c] - 1; i >= 0; i -= 3) {
+                    assertTrue(tailer.moveToIndex(cq.rollCycle().toIndex(first + c, i)));
+                    try (DocumentContext dc = tailer.readingDocument()) {
+                        assertEquals(i, dc.wire().read("n").int64());
+                    }
+                }
+        }
+    }
+
+    @Test
+    public void spacingKeepsTheIndexLargeEnough() {
+        // DAILY can't go above its default without changing how the write position is encoded
+        assertEquals(64, SingleChronicleQueue.adaptiveIndexSpacing(RollCycles.DAILY, 8 << 10, 1000, 1_000));
+        assertEquals(16, SingleChronicleQueue.adaptiveIndexSpacing(RollCycles.DAILY, 8 << 10, 20, 1_000));
+        assertEquals(1, SingleChronicleQueue.adaptiveIndexSpacing(RollCycles.DAILY, 8 << 10, 0, 1_000));
+        // four times the last cycle must fit in indexCount^2 * spacing
+        assertEquals(4, SingleChronicleQueue.adaptiveIndexSpacing(RollCycles.TEST_SECONDLY, 32, 1, 1_000));
+        assertEquals(1 << 12, SingleChronicleQueue.adaptiveIndexSpacing(RollCycles.TEST_SECONDLY, 32, 5_000, 1_000));
+    }
+
+    private static int spacing(SingleChronicleQueue cq, int cycle) {
+        WireStore store = cq.storeForCycle(cycle, cq.epoch(), false);
+        try {
+            return ((SingleChronicleQueueStore) store).rollIndexSpacing();
+        } finally {
+            cq.release(store);
+        }
+    }
+}
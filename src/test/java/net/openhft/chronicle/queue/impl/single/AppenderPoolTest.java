@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class AppenderPoolTest {
+    private static final int THREADS = 16;
+    private static final int PER_THREAD = 200;
+
+    @Test
+    public void pooledAppenders() throws Exception {
+        File tmp = DirectoryUtils.tempDir("appenderPool");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .appenderPoolSize(2)
+                .build()) {
+            AppenderPool pool = cq.appenderPool();
+            assertEquals(2, pool.size());
+            Set<ExcerptAppender> used = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            writeConcurrently((t, i) -> {
+                ExcerptAppender appender = pool.acquire();
+                try {
+                    used.add(appender);
+                    appender.writeText(t + "-" + i);
+                } finally {
+                    pool.release(appender);
+                }
+            });
+            assertTrue(used.size() <= 2);
+            checkAllRead(cq);
+        }
+    }
+
+    @Test
+    public void sharedAppender() throws Exception {
+        File tmp = DirectoryUtils.tempDir("sharedAppender");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.sharedAppender();
+            assertSame(appender, cq.sharedAppender());
+            writeConcurrently((t, i) -> appender.writeText(t + "-" + i));
+            checkAllRead(cq);
+        }
+    }
+
+    private void writeConcurrently(Writer writer) throws Exception {
+        ExecutorService service = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(service.submit(() -> {
+                    for (int i = 0; i < PER_THREAD; i++)
+                        writer.write(thread, i);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private void checkAllRead(SingleChronicleQueue cq) {
+        ExcerptTailer tailer = cq.createTailer();
+        Set<String> read = new HashSet<>();
+        for (String text; (text = tailer.readText()) != null; )
+            assertTrue(text, read.add(text));
+        assertEquals(THREADS * PER_THREAD, read.size());
+    }
+
+    interface Writer {
+        void write(int thread, int i);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.queue.BufferMode;
+import net.openhft.chronicle.queue.ChronicleQueue;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AsyncAppenderTest {
+    @Test
+    public void writesAreDrainedInOrder() {
+        File tmp = DirectoryUtils.tempDir("asyncAppender");
+        AtomicLong written = new AtomicLong();
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .writeBufferMode(BufferMode.Asynchronous)
+                .bufferCapacity(64 << 10)
+                .onRingBufferStats(stats -> written.addAndGet(stats.getAndClearWriteCount()))
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            assertTrue(appender instanceof AsyncExcerptAppender);
+            for (int i = 0; i < 10_000; i++)
+                appender.writeText("test " + i);
+        }
+
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp).testBlockSize().build()) {
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 10_000; i++)
+                assertEquals("test " + i, tailer.readText());
+            assertNull(tailer.readText());
+        }
+    }
+
+    @Test
+    public void rollbackIsNotWritten() {
+        File tmp = DirectoryUtils.tempDir("asyncAppenderRollback");
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .writeBufferMode(BufferMode.Asynchronous)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("one");
+            try (DocumentContext dc = appender.writingDocument()) {
+                dc.wire().write("two").text("two");
+                dc.rollbackOnClose();
+            }
+            appender.writeText("three");
+        }
+
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp).testBlockSize().build()) {
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("one", tailer.readText());
+            assertEquals("three", tailer.readText());
+            assertNull(tailer.readText());
+        }
+    }
+
+    @Test
+    public void batchAppendFollowsEarlierWrites() {
+        File tmp = DirectoryUtils.tempDir("asyncAppenderBatch");
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .writeBufferMode(BufferMode.Asynchronous)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 100; i++)
+                appender.writeText("test " + i);
+            long count = appender.batchAppend(10, (address, maxBytes, maxMessages) -> {
+                // one excerpt of a long
+                OS.memory().writeLong(address + Integer.BYTES, 42L);
+                OS.memory().writeOrderedInt(address, Long.BYTES);
+                return (1L << 32) | (Integer.BYTES + Long.BYTES);
+            });
+            assertTrue(count > 0);
+
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 100; i++)
+                assertEquals("test " + i, tailer.readText());
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertTrue(dc.isPresent());
+                assertEquals(42L, dc.wire().bytes().readLong());
+            }
+        }
+    }
+
+    @Test
+    public void lastIndexAppendedIsPublished() {
+        File tmp = DirectoryUtils.tempDir("asyncAppenderLastIndex");
+        try (ChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .writeBufferMode(BufferMode.Asynchronous)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("one");
+            long end = System.currentTimeMillis() + 5_000;
+            long lastIndex = Long.MIN_VALUE;
+            while (lastIndex == Long.MIN_VALUE && System.currentTimeMillis() < end) {
+                try {
+                    lastIndex = appender.lastIndexAppended();
+                } catch (IllegalStateException notYet) {
+                    Jvm.pause(1);
+                }
+            }
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("one", tailer.readText());
+            assertEquals(tailer.index() - 1, lastIndex);
+        }
+    }
+}
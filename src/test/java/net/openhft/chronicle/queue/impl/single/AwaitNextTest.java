@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AwaitNextTest {
+
+    @Test
+    public void timesOutWhenNothingIsAppended() {
+        File tmp = DirectoryUtils.tempDir("awaitNextTimeout");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp).testBlockSize().build()) {
+            ExcerptTailer tailer = cq.createTailer();
+            long start = System.nanoTime();
+            assertFalse(tailer.awaitNext(50, TimeUnit.MILLISECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45));
+
+            cq.acquireAppender().writeText("hello");
+            assertTrue(tailer.awaitNext(50, TimeUnit.MILLISECONDS));
+            assertEquals("hello", tailer.readText());
+            // at the end of the cycle now
+            assertFalse(tailer.awaitNext(20, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void wakesWhenAnExcerptIsAppended() throws Exception {
+        wakesWhenAnExcerptIsAppended(true);
+    }
+
+    @Test
+    public void pollsWithoutNotifications() throws Exception {
+        wakesWhenAnExcerptIsAppended(false);
+    }
+
+    private void wakesWhenAnExcerptIsAppended(boolean notifyTailers) throws Exception {
+        File tmp = DirectoryUtils.tempDir("awaitNextWake");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .notifyTailers(notifyTailers)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("first");
+            int messages = 20;
+            BlockingQueue<String> read = new LinkedBlockingQueue<>();
+            ExecutorService service = Executors.newSingleThreadExecutor();
+            Future<?> reader = service.submit(() -> {
+                ExcerptTailer tailer = cq.createTailer();
+                while (read.size() < messages + 1) {
+                    String text = tailer.readText();
+                    if (text != null)
+                        read.add(text);
+                    else
+                        tailer.awaitNext(10, TimeUnit.SECONDS);
+                }
+            });
+            assertEquals("first", read.poll(5, TimeUnit.SECONDS));
+            for (int i = 0; i < messages; i++) {
+                Thread.sleep(5);
+                appender.writeText("msg-" + i);
+                // much less than the timeout
+                assertEquals("msg-" + i, read.poll(1, TimeUnit.SECONDS));
+            }
+            reader.get(5, TimeUnit.SECONDS);
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.TailerDirection;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class BackwardReadTest {
+
+    @Test
+    public void readBackwardAcrossCycles() {
+        File tmp = DirectoryUtils.tempDir("backwardRead");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .indexSpacing(16)
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 1_000; i++) {
+                int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+                // meta data doesn't count as an excerpt
+                if (i % 7 == 0)
+                    try (DocumentContext dc = appender.writingDocument(true)) {
+                        dc.wire().write("meta").int32(n);
+                    }
+                if (i % 300 == 299)
+                    timeProvider.advanceMillis(1_000);
+            }
+
+            ExcerptTailer tailer = cq.createTailer().direction(TailerDirection.BACKWARD).toEnd();
+            for (int i = 999; i >= 0; i--)
+                assertEquals(i, read(tailer));
+            assertEquals(-1, read(tailer));
+
+            // turning around part way through a block
+            tailer.direction(TailerDirection.FORWARD);
+            assertTrue(tailer.moveToIndex(cq.rollCycle().toIndex(cq.firstCycle(), 123)));
+            assertEquals(123, read(tailer));
+            tailer.direction(TailerDirection.BACKWARD);
+            assertEquals(124, read(tailer));
+            assertEquals(123, read(tailer));
+            assertEquals(122, read(tailer));
+            tailer.direction(TailerDirection.FORWARD);
+            assertEquals(121, read(tailer));
+            assertEquals(122, read(tailer));
+        }
+    }
+
+    private static int read(ExcerptTailer tailer) {
+        try (DocumentContext dc = tailer.readingDocument()) {
+            return dc.isPresent() ? (int) dc.wire().read("n").int64() : -1;
+        }
+    }
+}
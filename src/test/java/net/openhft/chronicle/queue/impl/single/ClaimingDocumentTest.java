@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClaimingDocumentTest {
+    @Test
+    public void publishedInClaimOrder() throws Exception {
+        File tmp = DirectoryUtils.tempDir("claimingDocument");
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            DocumentContext first = appender.claimingDocument(64);
+
+            // another thread claims after, and commits before
+            Future<?> second = service.submit(() -> {
+                try (DocumentContext dc = cq.acquireAppender().claimingDocument(64)) {
+                    dc.wire().getValueOut().text("second");
+                }
+            });
+            second.get();
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertNull(tailer.readText());
+
+            first.wire().getValueOut().text("first");
+            first.close();
+
+            assertEquals("first", tailer.readText());
+            assertEquals("second", tailer.readText());
+            assertNull(tailer.readText());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void abandonedClaimIsSkipped() {
+        File tmp = DirectoryUtils.tempDir("claimingDocumentAbandoned");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(4)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 20; i++) {
+                try (DocumentContext dc = appender.claimingDocument(128)) {
+                    dc.wire().getValueOut().text("claim " + i);
+                    if (i % 3 == 0)
+                        dc.rollbackOnClose();
+                }
+            }
+            // a normal write indexes the claims before it.
+            appender.writeText("last");
+            long lastIndex = appender.lastIndexAppended();
+
+            ExcerptTailer tailer = cq.createTailer();
+            int count = 0;
+            for (int i = 0; i < 20; i++) {
+                if (i % 3 == 0)
+                    continue;
+                assertEquals("claim " + i, tailer.readText());
+                count++;
+            }
+            assertEquals("last", tailer.readText());
+            assertNull(tailer.readText());
+
+            assertTrue(tailer.moveToIndex(lastIndex - count));
+            assertEquals("claim 1", tailer.readText());
+            assertTrue(tailer.moveToIndex(lastIndex - 1));
+            assertEquals("claim 19", tailer.readText());
+        }
+    }
+
+    @Test
+    public void writersWaitForClaimsWithoutTheLock() throws Exception {
+        File tmp = DirectoryUtils.tempDir("claimingDocumentWriter");
+        ExecutorService service = Executors.newFixedThreadPool(2);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            DocumentContext first = cq.acquireAppender().claimingDocument(64);
+            Future<?> writer = service.submit(() -> cq.acquireAppender().writeText("written"));
+
+            // the writer waits for the claim, but doesn't stop another being made
+            service.submit(() -> {
+                try (DocumentContext dc = cq.acquireAppender().claimingDocument(64)) {
+                    dc.wire().getValueOut().text("second");
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertFalse(writer.isDone());
+
+            first.wire().getValueOut().text("first");
+            first.close();
+            writer.get(5, TimeUnit.SECONDS);
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("first", tailer.readText());
+            assertEquals("second", tailer.readText());
+            assertEquals("written", tailer.readText());
+            assertNull(tailer.readText());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void claimsNotClosedInTimeAreDiscarded() throws Exception {
+        File tmp = DirectoryUtils.tempDir("claimingDocumentTimeout");
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .timeoutMS(100)
+                .build()) {
+            // as if the claimant died
+            DocumentContext dead = service.submit(() -> cq.acquireAppender().claimingDocument(64)).get();
+
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("after");
+            assertEquals(0, cq.rollCycle().toSequenceNumber(appender.lastIndexAppended()));
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("after", tailer.readText());
+
+            dead.wire().getValueOut().text("late");
+            try {
+                dead.close();
+                fail();
+            } catch (IllegalStateException expected) {
+                // the claim is padding now
+            }
+            assertNull(tailer.readText());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConsumerGroupTest {
+    private static final int MESSAGES = 1_000;
+
+    @Test
+    public void blocksAreReadByExactlyOneMember() {
+        try (SingleChronicleQueue cq = queue("groupByBlock")) {
+            write(cq);
+            ConsumerGroup group = ConsumerGroup.byBlock(cq, "blocks", 3);
+            List<Integer> all = new ArrayList<>();
+            for (int m = 0; m < group.members(); m++) {
+                try (ConsumerGroup.Member member = group.join(m)) {
+                    List<Integer> read = readAll(member);
+                    assertFalse(read.isEmpty());
+                    for (int n : read)
+                        assertEquals(m, (cq.rollCycle().toSequenceNumber(indexOf(cq, n)) / cq.indexSpacing() + cycle(cq)) % 3);
+                    all.addAll(read);
+                }
+            }
+            Collections.sort(all);
+            assertEquals(MESSAGES, all.size());
+            for (int i = 0; i < MESSAGES; i++)
+                assertEquals(i, (int) all.get(i));
+        }
+    }
+
+    @Test
+    public void keysAreReadByOneMemberInOrder() {
+        try (SingleChronicleQueue cq = queue("groupByKey")) {
+            write(cq);
+            ConsumerGroup group = ConsumerGroup.byKey(cq, "keys", 2, wire -> wire.read("key").int64());
+            Map<Integer, Integer> memberForKey = new HashMap<>();
+            int count = 0;
+            for (int m = 0; m < group.members(); m++) {
+                try (ConsumerGroup.Member member = group.join(m)) {
+                    int last = -1;
+                    for (int n : readAll(member)) {
+                        assertTrue(n > last);
+                        last = n;
+                        Integer previous = memberForKey.put(n % 10, m);
+                        assertTrue(previous == null || previous == m);
+                        count++;
+                    }
+                }
+            }
+            assertEquals(MESSAGES, count);
+            assertEquals(10, memberForKey.size());
+        }
+    }
+
+    @Test
+    public void membersCarryOnWhereTheyLeftOff() {
+        try (SingleChronicleQueue cq = queue("groupRejoin")) {
+            write(cq);
+            ConsumerGroup group = ConsumerGroup.byBlock(cq, "rejoin", 2);
+            List<Integer> read = new ArrayList<>();
+            try (ConsumerGroup.Member member = group.join()) {
+                assertEquals(0, member.member());
+                // the place is taken
+                assertEquals(1, group.join().member());
+                try {
+                    group.join();
+                    fail();
+                } catch (IllegalStateException expected) {
+                }
+                for (int i = 0; i < 10; i++)
+                    try (DocumentContext dc = member.readingDocument()) {
+                        read.add((int) dc.wire().read("n").int64());
+                    }
+            }
+            try (ConsumerGroup.Member member = group.join(0)) {
+                read.addAll(readAll(member));
+            }
+            try (ConsumerGroup.Member member = group.join(0)) {
+                assertTrue(readAll(member).isEmpty());
+            }
+            assertEquals(new HashSet<>(read).size(), read.size());
+            assertEquals(MESSAGES / 2, read.size(), MESSAGES / 10);
+
+            try {
+                ConsumerGroup.byBlock(cq, "rejoin", 3);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void membersReadTheWholeExcerptAfterItsKey() {
+        try (SingleChronicleQueue cq = queue("groupByKeyPayload")) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 100; i++) {
+                long n = i;
+                appender.writeBytes(b -> b.writeLong(n % 7).writeLong(n));
+            }
+            ConsumerGroup group = ConsumerGroup.byKey(cq, "payload", 2, wire -> wire.bytes().readLong());
+            int count = 0;
+            for (int m = 0; m < group.members(); m++) {
+                try (ConsumerGroup.Member member = group.join(m)) {
+                    for (; ; ) {
+                        try (DocumentContext dc = member.readingDocument()) {
+                            if (!dc.isPresent())
+                                break;
+                            long key = dc.wire().bytes().readLong();
+                            long n = dc.wire().bytes().readLong();
+                            assertEquals(n % 7, key);
+                            count++;
+                        }
+                    }
+                }
+            }
+            assertEquals(100, count);
+        }
+    }
+
+    @Test
+    public void idleMembersKeepTheirPlace() throws InterruptedException {
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("groupIdle"))
+                .testBlockSize()
+                .timeProvider(timeProvider)
+                .build()) {
+            ConsumerGroup group = ConsumerGroup.byBlock(cq, "idle", 2);
+            try (ConsumerGroup.Member member = group.join(0)) {
+                long expiry = member.expiry();
+                timeProvider.advanceMillis(ConsumerGroup.LEASE_MILLIS / 2);
+                // renewed by the queue's event loop without reading
+                long end = System.currentTimeMillis() + 5_000;
+                while (member.expiry() == expiry && System.currentTimeMillis() < end)
+                    Thread.sleep(10);
+                assertTrue(member.expiry() > expiry);
+
+                timeProvider.advanceMillis(ConsumerGroup.LEASE_MILLIS * 2 / 3);
+                try {
+                    group.join(0);
+                    fail();
+                } catch (IllegalStateException expected) {
+                }
+            }
+            // free once it has left
+            group.join(0).close();
+        }
+    }
+
+    private static SingleChronicleQueue queue(String name) {
+        return SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir(name))
+                .testBlockSize()
+                .indexSpacing(16)
+                .build();
+    }
+
+    private static void write(SingleChronicleQueue cq) {
+        ExcerptAppender appender = cq.acquireAppender();
+        for (int i = 0; i < MESSAGES; i++) {
+            int n = i;
+            appender.writeDocument(w -> w.write("n").int64(n).write("key").int64(n % 10));
+        }
+    }
+
+    private static long indexOf(SingleChronicleQueue cq, int n) {
+        return cq.rollCycle().toIndex(cycle(cq), n);
+    }
+
+    private static int cycle(SingleChronicleQueue cq) {
+        return cq.firstCycle();
+    }
+
+    private static List<Integer> readAll(ConsumerGroup.Member member) {
+        List<Integer> read = new ArrayList<>();
+        for (; ; ) {
+            try (DocumentContext dc = member.readingDocument()) {
+                if (!dc.isPresent())
+                    return read;
+                read.add((int) dc.wire().read("n").int64());
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.queue.RollCycleBuilder;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CustomRollCycleTest {
+    private static final long START = 1_567_498_750_000L;
+
+    @Test
+    public void rollEveryFiveSeconds() {
+        File tmp = DirectoryUtils.tempDir("rollEvery");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        RollCycle rollCycle = RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).build();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(rollCycle)
+                .timeProvider(timeProvider)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 20; i++) {
+                final int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+                timeProvider.advanceMillis(1_000);
+            }
+
+            String[] files = tmp.list((d, name) -> name.endsWith(SingleChronicleQueue.SUFFIX));
+            assertNotNull(files);
+            assertEquals(4, files.length);
+
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 20; i++) {
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    assertEquals(i, dc.wire().read("n").int64());
+                    assertEquals(START / 5_000 + i / 5, rollCycle.toCycle(dc.index()));
+                    assertEquals(i % 5, rollCycle.toSequenceNumber(dc.index()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cycleIsKeptUntilItHasMaxCycleMessages() {
+        File tmp = DirectoryUtils.tempDir("maxCycleMessages");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        RollCycle rollCycle = RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS)
+                .maxCycleMessages(10)
+                .build();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(rollCycle)
+                .timeProvider(timeProvider)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 25; i++) {
+                final int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+                timeProvider.advanceMillis(300);
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            List<Integer> cycles = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    assertEquals(i, dc.wire().read("n").int64());
+                    assertEquals(i % 10, rollCycle.toSequenceNumber(dc.index()));
+                    int cycle = rollCycle.toCycle(dc.index());
+                    if (i % 10 == 0)
+                        cycles.add(cycle);
+                    else
+                        assertEquals((int) cycles.get(cycles.size() - 1), cycle);
+                }
+            }
+            // each cycle starts when the last one was full
+            assertEquals(3, cycles.size());
+            assertEquals(START / 1_000, (long) cycles.get(0));
+            assertEquals(START / 1_000 + 3, (long) cycles.get(1));
+            assertEquals(START / 1_000 + 6, (long) cycles.get(2));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertFalse(dc.isPresent());
+            }
+
+            // another appender carries on with the last cycle
+            try (SingleChronicleQueue cq2 = SingleChronicleQueueBuilder.binary(tmp)
+                    .testBlockSize()
+                    .rollCycle(rollCycle)
+                    .timeProvider(timeProvider)
+                    .build()) {
+                cq2.acquireAppender().writeDocument(w -> w.write("n").int64(25));
+            }
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertTrue(dc.isPresent());
+                assertEquals(25, dc.wire().read("n").int64());
+                assertEquals((int) cycles.get(2), rollCycle.toCycle(dc.index()));
+                assertEquals(5, rollCycle.toSequenceNumber(dc.index()));
+            }
+        }
+    }
+
+    @Test
+    public void appendersCarryOnWithTheCycleAnotherRolledTo() {
+        File tmp = DirectoryUtils.tempDir("keptCycleRolled");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        RollCycle rollCycle = RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS)
+                .maxCycleMessages(10)
+                .build();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(rollCycle)
+                .timeProvider(timeProvider)
+                .build();
+             SingleChronicleQueue cq2 = SingleChronicleQueueBuilder.binary(tmp)
+                     .testBlockSize()
+                     .rollCycle(rollCycle)
+                     .timeProvider(timeProvider)
+                     .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 10; i++) {
+                final int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+                timeProvider.advanceMillis(300);
+            }
+            // the other appender finds the cycle full and rolls
+            cq2.acquireAppender().writeDocument(w -> w.write("n").int64(10));
+            timeProvider.advanceMillis(1_000);
+            // this appender finds its cycle sealed, and keeps the new one as it isn't full
+            appender.writeDocument(w -> w.write("n").int64(11));
+
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 12; i++) {
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    assertEquals(i, dc.wire().read("n").int64());
+                    assertEquals(START / 1_000 + (i < 10 ? 0 : 3), rollCycle.toCycle(dc.index()));
+                    assertEquals(i % 10, rollCycle.toSequenceNumber(dc.index()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cycleIsKeptUntilItHasMaxCycleBytes() {
+        File tmp = DirectoryUtils.tempDir("maxCycleBytes");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        RollCycle rollCycle = RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS)
+                .indexCount(8)
+                .maxCycleBytes(64 << 10)
+                .build();
+        byte[] payload = new byte[1000];
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(rollCycle)
+                .timeProvider(timeProvider)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 200; i++) {
+                appender.writeBytes(b -> b.write(payload));
+                timeProvider.advanceMillis(100);
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            List<Long> counts = new ArrayList<>();
+            int lastCycle = Integer.MIN_VALUE;
+            for (int i = 0; i < 200; i++) {
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    int cycle = rollCycle.toCycle(dc.index());
+                    if (cycle != lastCycle)
+                        counts.add(0L);
+                    counts.set(counts.size() - 1, counts.get(counts.size() - 1) + 1);
+                    lastCycle = cycle;
+                }
+            }
+            // 200 KB in 20 seconds is rolled every 64 KB rather than every second
+            assertEquals(4, counts.size());
+            for (int i = 0; i < counts.size() - 1; i++) {
+                long count = counts.get(i);
+                assertTrue("count: " + count, count >= 55 && count <= 70);
+            }
+        }
+    }
+
+    @Test
+    public void reopenedWithoutTheRollCycle() {
+        for (RollCycle rollCycle : new RollCycle[]{
+                RollCycleBuilder.rollEvery(15, TimeUnit.MINUTES).build(),
+                RollCycleBuilder.rollEvery(5, TimeUnit.SECONDS).indexCount(256).build()}) {
+            File tmp = DirectoryUtils.tempDir("reopenCustom");
+            SetTimeProvider timeProvider = new SetTimeProvider();
+            timeProvider.currentTimeMillis(START);
+            long index;
+            try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                    .testBlockSize()
+                    .rollCycle(rollCycle)
+                    .timeProvider(timeProvider)
+                    .build()) {
+                ExcerptAppender appender = cq.acquireAppender();
+                appender.writeText("hello");
+                index = appender.lastIndexAppended();
+            }
+
+            // e.g. as a tool would, with the default roll cycle
+            try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                    .testBlockSize()
+                    .timeProvider(timeProvider)
+                    .readOnly(true)
+                    .build()) {
+                RollCycle reopened = cq.rollCycle();
+                assertEquals(rollCycle.length(), reopened.length());
+                assertEquals(rollCycle.format(), reopened.format());
+                assertEquals(rollCycle.toIndex(1, 0), reopened.toIndex(1, 0));
+                assertEquals(rollCycle.defaultIndexCount(), reopened.defaultIndexCount());
+
+                ExcerptTailer tailer = cq.createTailer();
+                assertTrue(tailer.moveToIndex(index));
+                assertEquals("hello", tailer.readText());
+            }
+        }
+    }
+}
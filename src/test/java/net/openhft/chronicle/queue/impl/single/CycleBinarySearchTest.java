@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import net.openhft.chronicle.wire.Wire;
+import org.junit.Test;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+import static org.junit.Assert.*;
+
+public class CycleBinarySearchTest {
+    private static final int CYCLES = 40;
+    private static final int PER_CYCLE = 10;
+
+    @Test
+    public void searchAcrossCycles() throws ParseException {
+        File tmp = DirectoryUtils.tempDir("cycleBinarySearch");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            write(cq, timeProvider);
+
+            ToLongFunction<Wire> extractor = wire -> wire.read("key").int64();
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < CYCLES * PER_CYCLE; i++) {
+                long index = BinarySearch.search(cq, "key", extractor, i * 10L);
+                assertTrue(index >= 0);
+                assertTrue(tailer.moveToIndex(index));
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertEquals(i * 10L, dc.wire().read("key").int64());
+                }
+                // not there, so an approximate index
+                assertTrue(BinarySearch.search(cq, "key", extractor, i * 10L + 5) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void cachedKeysAreReusedByLaterSearches() throws ParseException {
+        File tmp = DirectoryUtils.tempDir("cycleBinarySearchCache");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        AtomicInteger reads = new AtomicInteger();
+        ToLongFunction<Wire> extractor = wire -> {
+            reads.incrementAndGet();
+            return wire.read("key").int64();
+        };
+        long key = (CYCLES / 3 * PER_CYCLE + 4) * 10L;
+
+        int firstReads;
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            write(cq, timeProvider);
+            long index = BinarySearch.search(cq, "key", extractor, key);
+            assertTrue(index >= 0);
+            firstReads = reads.getAndSet(0);
+
+            assertTrue(new File(tmp, CycleKeyCache.fileName("key")).exists());
+        }
+
+        // a new instance only has the keys stored in the file
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            long index = BinarySearch.search(cq, "key", extractor, key);
+            ExcerptTailer tailer = cq.createTailer();
+            assertTrue(tailer.moveToIndex(index));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertEquals(key, dc.wire().read("key").int64());
+            }
+            assertTrue(reads.get() < firstReads);
+        }
+    }
+
+    @Test
+    public void everyCycleIsCached() throws ParseException {
+        File tmp = DirectoryUtils.tempDir("cycleBinarySearchMany");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        int cycles = 300;
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < cycles; c++) {
+                long key = c * 10L;
+                appender.writeDocument(w -> w.write("key").int64(key));
+                timeProvider.advanceMillis(1_000);
+            }
+            ToLongFunction<Wire> extractor = wire -> wire.read("key").int64();
+            ExcerptTailer tailer = cq.createTailer();
+            // fill the cache for every cycle but the last.
+            for (int c = 0; c < cycles - 1; c++)
+                assertTrue(tailer.moveToIndex(BinarySearch.search(cq, "key", extractor, c * 10L)));
+        }
+
+        AtomicInteger reads = new AtomicInteger();
+        ToLongFunction<Wire> counting = wire -> {
+            reads.incrementAndGet();
+            return wire.read("key").int64();
+        };
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            long key = (cycles - 10) * 10L;
+            long index = BinarySearch.search(cq, "key", counting, key);
+            ExcerptTailer tailer = cq.createTailer();
+            assertTrue(tailer.moveToIndex(index));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertEquals(key, dc.wire().read("key").int64());
+            }
+            // only the cycle the key is in is read, not the first and last keys of the cycles searched.
+            assertTrue("reads " + reads.get(), reads.get() < 10);
+        }
+    }
+
+    private static SingleChronicleQueue queue(File tmp, SetTimeProvider timeProvider) {
+        return SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .build();
+    }
+
+    private static void write(SingleChronicleQueue cq, SetTimeProvider timeProvider) {
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        ExcerptAppender appender = cq.acquireAppender();
+        for (int c = 0; c < CYCLES; c++) {
+            for (int i = 0; i < PER_CYCLE; i++) {
+                long key = (c * PER_CYCLE + i) * 10L;
+                appender.writeDocument(w -> w.write("key").int64(key));
+            }
+            // skip a cycle now and again
+            timeProvider.advanceMillis(c % 7 == 6 ? 2_000 : 1_000);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.RollCycles;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class CycleCountsTest {
+
+    @Test
+    public void sealedCyclesAreCounted() {
+        File tmp = DirectoryUtils.tempDir("cycleCounts");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        int firstCycle;
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < 5; c++) {
+                for (int i = 0; i <= c * 10; i++) {
+                    int n = i;
+                    appender.writeDocument(w -> w.write("n").int64(n));
+                }
+                timeProvider.advanceMillis(1_000);
+            }
+            firstCycle = cq.firstCycle();
+
+            CycleCounts counts = cq.cycleCounts();
+            for (int c = 0; c < 4; c++) {
+                assertEquals(c * 10 + 1, counts.count(firstCycle + c));
+                assertTrue(counts.length(firstCycle + c) > 0);
+            }
+            // not sealed yet
+            assertEquals(-1, counts.count(firstCycle + 4));
+            assertEquals(41, cq.exceptsPerCycle(firstCycle + 4));
+            assertEquals(1 + 11 + 21 + 31 + 41, cq.entryCount());
+        }
+
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            assertEquals(31, cq.cycleCounts().count(firstCycle + 3));
+            assertEquals(11 + 21 + 31 + 5,
+                    cq.countExcerpts(cq.rollCycle().toIndex(firstCycle + 1, 0), cq.rollCycle().toIndex(firstCycle + 4, 5)));
+        }
+    }
+
+    @Test
+    public void rangesAreSummedAcrossSkippedCycles() {
+        File tmp = DirectoryUtils.tempDir("cycleCountsSkipped");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < 5; c++) {
+                for (int i = 0; i <= c; i++) {
+                    int n = i;
+                    appender.writeDocument(w -> w.write("n").int64(n));
+                }
+                // every other cycle is skipped
+                timeProvider.advanceMillis(2_000);
+            }
+            int firstCycle = cq.firstCycle();
+            int lastCycle = cq.lastCycle();
+            assertEquals(firstCycle + 8, lastCycle);
+
+            CycleCounts counts = cq.cycleCounts();
+            assertEquals(1 + 2 + 3 + 4, counts.countBetween(firstCycle, lastCycle - 1, 4));
+            assertEquals(2 + 3, counts.countBetween(firstCycle + 1, lastCycle - 3, 2));
+            assertEquals(0, counts.countBetween(firstCycle + 1, firstCycle + 1, 0));
+            // as if a cycle had been deleted
+            assertEquals(-1, counts.countBetween(firstCycle, lastCycle - 1, 3));
+            // not sealed yet
+            assertEquals(-1, counts.countBetween(firstCycle, lastCycle, 5));
+            assertEquals(1 + 2 + 3 + 4 + 5, cq.entryCount());
+            assertEquals(2 + 3 + 4 + 2,
+                    cq.countExcerpts(cq.rollCycle().toIndex(firstCycle, 1), cq.rollCycle().toIndex(lastCycle, 2)));
+        }
+    }
+
+    @Test
+    public void noCountsByDefault() {
+        File tmp = DirectoryUtils.tempDir("cycleCountsOff");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < 3; c++) {
+                appender.writeText("hello");
+                timeProvider.advanceMillis(1_000);
+            }
+            assertNull(cq.cycleCounts());
+            assertEquals(3, cq.entryCount());
+            assertFalse(new File(tmp, CycleCounts.FILE_NAME).exists());
+        }
+    }
+
+    private static SingleChronicleQueue queue(File tmp, SetTimeProvider timeProvider) {
+        return SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .cycleCounts(true)
+                .build();
+    }
+}
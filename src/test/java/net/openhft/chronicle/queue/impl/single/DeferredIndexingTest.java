@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class DeferredIndexingTest {
+    private static final int COUNT = 500;
+
+    @Test
+    public void moveToIndexBeforeAndAfterIndexing() {
+        File tmp = DirectoryUtils.tempDir("deferredIndexing");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(4)
+                .deferredIndexing(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < COUNT; i++)
+                appender.writeText("msg-" + i);
+            long lastIndex = appender.lastIndexAppended();
+
+            // whether or not the indexer has caught up
+            checkMoveToIndex(cq, lastIndex);
+
+            SingleChronicleQueueExcerpts.StoreAppender storeAppender = (SingleChronicleQueueExcerpts.StoreAppender) appender;
+            long end = System.currentTimeMillis() + 5_000;
+            while (storeAppender.store.nextEntryToBeIndexed() < COUNT - 4) {
+                assertTrue("indexer didn't catch up", System.currentTimeMillis() < end);
+                Jvm.pause(1);
+            }
+            checkMoveToIndex(cq, lastIndex);
+            // so an idle indexer doesn't take the write lock
+            assertFalse(storeAppender.store.hasPendingIndex());
+        }
+    }
+
+    private void checkMoveToIndex(SingleChronicleQueue cq, long lastIndex) {
+        ExcerptTailer tailer = cq.createTailer();
+        long firstIndex = lastIndex - COUNT + 1;
+        for (int i = COUNT - 1; i >= 0; i -= 3) {
+            assertTrue(tailer.moveToIndex(firstIndex + i));
+            assertEquals("msg-" + i, tailer.readText());
+        }
+    }
+}
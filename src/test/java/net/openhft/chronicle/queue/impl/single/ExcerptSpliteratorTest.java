@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.RollCycle;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.impl.WireStore;
+import net.openhft.chronicle.wire.Wire;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ExcerptSpliteratorTest {
+    private static final Function<Wire, Long> VALUE = wire -> wire.read("value").int64();
+    private static final int CYCLES = 3;
+    private static final int PER_CYCLE = 5_000;
+
+    @Test
+    public void streamARange() {
+        try (SingleChronicleQueue cq = writeQueue("streamRange")) {
+            RollCycle rollCycle = cq.rollCycle();
+            int first = cq.firstCycle();
+
+            List<Long> all = cq.stream(0, Long.MAX_VALUE, VALUE).collect(Collectors.toList());
+            assertEquals(LongStream.range(0, CYCLES * PER_CYCLE).boxed().collect(Collectors.toList()), all);
+
+            // from part way through the first cycle to part way through the last
+            long from = rollCycle.toIndex(first, 1_234);
+            long to = rollCycle.toIndex(cq.lastCycle(), 4_321);
+            List<Long> some = cq.stream(from, to, VALUE).collect(Collectors.toList());
+            assertEquals(LongStream.range(1_234, (CYCLES - 1) * PER_CYCLE + 4_321).boxed().collect(Collectors.toList()), some);
+
+            assertEquals(0, cq.stream(to, from, VALUE).count());
+        }
+    }
+
+    @Test
+    public void parallelStream() {
+        try (SingleChronicleQueue cq = writeQueue("parallelStream")) {
+            List<Long> all = cq.stream(0, Long.MAX_VALUE, VALUE).parallel().collect(Collectors.toList());
+            assertEquals(LongStream.range(0, CYCLES * PER_CYCLE).boxed().collect(Collectors.toList()), all);
+        }
+    }
+
+    @Test
+    public void splitsAtCyclesThenIndexEntries() {
+        try (SingleChronicleQueue cq = writeQueue("splits")) {
+            Spliterator<Long> rest = cq.spliterator(0, Long.MAX_VALUE, VALUE);
+            Spliterator<Long> cycle0 = rest.trySplit();
+            Spliterator<Long> cycle1 = rest.trySplit();
+            assertNotNull(cycle0);
+            assertNotNull(cycle1);
+            // the rest is one cycle, split at an index entry
+            Spliterator<Long> firstHalf = rest.trySplit();
+            assertNotNull(firstHalf);
+            assertEquals(0, firstHalf.estimateSize() % cq.indexSpacing());
+
+            long[] next = {0};
+            cycle0.forEachRemaining(v -> assertEquals(next[0]++, (long) v));
+            assertEquals(PER_CYCLE, next[0]);
+            cycle1.forEachRemaining(v -> assertEquals(next[0]++, (long) v));
+            firstHalf.forEachRemaining(v -> assertEquals(next[0]++, (long) v));
+            rest.forEachRemaining(v -> assertEquals(next[0]++, (long) v));
+            assertEquals(CYCLES * PER_CYCLE, next[0]);
+            assertFalse(rest.tryAdvance(v -> fail()));
+        }
+    }
+
+    @Test
+    public void closingAStreamReleasesItsTailer() {
+        try (SingleChronicleQueue cq = writeQueue("closeStream")) {
+            WireStore store = cq.storeForCycle(cq.firstCycle(), cq.epoch(), false);
+            try {
+                long refCount = store.refCount();
+                Stream<Long> stream = cq.stream(0, Long.MAX_VALUE, VALUE);
+                Iterator<Long> values = stream.iterator();
+                assertEquals(0L, (long) values.next());
+                assertTrue(store.refCount() > refCount);
+
+                // not read to the end
+                stream.close();
+                assertEquals(refCount, store.refCount());
+            } finally {
+                cq.release(store);
+            }
+        }
+    }
+
+    private static SingleChronicleQueue writeQueue(String name) {
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir(name))
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .build();
+        ExcerptAppender appender = cq.acquireAppender();
+        for (int c = 0; c < CYCLES; c++) {
+            for (int i = 0; i < PER_CYCLE; i++) {
+                long value = c * PER_CYCLE + i;
+                appender.writeDocument(w -> w.write("value").int64(value));
+            }
+            timeProvider.advanceMillis(1_000);
+        }
+        return cq;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class IndexVerifierTest {
+
+    @Test
+    public void findsAndRepairsBadEntries() {
+        File tmp = DirectoryUtils.tempDir("indexVerifier");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < 4; c++) {
+                for (int i = 0; i < 100; i++) {
+                    int n = i;
+                    appender.writeDocument(w -> w.write("n").int64(n));
+                }
+                timeProvider.advanceMillis(1_000);
+            }
+
+            IndexVerifier.Report report = IndexVerifier.verify(cq, false, 2);
+            // the last cycle isn't sealed
+            assertEquals(3, report.cycles());
+            int spacing = cq.indexSpacing();
+            assertEquals(3 * ((100 + spacing - 1) / spacing), report.entries());
+            assertEquals(0, report.missing() + report.incorrect());
+
+            int cycle = cq.firstCycle() + 1;
+            ExcerptTailer tailer = cq.createTailer();
+            long position1 = positionOf(tailer, cq.rollCycle().toIndex(cycle, spacing));
+            long notIndexed = positionOf(tailer, cq.rollCycle().toIndex(cycle, spacing + 1));
+            long position2 = positionOf(tailer, cq.rollCycle().toIndex(cycle, 2 * spacing));
+            Bytes<?> bytes = tailer.wire().bytes();
+            // clear one entry and point another at the wrong excerpt
+            bytes.writeLong(offsetOf(bytes, position1), 0);
+            bytes.writeLong(offsetOf(bytes, position2), notIndexed);
+
+            report = IndexVerifier.verify(cq, false, 2);
+            assertEquals(1, report.missing());
+            assertEquals(1, report.incorrect());
+            assertEquals(0, report.repaired());
+
+            report = IndexVerifier.verify(cq, true, 2);
+            assertEquals(2, report.repaired());
+            assertEquals(0, report.unrepairable());
+
+            report = IndexVerifier.verify(cq, false, 2);
+            assertEquals(0, report.missing() + report.incorrect());
+            assertEquals(position2, positionOf(tailer, cq.rollCycle().toIndex(cycle, 2 * spacing)));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertEquals(2 * spacing, dc.wire().read("n").int64());
+            }
+        }
+    }
+
+    private static long positionOf(ExcerptTailer tailer, long index) {
+        assertTrue(tailer.moveToIndex(index));
+        return tailer.wire().bytes().readPosition();
+    }
+
+    // the index entry holding a position is before the excerpt
+    private static long offsetOf(Bytes<?> bytes, long position) {
+        for (long offset = 0; offset < position; offset += 4)
+            if (bytes.readLong(offset) == position)
+                return offset;
+        throw new AssertionError("no index entry for " + position);
+    }
+}
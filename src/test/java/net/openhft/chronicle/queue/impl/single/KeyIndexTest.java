@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.KeyExtractor;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class KeyIndexTest {
+    private static final KeyExtractor ID = wire -> wire.read("id").int64();
+    private static final int CYCLES = 3;
+    private static final int PER_CYCLE = 2_000;
+
+    @Test
+    public void indexGrowsAndPersists() {
+        File file = new File(DirectoryUtils.tempDir("keyIndex"), "test" + KeyIndex.SUFFIX);
+        file.getParentFile().mkdirs();
+        int entries = KeyIndex.INITIAL_CAPACITY * 5;
+        try (KeyIndex keyIndex = KeyIndex.open(file, true, false)) {
+            assertNotNull(keyIndex);
+            for (int i = 0; i < entries; i++)
+                keyIndex.add(i / 2 * 7919L, i);
+            keyIndex.indexedUpTo(entries);
+            for (int i = 0; i < entries; i += 2)
+                assertEquals(i, keyIndex.find(i / 2 * 7919L));
+            assertEquals(-1, keyIndex.find(-1));
+        }
+        try (KeyIndex keyIndex = KeyIndex.open(file, false, true)) {
+            assertNotNull(keyIndex);
+            assertEquals(entries, keyIndex.indexedUpTo());
+            assertEquals(entries - 2, keyIndex.find((entries - 1) / 2 * 7919L));
+        }
+    }
+
+    @Test
+    public void moveToKey() {
+        File tmp = DirectoryUtils.tempDir("moveToKey");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        File keyIndexFile;
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < CYCLES; c++) {
+                for (int i = 0; i < PER_CYCLE; i++) {
+                    long id = (c * PER_CYCLE + i) * 3L;
+                    appender.writeDocument(w -> w.write("id").int64(id));
+                }
+                timeProvider.advanceMillis(1_000);
+            }
+            keyIndexFile = KeyIndex.fileFor(cq.fileForCycle(cq.firstCycle()));
+
+            // found whether or not the excerpts have been indexed yet
+            assertFound(cq, 3 * 123);
+            indexAll(cq);
+            for (int i = 0; i < CYCLES * PER_CYCLE; i += 97)
+                assertFound(cq, i * 3L);
+            assertFound(cq, (CYCLES * PER_CYCLE - 1) * 3L);
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertFalse(tailer.moveToKey(1));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertFalse(dc.isPresent());
+            }
+
+            // not indexed yet
+            appender.writeDocument(w -> w.write("id").int64(1));
+            assertTrue(tailer.moveToKey(1));
+        }
+
+        assertTrue(keyIndexFile.exists());
+        assertTrue(keyIndexFile.delete());
+
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            // scanned without the index, then rebuilt
+            assertFound(cq, 3 * 456);
+            indexAll(cq);
+            assertTrue(keyIndexFile.exists());
+            assertFound(cq, 3 * 1_999);
+        }
+    }
+
+    @Test
+    public void indexesOfDeletedCyclesAreRemoved() {
+        File tmp = DirectoryUtils.tempDir("keyIndexOrphans");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        File cycleFile;
+        File keyIndexFile;
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int c = 0; c < CYCLES; c++) {
+                long id = c * 3L;
+                appender.writeDocument(w -> w.write("id").int64(id));
+                timeProvider.advanceMillis(1_000);
+            }
+            indexAll(cq);
+            cycleFile = cq.fileForCycle(cq.firstCycle());
+            keyIndexFile = KeyIndex.fileFor(cycleFile);
+            assertTrue(keyIndexFile.exists());
+        }
+        assertTrue(cycleFile.delete());
+
+        try (SingleChronicleQueue cq = queue(tmp, timeProvider)) {
+            KeyIndexes keyIndexes = cq.keyIndexes();
+            assertNotNull(keyIndexes);
+            keyIndexes.removeOrphans();
+            assertFalse(keyIndexFile.exists());
+            assertTrue(new File(tmp, KeyIndexes.FIRST_INDEXES).exists());
+
+            // the key's first excerpt has gone
+            assertFalse(cq.createTailer().moveToKey(0));
+            assertFound(cq, 3);
+        }
+    }
+
+    @Test
+    public void sharedKeysAreChecked() {
+        File tmp = DirectoryUtils.tempDir("keyIndexShared");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        // a poor hash of a text id, so most ids share a key
+        KeyExtractor length = wire -> wire.read("id").text().length();
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .keyExtractor(length)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (String id : new String[]{"aa", "bb", "c"}) {
+                appender.writeDocument(w -> w.write("id").text(id));
+                timeProvider.advanceMillis(1_000);
+            }
+            appender.writeDocument(w -> w.write("id").text("dd"));
+
+            for (int pass = 0; pass < 2; pass++) {
+                assertFoundText(cq, "aa");
+                assertFoundText(cq, "bb");
+                assertFoundText(cq, "dd");
+                assertFalse(cq.createTailer().moveToKey(2, w -> "zz".equals(w.read("id").text())));
+                indexAll(cq);
+            }
+        }
+    }
+
+    @Test
+    public void uninitialisedIndexIsNotOpenedWithoutCreate() throws IOException {
+        File file = new File(DirectoryUtils.tempDir("keyIndexUninitialised"), "test" + KeyIndex.SUFFIX);
+        file.getParentFile().mkdirs();
+        // as if another process was still creating it
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(4096);
+        }
+        assertNull(KeyIndex.open(file, false, false));
+        try (KeyIndex keyIndex = KeyIndex.open(file, true, false)) {
+            assertNotNull(keyIndex);
+            assertEquals(-1, keyIndex.find(1));
+        }
+    }
+
+    private static void assertFoundText(SingleChronicleQueue cq, String id) {
+        ExcerptTailer tailer = cq.createTailer();
+        assertTrue(tailer.moveToKey(id.length(), w -> id.equals(w.read("id").text())));
+        try (DocumentContext dc = tailer.readingDocument()) {
+            assertEquals(id, dc.wire().read("id").text());
+        }
+    }
+
+    private static void indexAll(SingleChronicleQueue cq) {
+        KeyIndexes keyIndexes = cq.keyIndexes();
+        assertNotNull(keyIndexes);
+        for (int cycle = cq.firstCycle(); cycle <= cq.lastCycle(); cycle++)
+            while (keyIndexes.indexPending(cycle, KeyIndexer.MAX_ENTRIES) > 0) {
+            }
+    }
+
+    private static void assertFound(SingleChronicleQueue cq, long id) {
+        ExcerptTailer tailer = cq.createTailer();
+        assertTrue(tailer.moveToKey(id));
+        try (DocumentContext dc = tailer.readingDocument()) {
+            assertEquals(id, dc.wire().read("id").int64());
+        }
+    }
+
+    private static SingleChronicleQueue queue(File tmp, SetTimeProvider timeProvider) {
+        return SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .keyExtractor(ID)
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MergedTailerTest {
+    private static final int QUEUES = 3;
+
+    @Test
+    public void mergeByTimestamp() {
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        SingleChronicleQueue[] queues = new SingleChronicleQueue[QUEUES];
+        try {
+            for (int i = 0; i < QUEUES; i++)
+                queues[i] = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("merged-" + i))
+                        .testBlockSize()
+                        .rollCycle(RollCycles.TEST_DAILY)
+                        .timeProvider(timeProvider)
+                        .timestamps(true)
+                        .build();
+
+            // an irregular interleaving, including runs on one queue
+            int messages = 300;
+            for (int n = 0; n < messages; n++) {
+                int q = (n * 7 / 3 + n / 11) % QUEUES;
+                String text = "msg-" + n;
+                queues[q].acquireAppender().writeDocument(w -> w.write("text").text(text));
+                timeProvider.advanceMillis(1);
+            }
+
+            MergedTailer merged = new MergedTailer(MergedTailer.TIMESTAMP,
+                    queues[0].createTailer(), queues[1].createTailer(), queues[2].createTailer());
+            for (int n = 0; n < messages; n++) {
+                try (DocumentContext dc = merged.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    assertEquals("msg-" + n, dc.wire().read("text").text());
+                    assertEquals((n * 7 / 3 + n / 11) % QUEUES, merged.source());
+                }
+            }
+            try (DocumentContext dc = merged.readingDocument()) {
+                assertFalse(dc.isPresent());
+                assertEquals(-1, merged.source());
+            }
+
+            queues[1].acquireAppender().writeDocument(w -> w.write("text").text("later"));
+            try (DocumentContext dc = merged.readingDocument()) {
+                assertTrue(dc.isPresent());
+                assertEquals("later", dc.wire().read("text").text());
+                assertEquals(1, merged.source());
+            }
+        } finally {
+            for (SingleChronicleQueue queue : queues)
+                if (queue != null)
+                    queue.close();
+        }
+    }
+
+    @Test
+    public void mergeByKeyWithTies() {
+        SingleChronicleQueue a = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("mergedKeyA")).testBlockSize().build();
+        SingleChronicleQueue b = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("mergedKeyB")).testBlockSize().build();
+        try {
+            ExcerptAppender appenderA = a.acquireAppender();
+            ExcerptAppender appenderB = b.acquireAppender();
+            for (long key : new long[]{1, 3, 3, 8})
+                appenderA.writeDocument(w -> w.write("key").int64(key).write("from").text("a"));
+            for (long key : new long[]{2, 3, 9})
+                appenderB.writeDocument(w -> w.write("key").int64(key).write("from").text("b"));
+
+            MergedTailer merged = new MergedTailer(wire -> wire.read("key").int64(), a.createTailer(), b.createTailer());
+            StringBuilder order = new StringBuilder();
+            for (; ; ) {
+                try (DocumentContext dc = merged.readingDocument()) {
+                    if (!dc.isPresent())
+                        break;
+                    long key = dc.wire().read("key").int64();
+                    order.append(key).append(dc.wire().read("from").text()).append(' ');
+                }
+            }
+            assertEquals("1a 2b 3a 3a 3b 8a 9b ", order.toString());
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package net.openhft.chronicle.queue.impl.single;
 
+import net.openhft.chronicle.core.time.SetTimeProvider;
 import net.openhft.chronicle.queue.ChronicleQueue;
 import net.openhft.chronicle.queue.ExcerptAppender;
 import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -12,6 +15,8 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public final class MoveToIndexTest {
     @Rule
@@ -68,6 +73,51 @@ public final class MoveToIndexTest {
         }
     }
 
+    @Test
+    public void randomMovesFromManyThreads() throws Exception {
+        final int messages = 20_000;
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        // small index arrays, so there are more than the store caches
+        try (SingleChronicleQueue queue = SingleChronicleQueueBuilder.binary(tmpFolder.newFolder())
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .build()) {
+            final ExcerptAppender appender = queue.acquireAppender();
+            for (int i = 0; i < messages; i++) {
+                final int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+            }
+            final int cycle = queue.firstCycle();
+
+            final AtomicReference<Throwable> failed = new AtomicReference<>();
+            final List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final Random random = new Random(t);
+                Thread thread = new Thread(() -> {
+                    try {
+                        ExcerptTailer tailer = queue.createTailer();
+                        for (int i = 0; i < 10_000; i++) {
+                            int n = random.nextInt(messages);
+                            assertTrue(tailer.moveToIndex(queue.rollCycle().toIndex(cycle, n)));
+                            try (DocumentContext dc = tailer.readingDocument()) {
+                                assertEquals(n, dc.wire().read("n").int64());
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failed.set(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads)
+                thread.join();
+            assertNull(failed.get());
+        }
+    }
+
     private void assertNext(ExcerptTailer tailer, String expected) {
         String next = tailer.readText();
         assertEquals(expected, next);
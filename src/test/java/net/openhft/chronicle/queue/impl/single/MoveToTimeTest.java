@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycleBuilder;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MoveToTimeTest {
+    private static final long START = 1_567_498_753_000L;
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void moveToTimeWithinACycle() {
+        File tmp = DirectoryUtils.tempDir("moveToTime");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(8)
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 500; i++) {
+                // every other millisecond
+                appender.writeText("msg-" + i);
+                try (DocumentContext dc = appender.writingDocument(true)) {
+                    dc.wire().write("meta").int32(i);
+                }
+                timeProvider.advanceMillis(2);
+            }
+
+            // the timestamps are invisible to readers
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 500; i++)
+                assertEquals("msg-" + i, tailer.readText());
+            assertNull(tailer.readText());
+
+            for (int i = 0; i < 500; i += 7) {
+                assertTrue(tailer.moveToTime((START + 2 * i) * MILLIS));
+                assertEquals("msg-" + i, tailer.readText());
+                // between excerpts
+                assertTrue(tailer.moveToTime((START + 2 * i) * MILLIS - 1));
+                assertEquals("msg-" + i, tailer.readText());
+                assertTrue(tailer.moveToTime((START + 2 * i) * MILLIS + 1));
+                assertEquals("msg-" + (i + 1), tailer.readText());
+            }
+
+            assertTrue(tailer.moveToTime(0));
+            assertEquals("msg-0", tailer.readText());
+
+            assertFalse(tailer.moveToTime((START + 1000) * MILLIS));
+            assertNull(tailer.readText());
+            appender.writeText("later");
+            assertEquals("later", tailer.readText());
+        }
+    }
+
+    @Test
+    public void moveToTimeAcrossCycles() {
+        File tmp = DirectoryUtils.tempDir("moveToTimeCycles");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 12; i++) {
+                appender.writeText("msg-" + i);
+                // skips some cycles
+                timeProvider.advanceMillis(i % 4 == 3 ? 2_500 : 300);
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertTrue(tailer.moveToTime((START + 300) * MILLIS));
+            assertEquals("msg-1", tailer.readText());
+            // in a cycle with no excerpts
+            assertTrue(tailer.moveToTime((START + 900 + 1_500) * MILLIS));
+            assertEquals("msg-4", tailer.readText());
+            assertEquals("msg-5", tailer.readText());
+        }
+    }
+
+    @Test
+    public void timestampsDontGoBackwards() {
+        File tmp = DirectoryUtils.tempDir("moveToTimeBackwards");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START + 10);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("msg-0");
+            // e.g. another process whose clock is behind
+            timeProvider.currentTimeMillis(START);
+            appender.writeText("msg-1");
+            try (DocumentContext dc = appender.claimingDocument(64)) {
+                dc.wire().getValueOut().text("msg-2");
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            for (int i = 0; i < 3; i++) {
+                try (DocumentContext dc = tailer.readingDocument()) {
+                    assertTrue(dc.isPresent());
+                    Bytes<?> bytes = dc.wire().bytes();
+                    assertEquals((START + 10) * MILLIS, ExcerptTimestamps.read(bytes, bytes.readPosition() - 4));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void moveToTimeInAKeptCycle() {
+        File tmp = DirectoryUtils.tempDir("moveToTimeKept");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(START);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycleBuilder.rollEvery(1, TimeUnit.SECONDS).maxCycleMessages(4).build())
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 8; i++) {
+                appender.writeText("msg-" + i);
+                timeProvider.advanceMillis(3_000);
+            }
+
+            // written long after the time of the cycle it is in
+            ExcerptTailer tailer = cq.createTailer();
+            assertTrue(tailer.moveToTime((START + 6_000) * MILLIS));
+            assertEquals("msg-2", tailer.readText());
+            assertTrue(tailer.moveToTime((START + 16_000) * MILLIS));
+            assertEquals("msg-6", tailer.readText());
+        }
+    }
+}
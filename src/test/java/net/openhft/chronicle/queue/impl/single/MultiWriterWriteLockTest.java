@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MultiWriterWriteLockTest {
+
+    @Test(timeout = 10_000)
+    public void handsOffToAWaitingThread() throws InterruptedException {
+        RecordingLock delegate = new RecordingLock();
+        MultiWriterWriteLock lock = new MultiWriterWriteLock(delegate);
+        lock.lock();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            started.countDown();
+            lock.lock();
+            locked.countDown();
+            lock.unlock();
+        });
+        waiter.start();
+        started.await();
+        assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+        // the waiter queues up locally, so only the holder has asked for the shared lock.
+        assertEquals(1, delegate.locks.get());
+
+        lock.unlock();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(2, delegate.locks.get());
+        assertEquals(2, delegate.unlocks.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void theSharedLockIsTakenAndReleasedInTurn() throws InterruptedException {
+        RecordingLock delegate = new RecordingLock();
+        MultiWriterWriteLock lock = new MultiWriterWriteLock(delegate);
+        int threads = 8, iterations = 10_000;
+        long[] counter = {0};
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    lock.lock();
+                    try {
+                        counter[0]++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        assertFalse(delegate.overlapped.get());
+        assertEquals(threads * iterations, counter[0]);
+        assertEquals(threads * iterations, delegate.locks.get());
+        assertEquals(threads * iterations, delegate.unlocks.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void unlockedWhenTheSharedLockFails() throws InterruptedException {
+        RecordingLock delegate = new RecordingLock();
+        delegate.failLock = true;
+        MultiWriterWriteLock lock = new MultiWriterWriteLock(delegate);
+        try {
+            lock.lock();
+            fail();
+        } catch (IllegalStateException expected) {
+            // the local lock must have been released.
+        }
+
+        delegate.failLock = false;
+        assertTrue(lockedByAnotherThread(lock));
+    }
+
+    @Test(timeout = 10_000)
+    public void unlockedWhenReleasingTheSharedLockFails() throws InterruptedException {
+        RecordingLock delegate = new RecordingLock();
+        MultiWriterWriteLock lock = new MultiWriterWriteLock(delegate);
+        lock.lock();
+        delegate.failUnlock = true;
+        try {
+            lock.unlock();
+            fail();
+        } catch (IllegalStateException expected) {
+            // the local lock must have been released.
+        }
+
+        delegate.failUnlock = false;
+        assertTrue(lockedByAnotherThread(lock));
+    }
+
+    private static boolean lockedByAnotherThread(MultiWriterWriteLock lock) throws InterruptedException {
+        AtomicBoolean locked = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            lock.lock();
+            locked.set(true);
+            lock.unlock();
+        });
+        other.start();
+        other.join(5_000);
+        return locked.get();
+    }
+
+    /**
+     * Stands in for the table store lock, recording whether it was ever taken by two threads at once.
+     */
+    static class RecordingLock implements WriteLock {
+        final AtomicInteger locks = new AtomicInteger();
+        final AtomicInteger unlocks = new AtomicInteger();
+        final AtomicBoolean held = new AtomicBoolean();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        volatile boolean failLock, failUnlock;
+
+        @Override
+        public void lock() {
+            if (failLock)
+                throw new IllegalStateException("lock failed");
+            if (!held.compareAndSet(false, true))
+                overlapped.set(true);
+            locks.incrementAndGet();
+        }
+
+        @Override
+        public void unlock() {
+            if (!held.compareAndSet(true, false))
+                overlapped.set(true);
+            unlocks.incrementAndGet();
+            if (failUnlock)
+                throw new IllegalStateException("unlock failed");
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean locked() {
+            return held.get();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.queue.impl.WireStore;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class PrecreateNextCycleTest {
+    @Test
+    public void rollRenamesPrecreatedFile() {
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        File dir = DirectoryUtils.tempDir("precreateNextCycle");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(dir)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .precreateNextCycle(500)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("first");
+            assertEquals(0, precreatedFiles(dir));
+
+            // the next cycle is now 400 ms away, the event loop may have created it already.
+            timeProvider.advanceMillis(600);
+            cq.precreateNextCycleIfDue();
+            assertEquals(1, precreatedFiles(dir));
+
+            timeProvider.advanceMillis(400);
+            appender.writeText("second");
+            assertEquals(0, precreatedFiles(dir));
+            assertEquals(2, dir.listFiles((d, name) -> name.endsWith(SingleChronicleQueue.SUFFIX)).length);
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("first", tailer.readText());
+            assertEquals("second", tailer.readText());
+            assertNull(tailer.readText());
+        }
+    }
+
+    @Test
+    public void precreatedCycleUsesAdaptiveSpacing() {
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        File dir = DirectoryUtils.tempDir("precreateAdaptiveSpacing");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(dir)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .indexCount(32)
+                .timeProvider(timeProvider)
+                .adaptiveIndexSpacing(1024)
+                .precreateNextCycle(500)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            String large = new String(new char[2000]).replace('\0', 'x');
+            for (int i = 0; i < 50; i++)
+                appender.writeText(large);
+            timeProvider.advanceMillis(1_000);
+            // the cycle being written to isn't sealed when the next one is pre-created
+            appender.writeText("small");
+
+            timeProvider.advanceMillis(600);
+            cq.precreateNextCycleIfDue();
+            assertEquals(1, precreatedFiles(dir));
+
+            timeProvider.advanceMillis(400);
+            appender.writeText("next");
+            assertEquals(0, precreatedFiles(dir));
+            assertTrue(cq.indexSpacing() > 1);
+            assertEquals(1, spacing(cq, cq.lastCycle()));
+        }
+    }
+
+    private static int spacing(SingleChronicleQueue cq, int cycle) {
+        WireStore store = cq.storeForCycle(cycle, cq.epoch(), false);
+        try {
+            return ((SingleChronicleQueueStore) store).rollIndexSpacing();
+        } finally {
+            cq.release(store);
+        }
+    }
+
+    private static int precreatedFiles(File dir) {
+        return dir.listFiles((d, name) -> name.endsWith(".precreated")).length;
+    }
+}
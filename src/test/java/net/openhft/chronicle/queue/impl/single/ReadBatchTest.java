@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadBatchTest {
+    @Test
+    public void readBatchAcrossCycles() {
+        File tmp = DirectoryUtils.tempDir("readBatch");
+        SetTimeProvider timeProvider = new SetTimeProvider();
+        timeProvider.currentTimeMillis(1_567_498_753_000L);
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_SECONDLY)
+                .timeProvider(timeProvider)
+                .timestamps(true)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            List<Long> indexes = new ArrayList<>();
+            int count = 0;
+            for (int c = 0; c < 3; c++) {
+                for (int i = 0; i < 10; i++, count++) {
+                    int n = count;
+                    appender.writeBytes(b -> b.writeInt(n).writeLong(n * 10L));
+                    indexes.add(appender.lastIndexAppended());
+                    try (DocumentContext dc = appender.writingDocument(true)) {
+                        dc.wire().write("meta").int32(n);
+                    }
+                }
+                timeProvider.advanceMillis(1_000);
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            List<Long> read = new ArrayList<>();
+            int batches = 0;
+            for (int n; (n = tailer.readBatch((index, payload) -> {
+                int i = read.size();
+                assertEquals(12, payload.readRemaining());
+                assertEquals(i, payload.readInt());
+                assertEquals(i * 10L, payload.readLong());
+                read.add(index);
+            }, 7)) > 0; batches++)
+                assertTrue(n <= 7);
+            assertEquals(5, batches);
+            assertEquals(indexes, read);
+
+            // new excerpts are read from where the batch stopped
+            appender.writeBytes(b -> b.writeInt(30).writeLong(300));
+            try (DocumentContext dc = tailer.readingDocument()) {
+                assertTrue(dc.isPresent());
+                assertEquals(30, dc.wire().bytes().readInt());
+            }
+            assertEquals(0, tailer.readBatch((index, payload) -> fail(), 10));
+        }
+    }
+
+    @Test
+    public void mixedWithReadingDocument() {
+        File tmp = DirectoryUtils.tempDir("readBatchMixed");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                appender.writeBytes(b -> b.writeInt(n));
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            int[] next = {0};
+            while (next[0] < 100) {
+                assertEquals(Math.min(3, 100 - next[0]), tailer.readBatch((index, payload) -> {
+                    assertEquals(next[0]++, payload.readInt());
+                }, 3));
+                if (next[0] < 100) {
+                    try (DocumentContext dc = tailer.readingDocument()) {
+                        assertEquals(next[0]++, dc.wire().bytes().readInt());
+                    }
+                }
+            }
+            assertEquals(0, tailer.readBatch((index, payload) -> fail(), 3));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.SyncMode;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class SyncModeTest {
+    @Test
+    public void noSyncByDefault() {
+        File tmp = DirectoryUtils.tempDir("syncMode");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp).testBlockSize().build()) {
+            assertNull(cq.syncLatencies());
+        }
+    }
+
+    @Test
+    public void everyMessage() {
+        long syncs = doTest(SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("syncEveryMessage"))
+                .syncMode(SyncMode.EVERY_MESSAGE));
+        assertEquals(10, syncs);
+    }
+
+    @Test
+    public void everyNMessages() {
+        long syncs = doTest(SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("syncEveryN"))
+                .syncMode(SyncMode.EVERY_N_MESSAGES)
+                .syncEveryMessages(3));
+        assertTrue("syncs " + syncs, syncs >= 3);
+    }
+
+    @Test
+    public void everyInterval() {
+        doTest(SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("syncEveryInterval"))
+                .syncMode(SyncMode.EVERY_INTERVAL)
+                .syncIntervalMicros(100));
+    }
+
+    @Test
+    public void async() throws InterruptedException {
+        SingleChronicleQueueBuilder builder = SingleChronicleQueueBuilder.binary(DirectoryUtils.tempDir("syncAsync"))
+                .syncMode(SyncMode.ASYNC)
+                .syncIntervalMicros(100);
+        try (SingleChronicleQueue cq = builder.testBlockSize().build()) {
+            writeAndRead(cq);
+            // synced in the background
+            long end = System.currentTimeMillis() + 5_000;
+            while (cq.syncLatencies().totalCount() == 0 && System.currentTimeMillis() < end)
+                Thread.sleep(1);
+            assertTrue(cq.syncLatencies().totalCount() > 0);
+        }
+    }
+
+    /**
+     * @return the number of syncs before the queue was closed
+     */
+    private long doTest(SingleChronicleQueueBuilder builder) {
+        try (SingleChronicleQueue cq = builder.testBlockSize().build()) {
+            writeAndRead(cq);
+            return cq.syncLatencies().totalCount();
+        }
+    }
+
+    private void writeAndRead(SingleChronicleQueue cq) {
+        assertNotNull(cq.syncLatencies());
+        ExcerptAppender appender = cq.acquireAppender();
+        for (int i = 0; i < 10; i++)
+            appender.writeText("test " + i);
+
+        ExcerptTailer tailer = cq.createTailer();
+        for (int i = 0; i < 10; i++)
+            assertEquals("test " + i, tailer.readText());
+        assertNull(tailer.readText());
+    }
+}
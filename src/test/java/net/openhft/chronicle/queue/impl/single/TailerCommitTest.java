@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TailerCommitTest {
+
+    @Test
+    public void namedTailerCommitsInBatches() {
+        File tmp = DirectoryUtils.tempDir("tailerCommit");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .tailerCommitEveryMessages(10)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 25; i++) {
+                int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+            }
+
+            ExcerptTailer tailer = cq.createTailer("batched");
+            for (int i = 0; i < 15; i++)
+                assertEquals(i, read(tailer));
+
+            // a restart reads again what wasn't committed, but nothing is lost
+            int restart = read(cq.createTailer("batched"));
+            assertTrue(restart >= 5 && restart < 15);
+
+            tailer.commit();
+            assertEquals(15, read(cq.createTailer("batched")));
+
+            for (int i = 15; i < 25; i++)
+                assertEquals(i, read(tailer));
+            // committed when there is nothing to read
+            assertEquals(-1, read(tailer));
+            assertEquals(-1, read(cq.createTailer("batched")));
+        }
+    }
+
+    @Test
+    public void namedTailerCommitsEveryMoveByDefault() {
+        File tmp = DirectoryUtils.tempDir("tailerCommitDefault");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 5; i++) {
+                int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+            }
+
+            ExcerptTailer tailer = cq.createTailer("every");
+            assertEquals(0, read(tailer));
+            assertEquals(1, read(tailer));
+            assertEquals(2, read(cq.createTailer("every")));
+        }
+    }
+
+    @Test
+    public void namedTailerCommitsOnAnIntervalAlone() {
+        File tmp = DirectoryUtils.tempDir("tailerCommitInterval");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .tailerCommitIntervalMicros(10_000_000)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            for (int i = 0; i < 5; i++) {
+                int n = i;
+                appender.writeDocument(w -> w.write("n").int64(n));
+            }
+
+            ExcerptTailer tailer = cq.createTailer("interval");
+            for (int i = 0; i < 3; i++)
+                assertEquals(i, read(tailer));
+            // well within the interval, so nothing has been written yet
+            assertEquals(0, read(cq.createTailer("interval")));
+
+            assertEquals(3, read(tailer));
+            assertEquals(4, read(tailer));
+            assertEquals(-1, read(tailer));
+            assertEquals(-1, read(cq.createTailer("interval")));
+        }
+    }
+
+    private static int read(ExcerptTailer tailer) {
+        try (DocumentContext dc = tailer.readingDocument()) {
+            return dc.isPresent() ? (int) dc.wire().read("n").int64() : -1;
+        }
+    }
+}
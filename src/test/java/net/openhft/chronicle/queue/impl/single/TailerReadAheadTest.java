@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.threads.InvalidEventHandlerException;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TailerReadAheadTest {
+    private static final int COUNT = 20_000;
+
+    @Test
+    public void readsAheadOfTheTailer() throws InvalidEventHandlerException {
+        File tmp = DirectoryUtils.tempDir("tailerReadAhead");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            byte[] payload = new byte[200];
+            for (int i = 0; i < COUNT; i++) {
+                int n = i;
+                appender.writeBytes(b -> b.writeInt(n).write(payload));
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            try (TailerReadAhead readAhead = new TailerReadAhead(tailer, 1 << 20)) {
+                // nothing read yet
+                readAhead.execute();
+                assertEquals(0, readAhead.lastTouchedPage());
+
+                long end = 0;
+                for (int i = 0; i < COUNT; i++) {
+                    try (DocumentContext dc = tailer.readingDocument()) {
+                        assertTrue(dc.isPresent());
+                        assertEquals(i, dc.wire().bytes().readInt());
+                        end = dc.wire().bytes().readLimit();
+                    }
+                    if (i % 100 == 0) {
+                        readAhead.execute();
+                        assertTrue(readAhead.lastTouchedPage() >= Math.min(end, ((SingleChronicleQueueExcerpts.StoreTailer) tailer).store.writePosition()) - OS.pageSize());
+                        assertTrue(readAhead.lastTouchedPage() <= end + (1 << 20) + OS.pageSize());
+                    }
+                }
+            }
+            assertFalse(tailer.readingDocument().isPresent());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmall() {
+        File tmp = DirectoryUtils.tempDir("tailerReadAheadSmall");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            new TailerReadAhead(cq.createTailer(), 4096);
+        }
+    }
+}
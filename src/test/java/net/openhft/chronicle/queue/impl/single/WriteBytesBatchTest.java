@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WriteBytesBatchTest {
+    private static final int COUNT = 300;
+
+    @Test
+    public void writeListAcrossIndexBoundaries() {
+        File tmp = DirectoryUtils.tempDir("writeBytesBatch");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(8)
+                .build()) {
+            List<BytesStore> payloads = new ArrayList<>();
+            for (int i = 0; i < COUNT; i++)
+                payloads.add(Bytes.fromString("msg-" + i));
+
+            ExcerptAppender appender = cq.acquireAppender();
+            assertEquals(COUNT, appender.writeBytesBatch(payloads));
+            long lastIndex = appender.lastIndexAppended();
+
+            checkIndexed(cq, lastIndex);
+        }
+    }
+
+    @Test
+    public void writeLengthPrefixed() {
+        File tmp = DirectoryUtils.tempDir("writeLengthPrefixedBatch");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(8)
+                .build()) {
+            Bytes<?> buffer = Bytes.elasticByteBuffer();
+            for (int i = 0; i < COUNT; i++) {
+                String s = "msg-" + i;
+                buffer.writeInt(s.length());
+                buffer.append(s);
+            }
+
+            ExcerptAppender appender = cq.acquireAppender();
+            assertEquals(COUNT, appender.writeLengthPrefixedBatch(buffer));
+            buffer.release();
+
+            checkIndexed(cq, appender.lastIndexAppended());
+        }
+    }
+
+    private void checkIndexed(SingleChronicleQueue cq, long lastIndex) {
+        ExcerptTailer tailer = cq.createTailer();
+        long firstIndex = lastIndex - COUNT + 1;
+        for (int i = COUNT - 1; i >= 0; i -= 7) {
+            assertTrue(tailer.moveToIndex(firstIndex + i));
+            Bytes<?> bytes = Bytes.elasticByteBuffer();
+            assertTrue(tailer.readBytes(bytes));
+            assertEquals("msg-" + i, bytes.toString());
+            bytes.release();
+        }
+    }
+}
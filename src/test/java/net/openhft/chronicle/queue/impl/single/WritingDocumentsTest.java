@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.queue.impl.single;
+
+import net.openhft.chronicle.queue.DirectoryUtils;
+import net.openhft.chronicle.queue.DocumentGroup;
+import net.openhft.chronicle.queue.ExcerptAppender;
+import net.openhft.chronicle.queue.ExcerptTailer;
+import net.openhft.chronicle.queue.RollCycles;
+import net.openhft.chronicle.wire.DocumentContext;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class WritingDocumentsTest {
+    @Test
+    public void groupIsHiddenUntilClosed() {
+        File tmp = DirectoryUtils.tempDir("writingDocuments");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .rollCycle(RollCycles.TEST_DAILY)
+                .indexSpacing(4)
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("before");
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("before", tailer.readText());
+
+            try (DocumentGroup group = appender.writingDocuments(10)) {
+                for (int i = 0; i < 10; i++) {
+                    appender.writeText("group " + i);
+                    assertNull(tailer.readText());
+                }
+                assertEquals(10, group.documents());
+            }
+            for (int i = 0; i < 10; i++)
+                assertEquals("group " + i, tailer.readText());
+
+            appender.writeText("after");
+            assertEquals("after", tailer.readText());
+            assertNull(tailer.readText());
+
+            // the group was indexed on commit
+            long lastIndex = appender.lastIndexAppended();
+            for (int i = 0; i < 10; i++) {
+                assertTrue(tailer.moveToIndex(lastIndex - 10 + i));
+                assertEquals("group " + i, tailer.readText());
+            }
+        }
+    }
+
+    @Test
+    public void rollbackGroup() {
+        File tmp = DirectoryUtils.tempDir("writingDocumentsRollback");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            appender.writeText("before");
+            long before = appender.lastIndexAppended();
+
+            try (DocumentGroup group = appender.writingDocuments(2)) {
+                appender.writeText("first");
+                try (DocumentContext dc = appender.writingDocument(true)) {
+                    dc.wire().write("meta").text("data");
+                }
+                appender.writeText("second");
+                group.rollbackOnClose();
+            }
+
+            appender.writeText("after");
+            assertEquals(before + 1, appender.lastIndexAppended());
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("before", tailer.readText());
+            assertEquals("after", tailer.readText());
+            assertNull(tailer.readText());
+        }
+    }
+
+    @Test
+    public void rollbackOneDocumentInGroup() {
+        File tmp = DirectoryUtils.tempDir("writingDocumentsPartial");
+        try (SingleChronicleQueue cq = SingleChronicleQueueBuilder.binary(tmp)
+                .testBlockSize()
+                .build()) {
+            ExcerptAppender appender = cq.acquireAppender();
+            try (DocumentGroup group = appender.writingDocuments(3)) {
+                appender.writeText("one");
+                try (DocumentContext dc = appender.writingDocument()) {
+                    dc.wire().getValueOut().text("discarded");
+                    dc.rollbackOnClose();
+                }
+                appender.writeText("two");
+                assertEquals(2, group.documents());
+            }
+
+            ExcerptTailer tailer = cq.createTailer();
+            assertEquals("one", tailer.readText());
+            assertEquals("two", tailer.readText());
+            assertNull(tailer.readText());
+        }
+    }
+}